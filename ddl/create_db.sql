@@ -15,22 +15,110 @@ CREATE table kv_parameters
 ,primary key (c, param_name)
 );
 
+CREATE table kv_event_filters
+(c varchar(30) not null 
+,filter_id varchar(36) not null 
+,key_prefix varchar(128) not null
+,event_types varchar(4) not null
+,primary key (c, filter_id)
+);
+
 CREATE TABLE kv 
 (c varchar(30) not null 
 ,k varchar(128) not null 
 ,v varbinary(1048576)
+,ver bigint default 0 not null
+,expires_at timestamp
 ,primary key (c, k));
 
 PARTITION TABLE kv ON COLUMN k;
 
+CREATE INDEX kv_expires_at_ix ON kv (expires_at, c, k);
 
-CREATE STREAM kv_deltas 
-EXPORT TO TOPIC kv_deltas WITH KEY (k)
+
+-- Events go to one of 8 streams, chosen by
+-- AbstractEventTrackingProcedure.getEventBucket(c), so consumers only read
+-- the caches that share their bucket.
+
+CREATE STREAM kv_deltas_0 
+EXPORT TO TOPIC kv_deltas_0 WITH KEY (k)
 PARTITION ON COLUMN k
 (c varchar(30) not null 
 ,k varchar(128)  not null
 ,v varbinary(1048576)
-,event_type varchar(1));
+,event_type varchar(1)
+,old_v varbinary(1048576)
+,event_ts timestamp);
+
+CREATE STREAM kv_deltas_1 
+EXPORT TO TOPIC kv_deltas_1 WITH KEY (k)
+PARTITION ON COLUMN k
+(c varchar(30) not null 
+,k varchar(128)  not null
+,v varbinary(1048576)
+,event_type varchar(1)
+,old_v varbinary(1048576)
+,event_ts timestamp);
+
+CREATE STREAM kv_deltas_2 
+EXPORT TO TOPIC kv_deltas_2 WITH KEY (k)
+PARTITION ON COLUMN k
+(c varchar(30) not null 
+,k varchar(128)  not null
+,v varbinary(1048576)
+,event_type varchar(1)
+,old_v varbinary(1048576)
+,event_ts timestamp);
+
+CREATE STREAM kv_deltas_3 
+EXPORT TO TOPIC kv_deltas_3 WITH KEY (k)
+PARTITION ON COLUMN k
+(c varchar(30) not null 
+,k varchar(128)  not null
+,v varbinary(1048576)
+,event_type varchar(1)
+,old_v varbinary(1048576)
+,event_ts timestamp);
+
+CREATE STREAM kv_deltas_4 
+EXPORT TO TOPIC kv_deltas_4 WITH KEY (k)
+PARTITION ON COLUMN k
+(c varchar(30) not null 
+,k varchar(128)  not null
+,v varbinary(1048576)
+,event_type varchar(1)
+,old_v varbinary(1048576)
+,event_ts timestamp);
+
+CREATE STREAM kv_deltas_5 
+EXPORT TO TOPIC kv_deltas_5 WITH KEY (k)
+PARTITION ON COLUMN k
+(c varchar(30) not null 
+,k varchar(128)  not null
+,v varbinary(1048576)
+,event_type varchar(1)
+,old_v varbinary(1048576)
+,event_ts timestamp);
+
+CREATE STREAM kv_deltas_6 
+EXPORT TO TOPIC kv_deltas_6 WITH KEY (k)
+PARTITION ON COLUMN k
+(c varchar(30) not null 
+,k varchar(128)  not null
+,v varbinary(1048576)
+,event_type varchar(1)
+,old_v varbinary(1048576)
+,event_ts timestamp);
+
+CREATE STREAM kv_deltas_7 
+EXPORT TO TOPIC kv_deltas_7 WITH KEY (k)
+PARTITION ON COLUMN k
+(c varchar(30) not null 
+,k varchar(128)  not null
+,v varbinary(1048576)
+,event_type varchar(1)
+,old_v varbinary(1048576)
+,event_ts timestamp);
 
 CREATE PROCEDURE 
 ContainsKey
@@ -39,7 +127,8 @@ AS
 SELECT 'x' found 
 FROM kv
 WHERE k = ? 
-AND   c = ?;
+AND   c = ?
+AND   (expires_at IS NULL OR expires_at > NOW);
 
 
 CREATE PROCEDURE 
@@ -49,7 +138,8 @@ AS
 SELECT v
 FROM kv
 WHERE k = ? 
-AND   c = ?;
+AND   c = ?
+AND   (expires_at IS NULL OR expires_at > NOW);
 
 CREATE PROCEDURE 
 GetKV
@@ -58,14 +148,50 @@ AS
 SELECT k, v 
 FROM kv
 WHERE k = ?
-AND   c = ?;
+AND   c = ?
+AND   (expires_at IS NULL OR expires_at > NOW);
+
+CREATE PROCEDURE 
+PARTITION ON TABLE kv COLUMN k
+FROM CLASS jsr107.GetAll;
+
+CREATE PROCEDURE 
+PARTITION ON TABLE kv COLUMN k
+FROM CLASS jsr107.ScanPartition;
+
+CREATE PROCEDURE 
+FROM CLASS jsr107.SetParam;
+
+CREATE PROCEDURE 
+FROM CLASS jsr107.AddEventFilter;
+
+CREATE PROCEDURE 
+FROM CLASS jsr107.RemoveEventFilter;
+
+CREATE PROCEDURE 
+PARTITION ON TABLE kv COLUMN k
+FROM CLASS jsr107.RefreshCacheConfig;
+
+CREATE PROCEDURE 
+GetWithVersion
+PARTITION ON TABLE kv COLUMN k
+AS
+SELECT v, ver
+FROM kv
+WHERE k = ?
+AND   c = ?
+AND   (expires_at IS NULL OR expires_at > NOW);
 
--- WARNING: This might return more data than VoltDB 
--- client can handle...
+-- Used by iterator(), which pages through the cache in key order...
 CREATE PROCEDURE 
-Iterator 
+IteratorFirstPage
 AS
-SELECT * FROM kv WHERE c = ? ORDER BY k;
+SELECT k, v FROM kv WHERE c = ? AND (expires_at IS NULL OR expires_at > NOW) ORDER BY k LIMIT ?;
+
+CREATE PROCEDURE 
+IteratorPage
+AS
+SELECT k, v FROM kv WHERE c = ? AND k > ? AND (expires_at IS NULL OR expires_at > NOW) ORDER BY k LIMIT ?;
 
 CREATE PROCEDURE 
 GetParam
@@ -75,6 +201,9 @@ FROM kv_parameters
 WHERE c = ? 
 AND   param_name = ?;
 
+CREATE PROCEDURE 
+FROM CLASS jsr107.ClearEventFilters;
+
 CREATE PROCEDURE 
 PARTITION ON TABLE kv COLUMN k
 FROM CLASS jsr107.RemoveKeyValuePair;
@@ -86,10 +215,21 @@ FROM CLASS jsr107.Remove;
 CREATE PROCEDURE 
 FROM CLASS jsr107.RemoveAll;
 
+CREATE PROCEDURE 
+FROM CLASS jsr107.Clear;
+
 CREATE PROCEDURE 
 PARTITION ON TABLE kv COLUMN k
 FROM CLASS jsr107.Put;
 
+CREATE PROCEDURE 
+PARTITION ON TABLE kv COLUMN k
+FROM CLASS jsr107.PutBatch;
+
+CREATE PROCEDURE 
+PARTITION ON TABLE kv COLUMN k
+FROM CLASS jsr107.PutWithTTL;
+
 CREATE PROCEDURE 
 PARTITION ON TABLE kv COLUMN k
 FROM CLASS jsr107.GetAndPut;
@@ -117,10 +257,29 @@ CREATE PROCEDURE
 PARTITION ON TABLE kv COLUMN k
 FROM CLASS jsr107.ReplaceKeyValuePair;
 
+CREATE PROCEDURE 
+PARTITION ON TABLE kv COLUMN k
+FROM CLASS jsr107.ReplaceIfVersion;
+
+CREATE PROCEDURE 
+PARTITION ON TABLE kv COLUMN k
+FROM CLASS jsr107.RemoveIfVersion;
+
 CREATE PROCEDURE 
 PARTITION ON TABLE kv COLUMN k
 FROM CLASS jsr107.Invoke;
 
+-- Deletes expired entries 100 at a time on each partition...
+CREATE PROCEDURE 
+DIRECTED
+FROM CLASS jsr107.ExpireEntries;
+
+CREATE TASK ExpireEntriesTask
+ON SCHEDULE DELAY 100 MILLISECONDS
+PROCEDURE ExpireEntries WITH (100)
+ON ERROR LOG
+RUN ON PARTITIONS;
+
 
 END_OF_BATCH
 
@@ -18,15 +18,64 @@ CREATE VIEW kv_table_stats AS
 SELECT c, count(*) how_many from kv
 GROUP BY c;
 
-CREATE VIEW kv_deltas_stats AS
+CREATE VIEW kv_deltas_0_stats AS
 SELECT c,event_type , count(*) how_many 
-FROM kv_deltas
+FROM kv_deltas_0
+GROUP BY c, event_type;
+
+CREATE VIEW kv_deltas_1_stats AS
+SELECT c,event_type , count(*) how_many 
+FROM kv_deltas_1
+GROUP BY c, event_type;
+
+CREATE VIEW kv_deltas_2_stats AS
+SELECT c,event_type , count(*) how_many 
+FROM kv_deltas_2
+GROUP BY c, event_type;
+
+CREATE VIEW kv_deltas_3_stats AS
+SELECT c,event_type , count(*) how_many 
+FROM kv_deltas_3
+GROUP BY c, event_type;
+
+CREATE VIEW kv_deltas_4_stats AS
+SELECT c,event_type , count(*) how_many 
+FROM kv_deltas_4
+GROUP BY c, event_type;
+
+CREATE VIEW kv_deltas_5_stats AS
+SELECT c,event_type , count(*) how_many 
+FROM kv_deltas_5
+GROUP BY c, event_type;
+
+CREATE VIEW kv_deltas_6_stats AS
+SELECT c,event_type , count(*) how_many 
+FROM kv_deltas_6
+GROUP BY c, event_type;
+
+CREATE VIEW kv_deltas_7_stats AS
+SELECT c,event_type , count(*) how_many 
+FROM kv_deltas_7
 GROUP BY c, event_type;
 
 CREATE PROCEDURE kv__promBL AS
 BEGIN
 select 'category_'||c||'_parameter_'||param_name statname,  'parameter name' stathelp  ,param_value statvalue from kv_parameters order by param_name;
 select 'category_'||c statname,  'kv classes' stathelp  ,how_many statvalue from kv_table_stats order by c;
-select 'delta_'||c ||'_'||event_type statname,  'kv deltas' stathelp  ,how_many statvalue from kv_deltas_stats order by c, event_type;
+select 'delta_'||c ||'_'||event_type statname,  'kv deltas' stathelp  ,how_many statvalue from kv_deltas_0_stats
+UNION ALL
+select 'delta_'||c ||'_'||event_type statname,  'kv deltas' stathelp  ,how_many statvalue from kv_deltas_1_stats
+UNION ALL
+select 'delta_'||c ||'_'||event_type statname,  'kv deltas' stathelp  ,how_many statvalue from kv_deltas_2_stats
+UNION ALL
+select 'delta_'||c ||'_'||event_type statname,  'kv deltas' stathelp  ,how_many statvalue from kv_deltas_3_stats
+UNION ALL
+select 'delta_'||c ||'_'||event_type statname,  'kv deltas' stathelp  ,how_many statvalue from kv_deltas_4_stats
+UNION ALL
+select 'delta_'||c ||'_'||event_type statname,  'kv deltas' stathelp  ,how_many statvalue from kv_deltas_5_stats
+UNION ALL
+select 'delta_'||c ||'_'||event_type statname,  'kv deltas' stathelp  ,how_many statvalue from kv_deltas_6_stats
+UNION ALL
+select 'delta_'||c ||'_'||event_type statname,  'kv deltas' stathelp  ,how_many statvalue from kv_deltas_7_stats;
 END;
 
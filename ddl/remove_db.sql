@@ -1,3 +1,5 @@
+DROP TASK ExpireEntriesTask IF EXISTS;
+
 
    
 DROP PROCEDURE ContainsKey IF EXISTS;
@@ -6,18 +8,46 @@ DROP PROCEDURE Get IF EXISTS;
 
 DROP PROCEDURE GetKV IF EXISTS;
 
+DROP PROCEDURE GetAll IF EXISTS;
+
+DROP PROCEDURE GetWithVersion IF EXISTS;
+
 DROP PROCEDURE Iterator  IF EXISTS;
 
+DROP PROCEDURE IteratorFirstPage IF EXISTS;
+
+DROP PROCEDURE IteratorPage IF EXISTS;
+
+DROP PROCEDURE ScanPartition IF EXISTS;
+
+DROP PROCEDURE SetParam IF EXISTS;
+
+DROP PROCEDURE AddEventFilter IF EXISTS;
+
+DROP PROCEDURE RemoveEventFilter IF EXISTS;
+
+DROP PROCEDURE RefreshCacheConfig IF EXISTS;
+
 DROP PROCEDURE GetParam IF EXISTS;
 
+DROP PROCEDURE ClearEventFilters IF EXISTS;
+
 DROP PROCEDURE RemoveKeyValuePair IF EXISTS;
 
 DROP PROCEDURE Remove IF EXISTS;
 
 DROP PROCEDURE RemoveAll IF EXISTS;
 
+DROP PROCEDURE Clear IF EXISTS;
+
 DROP PROCEDURE Put IF EXISTS;
 
+DROP PROCEDURE PutBatch IF EXISTS;
+
+DROP PROCEDURE PutWithTTL IF EXISTS;
+
+DROP PROCEDURE ExpireEntries IF EXISTS;
+
 DROP PROCEDURE GetAndPut IF EXISTS;
 
 DROP PROCEDURE GetAndRemove IF EXISTS;
@@ -30,12 +60,34 @@ DROP PROCEDURE Replace IF EXISTS;
 
 DROP PROCEDURE ReplaceKeyValuePair IF EXISTS;
 
+DROP PROCEDURE ReplaceIfVersion IF EXISTS;
+
+DROP PROCEDURE RemoveIfVersion IF EXISTS;
+
 DROP PROCEDURE Invoke IF EXISTS;
 
 DROP table kv_parameters IF EXISTS;
 
+DROP table kv_event_filters IF EXISTS;
+
 DROP TABLE kv  IF EXISTS;
 
 DROP STREAM kv_deltas IF EXISTS;
 
+DROP STREAM kv_deltas_0 IF EXISTS;
+
+DROP STREAM kv_deltas_1 IF EXISTS;
+
+DROP STREAM kv_deltas_2 IF EXISTS;
+
+DROP STREAM kv_deltas_3 IF EXISTS;
+
+DROP STREAM kv_deltas_4 IF EXISTS;
+
+DROP STREAM kv_deltas_5 IF EXISTS;
+
+DROP STREAM kv_deltas_6 IF EXISTS;
+
+DROP STREAM kv_deltas_7 IF EXISTS;
+
 DROP FUNCTION varbinary_to_varchar IF EXISTS;
\ No newline at end of file
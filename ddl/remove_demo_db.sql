@@ -4,5 +4,13 @@ DROP PROCEDURE kv__promBL IF EXISTS;
 DROP PROCEDURE getSchemeMember IF EXISTS;
 
 DROP VIEW kv_deltas_stats IF EXISTS;
+DROP VIEW kv_deltas_0_stats IF EXISTS;
+DROP VIEW kv_deltas_1_stats IF EXISTS;
+DROP VIEW kv_deltas_2_stats IF EXISTS;
+DROP VIEW kv_deltas_3_stats IF EXISTS;
+DROP VIEW kv_deltas_4_stats IF EXISTS;
+DROP VIEW kv_deltas_5_stats IF EXISTS;
+DROP VIEW kv_deltas_6_stats IF EXISTS;
+DROP VIEW kv_deltas_7_stats IF EXISTS;
 DROP VIEW kv_table_stats IF EXISTS;
 DROP VIEW kv_table_histogram IF EXISTS;
@@ -49,16 +49,22 @@ public class AddNewFlightEntryProcessor implements EntryProcessor<String, byte[]
 
         if (existingValue != null) {
 
-            AirmilesRecord ar = g.fromJson(new String(existingValue), AirmilesRecord.class);
-
             String fromAirport = (String) params[0];
             String toAirport = (String) params[1];
             TimestampType flightDate = (TimestampType) params[2];
             long points = (Long) params[3];
 
-            ar.addFlight(fromAirport, toAirport, flightDate, points);
+            if (AirmilesRecordCodec.isBinary(existingValue)) {
+
+                // No need to parse the record, let alone randomLob...
+                entry.setValue(AirmilesRecordCodec.addFlight(existingValue, fromAirport, toAirport, flightDate, points));
+
+            } else {
 
-            entry.setValue(g.toJson(ar).getBytes());
+                AirmilesRecord ar = g.fromJson(new String(existingValue), AirmilesRecord.class);
+                ar.addFlight(fromAirport, toAirport, flightDate, points);
+                entry.setValue(g.toJson(ar).getBytes());
+            }
 
         }
 
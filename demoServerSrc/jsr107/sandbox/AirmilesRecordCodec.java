@@ -0,0 +1,139 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package jsr107.sandbox;
+
+import org.voltdb.autojar.IsNeededByAVoltDBProcedure;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Compact binary format for AirmilesRecord, as an alternative to JSON. The
+ * layout comes from the BinaryRecordSchemas below, which put the numbers and
+ * flight count at fixed offsets, so AddNewFlightEntryProcessor can add a
+ * flight by patching them and appending to the end, without decoding the
+ * record or copying randomLob into an object:
+ *
+ * <pre>
+ *  0 FORMAT_MARKER (1 byte)
+ *  1 loyaltySchemeNumber (8)
+ *  9 loyaltySchemePoints (8)
+ * 17 loyaltySchemeTier (8)
+ * 25 number of flights (4)
+ * 29 loyaltySchemeName, randomLob - length (4), or -1 for null, and bytes
+ *    flights - each one when in microseconds (8), points (8), and fromAirport
+ *    and toAirport as length (4), or -1 for null, and UTF-8
+ * </pre>
+ *
+ * JSON records always start with '{', so isBinary can tell which format a
+ * stored value is in, and records in either format can be in the cache at
+ * once.
+ */
+@IsNeededByAVoltDBProcedure
+public class AirmilesRecordCodec {
+
+    /**
+     * First byte of every binary record. Not '{'.
+     */
+    public static final byte FORMAT_MARKER = (byte) 0xA1;
+
+    static final String NUMBER = "loyaltySchemeNumber";
+    static final String POINTS = "loyaltySchemePoints";
+    static final String TIER = "loyaltySchemeTier";
+    static final String FLIGHTS = "flightsTaken";
+
+    /**
+     * Same rule as AirmilesRecord.addFlight - once there are more than this
+     * many flights we start again and go up a tier.
+     */
+    static final int MAX_FLIGHTS = 10;
+
+    static final BinaryRecordSchema<AirmilesFlight> FLIGHT_SCHEMA = new BinaryRecordSchema<>(AirmilesFlight.class,
+            () -> new AirmilesFlight(null, null, null, 0))
+            .addTimestamp("when", f -> f.when, (f, v) -> f.when = v)
+            .addLong("points", f -> f.points, (f, v) -> f.points = v)
+            .addString("fromAirport", f -> f.fromAirport, (f, v) -> f.fromAirport = v)
+            .addString("toAirport", f -> f.toAirport, (f, v) -> f.toAirport = v);
+
+    static final BinaryRecordSchema<AirmilesRecord> RECORD_SCHEMA = new BinaryRecordSchema<>(AirmilesRecord.class,
+            FORMAT_MARKER, () -> new AirmilesRecord(null, 0, 0, null))
+            .addLong(NUMBER, r -> r.loyaltySchemeNumber, (r, v) -> r.loyaltySchemeNumber = v)
+            .addLong(POINTS, r -> r.loyaltySchemePoints, (r, v) -> r.loyaltySchemePoints = v)
+            .addLong(TIER, r -> r.loyaltySchemeTier, (r, v) -> r.loyaltySchemeTier = v)
+            .addList(FLIGHTS, FLIGHT_SCHEMA, r -> r.flightsTaken)
+            .addString("loyaltySchemeName", r -> r.loyaltySchemeName, (r, v) -> r.loyaltySchemeName = v)
+            .addBytes("randomLob", r -> r.randomLob, (r, v) -> r.randomLob = v);
+
+    /**
+     * @param value a stored AirmilesRecord
+     * @return true if value is in our format rather than JSON
+     */
+    public static boolean isBinary(byte[] value) {
+        return RECORD_SCHEMA.isRecord(value);
+    }
+
+    /**
+     * @param ar
+     * @return ar in our binary format
+     */
+    public static byte[] encode(AirmilesRecord ar) {
+        return RECORD_SCHEMA.encode(ar);
+    }
+
+    /**
+     * @param value a binary AirmilesRecord
+     * @return the AirmilesRecord value stands for
+     */
+    public static AirmilesRecord decode(byte[] value) {
+        return RECORD_SCHEMA.decode(value);
+    }
+
+    /**
+     * Add a flight to a binary record, the same way AirmilesRecord.addFlight
+     * would, without decoding it. The points, tier and flight count are updated
+     * where they are, and the new flight goes on the end.
+     *
+     * @param value
+     * @param fromAirport
+     * @param toAirport
+     * @param flightDate
+     * @param points
+     * @return the new record
+     */
+    public static byte[] addFlight(byte[] value, String fromAirport, String toAirport, TimestampType flightDate,
+            long points) {
+
+        boolean startAgain = RECORD_SCHEMA.getListSize(value, FLIGHTS) > MAX_FLIGHTS;
+
+        byte[] newValue = RECORD_SCHEMA.addToList(value, FLIGHTS,
+                new AirmilesFlight(fromAirport, toAirport, flightDate, points), startAgain);
+
+        if (startAgain) {
+            RECORD_SCHEMA.setLong(newValue, TIER, RECORD_SCHEMA.getLong(newValue, TIER) + 1);
+        }
+
+        RECORD_SCHEMA.setLong(newValue, POINTS, RECORD_SCHEMA.getLong(newValue, POINTS) + points);
+
+        return newValue;
+    }
+
+}
@@ -0,0 +1,477 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package jsr107.sandbox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import org.voltdb.autojar.IsNeededByAVoltDBProcedure;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Describes how to turn a class into a compact tagless binary record and back.
+ * You add the fields you want stored, with a getter and setter for each, and
+ * the schema works out the layout:
+ *
+ * <pre>
+ * marker (1 byte), if this is a top level record
+ * fixed size fields, in the order they were added - longs and timestamps (8),
+ * and the number of elements in the list, if there is one (4)
+ * variable size fields, in the order they were added - Strings and byte[] as
+ * a length (4), or -1 for null, and the bytes
+ * list elements, each one written using the element schema
+ * </pre>
+ *
+ * Because fixed size fields are always at the same offset, getLong and setLong
+ * can read and change them without decoding the record, and addToList can
+ * append an element by copying the record and patching the count.
+ *
+ * @param <T> the class we store
+ */
+@IsNeededByAVoltDBProcedure
+public class BinaryRecordSchema<T> {
+
+    public enum FieldType {
+        LONG, TIMESTAMP, STRING, BYTES, LIST
+    }
+
+    /**
+     * How we store a null TimestampType.
+     */
+    public static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+
+    static class Field<T> {
+
+        String name;
+        FieldType type;
+        int offset = -1;
+
+        ToLongFunction<T> longGetter;
+        ObjLongConsumer<T> longSetter;
+        Function<T, Object> getter;
+        BiConsumer<T, Object> setter;
+        BinaryRecordSchema<Object> elementSchema;
+
+        Field(String name, FieldType type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    Class<T> recordClass;
+
+    Supplier<T> factory;
+
+    boolean hasMarker;
+
+    byte marker;
+
+    ArrayList<Field<T>> fixedFields = new ArrayList<>();
+
+    ArrayList<Field<T>> variableFields = new ArrayList<>();
+
+    HashMap<String, Field<T>> fieldsByName = new HashMap<>();
+
+    Field<T> listField = null;
+
+    /**
+     * Where the variable size fields start.
+     */
+    int fixedLength;
+
+    /**
+     * Create a schema for top level records, which start with marker.
+     *
+     * @param recordClass
+     * @param marker      first byte of every record. Should be something the
+     *                    other formats in the cache can't start with.
+     * @param factory     creates an empty T for decode to fill in
+     */
+    public BinaryRecordSchema(Class<T> recordClass, byte marker, Supplier<T> factory) {
+        this.recordClass = recordClass;
+        this.factory = factory;
+        this.hasMarker = true;
+        this.marker = marker;
+        this.fixedLength = 1;
+    }
+
+    /**
+     * Create a schema for list elements, which don't have a marker.
+     *
+     * @param recordClass
+     * @param factory     creates an empty T for decode to fill in
+     */
+    public BinaryRecordSchema(Class<T> recordClass, Supplier<T> factory) {
+        this.recordClass = recordClass;
+        this.factory = factory;
+        this.hasMarker = false;
+        this.fixedLength = 0;
+    }
+
+    public BinaryRecordSchema<T> addLong(String name, ToLongFunction<T> getter, ObjLongConsumer<T> setter) {
+
+        Field<T> f = addFixedField(name, FieldType.LONG, 8);
+        f.longGetter = getter;
+        f.longSetter = setter;
+        return this;
+    }
+
+    public BinaryRecordSchema<T> addTimestamp(String name, Function<T, TimestampType> getter,
+            BiConsumer<T, TimestampType> setter) {
+
+        Field<T> f = addFixedField(name, FieldType.TIMESTAMP, 8);
+        f.getter = getter::apply;
+        f.setter = (t, v) -> setter.accept(t, (TimestampType) v);
+        return this;
+    }
+
+    public BinaryRecordSchema<T> addString(String name, Function<T, String> getter, BiConsumer<T, String> setter) {
+
+        Field<T> f = addVariableField(name, FieldType.STRING);
+        f.getter = getter::apply;
+        f.setter = (t, v) -> setter.accept(t, (String) v);
+        return this;
+    }
+
+    public BinaryRecordSchema<T> addBytes(String name, Function<T, byte[]> getter, BiConsumer<T, byte[]> setter) {
+
+        Field<T> f = addVariableField(name, FieldType.BYTES);
+        f.getter = getter::apply;
+        f.setter = (t, v) -> setter.accept(t, (byte[]) v);
+        return this;
+    }
+
+    /**
+     * Add a list. Its elements go at the end of the record, so there can only
+     * be one. decode adds elements to the list getter returns.
+     *
+     * @param name
+     * @param elementSchema schema for the elements, created without a marker
+     * @param getter
+     * @return this
+     */
+    @SuppressWarnings("unchecked")
+    public <E> BinaryRecordSchema<T> addList(String name, BinaryRecordSchema<E> elementSchema,
+            Function<T, ? extends List<E>> getter) {
+
+        if (listField != null) {
+            throw new IllegalStateException(recordClass.getSimpleName() + " already has a list");
+        }
+
+        if (elementSchema.hasMarker) {
+            throw new IllegalArgumentException("Element schemas don't have a marker");
+        }
+
+        listField = addFixedField(name, FieldType.LIST, 4);
+        listField.getter = getter::apply;
+        listField.elementSchema = (BinaryRecordSchema<Object>) elementSchema;
+        return this;
+    }
+
+    Field<T> addFixedField(String name, FieldType type, int size) {
+
+        Field<T> f = newField(name, type);
+        f.offset = fixedLength;
+        fixedLength += size;
+        fixedFields.add(f);
+        return f;
+    }
+
+    Field<T> addVariableField(String name, FieldType type) {
+
+        Field<T> f = newField(name, type);
+        variableFields.add(f);
+        return f;
+    }
+
+    Field<T> newField(String name, FieldType type) {
+
+        if (fieldsByName.containsKey(name)) {
+            throw new IllegalArgumentException(recordClass.getSimpleName() + " already has a field called " + name);
+        }
+
+        Field<T> f = new Field<>(name, type);
+        fieldsByName.put(name, f);
+        return f;
+    }
+
+    /**
+     * @param value
+     * @return true if value is a record of ours
+     */
+    public boolean isRecord(byte[] value) {
+        return hasMarker && value != null && value.length >= fixedLength && value[0] == marker;
+    }
+
+    /**
+     * @param record
+     * @return record in our format
+     */
+    public byte[] encode(T record) {
+
+        ByteBuffer buf = ByteBuffer.allocate(getEncodedLength(record));
+        write(buf, record);
+        return buf.array();
+    }
+
+    /**
+     * @param value a record of ours
+     * @return the T value stands for
+     */
+    public T decode(byte[] value) {
+
+        checkRecord(value);
+        return read(ByteBuffer.wrap(value));
+    }
+
+    /**
+     * @param value a record of ours
+     * @param name  a long field
+     * @return the field's value
+     */
+    public long getLong(byte[] value, String name) {
+
+        checkRecord(value);
+        return ByteBuffer.wrap(value).getLong(getField(name, FieldType.LONG).offset);
+    }
+
+    /**
+     * Change a long field in place.
+     *
+     * @param value    a record of ours
+     * @param name     a long field
+     * @param newValue
+     */
+    public void setLong(byte[] value, String name, long newValue) {
+
+        checkRecord(value);
+        ByteBuffer.wrap(value).putLong(getField(name, FieldType.LONG).offset, newValue);
+    }
+
+    /**
+     * @param value a record of ours
+     * @param name  our list
+     * @return how many elements the list has
+     */
+    public int getListSize(byte[] value, String name) {
+
+        checkRecord(value);
+        return ByteBuffer.wrap(value).getInt(getField(name, FieldType.LIST).offset);
+    }
+
+    /**
+     * Add an element to the end of our list without decoding the record.
+     *
+     * @param value     a record of ours
+     * @param name      our list
+     * @param element
+     * @param clearList true to throw away the elements we already have first
+     * @return the new record
+     */
+    public byte[] addToList(byte[] value, String name, Object element, boolean clearList) {
+
+        checkRecord(value);
+        Field<T> f = getField(name, FieldType.LIST);
+
+        ByteBuffer oldBuf = ByteBuffer.wrap(value);
+        int keepLength = clearList ? getListStart(oldBuf) : value.length;
+        int listSize = clearList ? 0 : oldBuf.getInt(f.offset);
+
+        byte[] newValue = new byte[keepLength + f.elementSchema.getEncodedLength(element)];
+        System.arraycopy(value, 0, newValue, 0, keepLength);
+
+        ByteBuffer buf = ByteBuffer.wrap(newValue);
+        buf.putInt(f.offset, listSize + 1);
+        buf.position(keepLength);
+        f.elementSchema.write(buf, element);
+
+        return newValue;
+    }
+
+    Field<T> getField(String name, FieldType type) {
+
+        Field<T> f = fieldsByName.get(name);
+
+        if (f == null || f.type != type) {
+            throw new IllegalArgumentException(recordClass.getSimpleName() + " has no " + type + " field called " + name);
+        }
+
+        return f;
+    }
+
+    /**
+     * @param buf a record of ours
+     * @return where the list elements start
+     */
+    int getListStart(ByteBuffer buf) {
+
+        int pos = fixedLength;
+
+        for (int i = 0; i < variableFields.size(); i++) {
+            pos += 4 + Math.max(0, buf.getInt(pos));
+        }
+
+        return pos;
+    }
+
+    int getEncodedLength(T record) {
+
+        int length = fixedLength;
+
+        for (Field<T> f : variableFields) {
+
+            length += 4;
+            Object v = f.getter.apply(record);
+
+            if (v instanceof String) {
+                length += ((String) v).getBytes(StandardCharsets.UTF_8).length;
+            } else if (v != null) {
+                length += ((byte[]) v).length;
+            }
+        }
+
+        if (listField != null) {
+            for (Object element : getList(record)) {
+                length += listField.elementSchema.getEncodedLength(element);
+            }
+        }
+
+        return length;
+    }
+
+    void write(ByteBuffer buf, T record) {
+
+        if (hasMarker) {
+            buf.put(marker);
+        }
+
+        for (Field<T> f : fixedFields) {
+
+            switch (f.type) {
+            case LONG:
+                buf.putLong(f.longGetter.applyAsLong(record));
+                break;
+            case TIMESTAMP:
+                TimestampType ts = (TimestampType) f.getter.apply(record);
+                buf.putLong(ts == null ? NULL_TIMESTAMP : ts.getTime());
+                break;
+            default:
+                buf.putInt(getList(record).size());
+            }
+        }
+
+        for (Field<T> f : variableFields) {
+
+            Object v = f.getter.apply(record);
+
+            if (v == null) {
+                buf.putInt(-1);
+            } else {
+                byte[] bytes = f.type == FieldType.STRING ? ((String) v).getBytes(StandardCharsets.UTF_8)
+                        : (byte[]) v;
+                buf.putInt(bytes.length);
+                buf.put(bytes);
+            }
+        }
+
+        if (listField != null) {
+            for (Object element : getList(record)) {
+                listField.elementSchema.write(buf, element);
+            }
+        }
+    }
+
+    T read(ByteBuffer buf) {
+
+        T record = factory.get();
+        int listSize = 0;
+
+        if (hasMarker) {
+            buf.get();
+        }
+
+        for (Field<T> f : fixedFields) {
+
+            switch (f.type) {
+            case LONG:
+                f.longSetter.accept(record, buf.getLong());
+                break;
+            case TIMESTAMP:
+                long micros = buf.getLong();
+                f.setter.accept(record, micros == NULL_TIMESTAMP ? null : new TimestampType(micros));
+                break;
+            default:
+                listSize = buf.getInt();
+            }
+        }
+
+        for (Field<T> f : variableFields) {
+
+            int length = buf.getInt();
+
+            if (length < 0) {
+                f.setter.accept(record, null);
+            } else if (f.type == FieldType.STRING) {
+                f.setter.accept(record, new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8));
+                buf.position(buf.position() + length);
+            } else {
+                byte[] bytes = new byte[length];
+                buf.get(bytes);
+                f.setter.accept(record, bytes);
+            }
+        }
+
+        if (listField != null) {
+
+            List<Object> list = getList(record);
+
+            for (int i = 0; i < listSize; i++) {
+                list.add(listField.elementSchema.read(buf));
+            }
+        }
+
+        return record;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Object> getList(T record) {
+        return (List<Object>) listField.getter.apply(record);
+    }
+
+    void checkRecord(byte[] value) {
+
+        if (!isRecord(value)) {
+            throw new IllegalArgumentException("Not a binary " + recordClass.getSimpleName());
+        }
+    }
+
+}
@@ -28,6 +28,7 @@ import java.util.HashMap;
 import java.util.Random;
 
 import org.voltdb.jsr107.VoltDBCache;
+import org.voltdb.jsr107.VersionedValue;
 import org.voltdb.jsr107.VoltDBEntryProcessorResult;
 import org.voltdb.types.TimestampType;
 import org.voltdb.voltutil.stats.SafeHistogramCache;
@@ -37,6 +38,7 @@ import com.google.gson.Gson;
 import jsr107.AbstractEventTrackingProcedure;
 import jsr107.sandbox.AddNewFlightEntryProcessor;
 import jsr107.sandbox.AirmilesRecord;
+import jsr107.sandbox.AirmilesRecordCodec;
 
 /**
  * A thread that will do as many sync transactions as it can for a predefined
@@ -55,6 +57,11 @@ public class CacheSandboxThread implements Runnable {
 
     int writeType = DO_SIMPLE_PUTS;
 
+    /**
+     * Store AirmilesRecords using AirmilesRecordCodec instead of JSON.
+     */
+    boolean binaryRecords = false;
+
     VoltDBCache voltDBCache;
 
     int userCount;
@@ -125,7 +132,7 @@ public class CacheSandboxThread implements Runnable {
             if (i % threadCount == threadId) {
 
                 AirmilesRecord ar = new AirmilesRecord("FlyAllDay", r.nextInt(userCount), 0, randomLob);
-                byte[] arAsByteArray = g.toJson(ar).getBytes();
+                byte[] arAsByteArray = toBytes(ar);
                 ourMap.put("User_" + i, arAsByteArray);
 
                 if (++batchCount >= batchSize) {
@@ -197,7 +204,7 @@ public class CacheSandboxThread implements Runnable {
             // user does not exist; create them
 
             AirmilesRecord ar = createNewRecord();
-            byte[] arAsByteArray = g.toJson(ar).getBytes();
+            byte[] arAsByteArray = toBytes(ar);
 
             long startMs = System.currentTimeMillis();
             voltDBCache.put(userId, arAsByteArray);
@@ -215,13 +222,13 @@ public class CacheSandboxThread implements Runnable {
             } else {
 
                 // user exists - let's get their record from the stored value
-                AirmilesRecord ar = g.fromJson(new String(payload), AirmilesRecord.class);
+                AirmilesRecord ar = fromBytes(payload);
 
                 // Add another flight.
                 addNewFlight(ar);
 
                 // turn back into bytes
-                byte[] newPayload = g.toJson(ar).getBytes();
+                byte[] newPayload = toBytes(ar);
 
                 long startMs = System.currentTimeMillis();
                 voltDBCache.put(userId, newPayload);
@@ -241,14 +248,14 @@ public class CacheSandboxThread implements Runnable {
     private void doOptimisticPuts(String userId) {
 
         // See if user already exists...
-        byte[] payload = voltDBCache.get(userId);
+        VersionedValue versionedPayload = voltDBCache.getWithVersion(userId);
 
-        if (payload == null) {
+        if (versionedPayload == null) {
 
             // user does not exist; create them
 
             AirmilesRecord ar = createNewRecord();
-            byte[] arAsByteArray = g.toJson(ar).getBytes();
+            byte[] arAsByteArray = toBytes(ar);
 
             long startMs = System.currentTimeMillis();
             boolean ok = voltDBCache.putIfAbsent(userId, arAsByteArray);
@@ -262,7 +269,7 @@ public class CacheSandboxThread implements Runnable {
         } else {
 
             // user exists - let's get their record from the stored value
-            AirmilesRecord ar = g.fromJson(new String(payload), AirmilesRecord.class);
+            AirmilesRecord ar = fromBytes(versionedPayload.getValue());
 
             if (r.nextInt(100) == 0) {
                 // Delete user
@@ -270,7 +277,7 @@ public class CacheSandboxThread implements Runnable {
                 long startMs = System.currentTimeMillis();
 
                 // Delete, but only if unchanged...
-                boolean ok = voltDBCache.remove(userId, g.toJson(ar).getBytes());
+                boolean ok = voltDBCache.remove(userId, versionedPayload.getVersion());
 
                 if (ok) {
                     shc.reportLatency("remove_ok", startMs, "", 1000);
@@ -282,10 +289,13 @@ public class CacheSandboxThread implements Runnable {
 
                 // Add a new flight...
                 addNewFlight(ar);
-                byte[] newPayload = g.toJson(ar).getBytes();
+                byte[] newPayload = toBytes(ar);
 
                 long startMs = System.currentTimeMillis();
-                boolean ok = voltDBCache.replace(userId, payload, newPayload);
+
+                // Replace, but only if unchanged. We send the version, not the old
+                // payload...
+                boolean ok = voltDBCache.replace(userId, versionedPayload.getVersion(), newPayload);
 
                 if (ok) {
                     shc.reportLatency("replace_ok", startMs, "time to call replace_ok", 1000);
@@ -364,6 +374,32 @@ public class CacheSandboxThread implements Runnable {
         return (long) eventsPerMS;
     }
 
+    /**
+     * @param ar
+     * @return ar as JSON or binary, depending on binaryRecords
+     */
+    private byte[] toBytes(AirmilesRecord ar) {
+
+        if (binaryRecords) {
+            return AirmilesRecordCodec.encode(ar);
+        }
+
+        return g.toJson(ar).getBytes();
+    }
+
+    /**
+     * @param payload a stored AirmilesRecord, in either format
+     * @return the AirmilesRecord
+     */
+    private AirmilesRecord fromBytes(byte[] payload) {
+
+        if (AirmilesRecordCodec.isBinary(payload)) {
+            return AirmilesRecordCodec.decode(payload);
+        }
+
+        return g.fromJson(new String(payload), AirmilesRecord.class);
+    }
+
     /**
      * @return the writeType
      */
@@ -378,4 +414,19 @@ public class CacheSandboxThread implements Runnable {
         this.writeType = writeType;
     }
 
+    /**
+     * @return true if we store AirmilesRecords in binary
+     */
+    public boolean isBinaryRecords() {
+        return binaryRecords;
+    }
+
+    /**
+     * @param binaryRecords true to store AirmilesRecords using
+     *                      AirmilesRecordCodec, false for JSON
+     */
+    public void setBinaryRecords(boolean binaryRecords) {
+        this.binaryRecords = binaryRecords;
+    }
+
 }
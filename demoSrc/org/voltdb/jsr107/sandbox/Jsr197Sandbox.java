@@ -44,8 +44,8 @@ public class Jsr197Sandbox {
 
         msg("Parameters:" + Arrays.toString(args));
 
-        if (args.length != 8) {
-            msg("Usage: hostnames usercount threads durationseconds batchsize lobsize eraseusers1_or_0 enable_events_1_or_0");
+        if (args.length != 8 && args.length != 9) {
+            msg("Usage: hostnames usercount threads durationseconds batchsize lobsize eraseusers1_or_0 enable_events_1_or_0 [binary_records_1_or_0]");
             System.exit(1);
         }
 
@@ -80,6 +80,13 @@ public class Jsr197Sandbox {
             enableEvents = true;
         }
 
+        // store AirmilesRecords using AirmilesRecordCodec instead of JSON
+        boolean binaryRecords = false;
+
+        if (args.length > 8 && Integer.parseInt(args[8]) > 0) {
+            binaryRecords = true;
+        }
+
         try {
             // Create an arbitrary binary payload
             byte[] randomLob = new byte[lobSize];
@@ -94,6 +101,7 @@ public class Jsr197Sandbox {
                         9092);
                 sbArray[i] = new CacheSandboxThread(cacheArray[i], userCount, durationSeconds, i, lobSize, threads,
                         batchSize);
+                sbArray[i].setBinaryRecords(binaryRecords);
             }
 
             cacheArray[0].setEvents(enableEvents);
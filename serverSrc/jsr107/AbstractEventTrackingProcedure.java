@@ -49,27 +49,54 @@ package jsr107;
 import org.voltdb.SQLStmt;
 import org.voltdb.VoltProcedure;
 import org.voltdb.VoltTable;
+import org.voltdb.types.TimestampType;
 
 public abstract class AbstractEventTrackingProcedure extends VoltProcedure {
 
     // @formatter:off
 
-	public static final SQLStmt getParam = new SQLStmt(
-			"SELECT param_value FROM kv_parameters WHERE c = ? AND param_name = ?;");
+	public static final SQLStmt getParams = new SQLStmt(
+			"SELECT param_name, param_value FROM kv_parameters WHERE c = ?;");
 
-    public static final SQLStmt exportEvent = new SQLStmt(
-            "INSERT INTO kv_deltas\n"
-            + "(c,k,v,event_type)\n" //TODO
-            + "VALUES \n"
-            + "(?,?,?,?);");
+	public static final SQLStmt getFilters = new SQLStmt(
+			"SELECT key_prefix, event_types FROM kv_event_filters WHERE c = ?;");
+
+    public static final SQLStmt exportEvent0 = new SQLStmt(getExportEventSql(0));
+    public static final SQLStmt exportEvent1 = new SQLStmt(getExportEventSql(1));
+    public static final SQLStmt exportEvent2 = new SQLStmt(getExportEventSql(2));
+    public static final SQLStmt exportEvent3 = new SQLStmt(getExportEventSql(3));
+    public static final SQLStmt exportEvent4 = new SQLStmt(getExportEventSql(4));
+    public static final SQLStmt exportEvent5 = new SQLStmt(getExportEventSql(5));
+    public static final SQLStmt exportEvent6 = new SQLStmt(getExportEventSql(6));
+    public static final SQLStmt exportEvent7 = new SQLStmt(getExportEventSql(7));
 
  // @formatter:on
 
+    /**
+     * How many kv_deltas_N streams we have. Has to match create_db.sql.
+     */
+    public static final int EVENT_BUCKETS = 8;
+
+    public static final String EVENT_STREAM_PREFIX = "kv_deltas_";
+
+    private static final SQLStmt[] exportEvents = { exportEvent0, exportEvent1, exportEvent2, exportEvent3,
+            exportEvent4, exportEvent5, exportEvent6, exportEvent7 };
+
     public static String CREATED = "C";
     public static String EXPIRED = "X";
     public static String UPDATED = "U";
     public static String REMOVED = "D";
 
+    public static final String ENABLE_EVENTS = "ENABLE_EVENTS";
+    public static final String TTL_SECONDS = "TTL_SECONDS";
+    public static final String OLD_VALUES = "OLD_VALUES";
+
+    /**
+     * Add this to a query on kv to ignore entries that have expired but that
+     * ExpireEntries hasn't got round to deleting yet.
+     */
+    public static final String NOT_EXPIRED = " AND (expires_at IS NULL OR expires_at > NOW)";
+
     public static final byte OK = 0;
     public static final byte OK_BUT_NOT_FOUND = 1;
     public static final byte BAD_CLASSNAME = -1;
@@ -82,20 +109,171 @@ public abstract class AbstractEventTrackingProcedure extends VoltProcedure {
     public static final byte BAD_THREW_RUNTIME_ENTRYPROCESSOR_ERROR = -8;
     public static final byte BAD_THREW_RUNTIME_ERROR = -9;
 
-    protected void queueEventCheck(String cacheName) {
-        voltQueueSQL(getParam, cacheName, "ENABLE_EVENTS");
+    /**
+     * Most SQL statements we can queue before we have to call voltExecuteSQL.
+     */
+    public static final int MAX_STATEMENTS_PER_BATCH = 200;
+
+    /**
+     * @param bucket
+     * @return SQL to insert an event into kv_deltas_bucket
+     */
+    private static String getExportEventSql(int bucket) {
+
+        return "INSERT INTO " + EVENT_STREAM_PREFIX + bucket + "\n"
+                + "(c,k,v,event_type,old_v,event_ts)\n"
+                + "VALUES \n"
+                + "(?,?,?,?,?,?);";
+    }
+
+    /**
+     * Each cache's events all go to one of EVENT_BUCKETS streams, so that
+     * listeners don't have to read every event for every cache. The client uses
+     * this too, so it must never change.
+     *
+     * @param cacheName
+     * @return which kv_deltas_N stream cacheName's events go to
+     */
+    public static int getEventBucket(String cacheName) {
+        return Math.floorMod(cacheName.hashCode(), EVENT_BUCKETS);
+    }
+
+    /**
+     * @param cacheName
+     * @return the stream and topic that cacheName's events go to
+     */
+    public static String getEventTopic(String cacheName) {
+        return EVENT_STREAM_PREFIX + getEventBucket(cacheName);
+    }
+
+    /**
+     * @param cacheName
+     * @return the statement that exports an event for cacheName
+     */
+    protected static SQLStmt getExportEvent(String cacheName) {
+        return exportEvents[getEventBucket(cacheName)];
+    }
+
+    /**
+     * Get the cache's parameters and event filters. Each site keeps a snapshot
+     * of them, which RefreshCacheConfig replaces whenever they change, so
+     * normally this doesn't touch the database at all and a write with events
+     * off is a single batch. If this site doesn't have a snapshot yet we read
+     * them in a batch of our own, so don't call it with statements queued.
+     *
+     * @param cacheName
+     * @return the cache's parameters
+     */
+    protected CacheConfig getCacheConfig(String cacheName) {
+
+        CacheConfig config = CacheConfig.get(cacheName);
+
+        if (config == null) {
+            config = loadCacheConfig(cacheName, false);
+        }
+
+        return config;
+    }
+
+    /**
+     * Read the cache's rows in kv_parameters and kv_event_filters and make them
+     * this site's snapshot.
+     *
+     * @param cacheName
+     * @param isFinalBatch true if this is the last batch of the transaction
+     * @return the cache's parameters
+     */
+    protected CacheConfig loadCacheConfig(String cacheName, boolean isFinalBatch) {
+
+        voltQueueSQL(getParams, cacheName);
+        voltQueueSQL(getFilters, cacheName);
+
+        final VoltTable[] configTables = voltExecuteSQL(isFinalBatch);
+        final CacheConfig config = new CacheConfig(configTables[0], configTables[1]);
+        CacheConfig.put(cacheName, config);
 
+        return config;
     }
 
-    protected void reportEvent(String cacheName, String k, byte[] v, String eventType, VoltTable[] results) {
+    /**
+     * Queue an event for export, unless none of the cache's event filters want
+     * it. The caller has already checked that the cache wants events. oldV only
+     * goes into kv_deltas if the cache has asked for old values, as otherwise it
+     * would double the size of most events.
+     *
+     * @param config
+     * @param cacheName
+     * @param k
+     * @param v         new value, or the value that went away for REMOVED and
+     *                  EXPIRED
+     * @param oldV      value before the change, or null if there wasn't one
+     * @param eventType
+     * @return true if we queued anything
+     */
+    protected boolean queueEvent(CacheConfig config, String cacheName, String k, byte[] v, byte[] oldV,
+            String eventType) {
 
-        if (results[results.length - 1].advanceRow() && results[results.length - 1].getLong("param_value") == 1) {
-            voltQueueSQL(exportEvent, cacheName, k, v, eventType);
+        if (!config.wantsEvent(k, eventType)) {
+            return false;
+        }
+
+        // event_ts lets listeners see how long events take to reach them...
+        voltQueueSQL(getExportEvent(cacheName), cacheName, k, v, eventType, config.isOldValuesEnabled() ? oldV : null,
+                getTransactionTime());
+        return true;
+    }
+
+    /**
+     * Export an event, if this cache wants them. Runs a batch of its own.
+     */
+    protected void reportEvent(CacheConfig config, String cacheName, String k, byte[] v, byte[] oldV,
+            String eventType) {
+
+        if (config.isEventsEnabled() && queueEvent(config, cacheName, k, v, oldV, eventType)) {
             voltExecuteSQL();
         }
 
     }
 
+    /**
+     * Export an event as the last batch of the transaction, if this cache wants
+     * them. When it doesn't, the write that came before is the last batch and
+     * the whole call is one round trip to the execution engine.
+     */
+    protected void finishWrite(CacheConfig config, String cacheName, String k, byte[] v, byte[] oldV,
+            String eventType) {
+
+        if (config.isEventsEnabled() && queueEvent(config, cacheName, k, v, oldV, eventType)) {
+            voltExecuteSQL(true);
+        }
+
+    }
+
+    /**
+     * @param config
+     * @return when something we write now should expire, or null if this cache
+     *         doesn't have a TTL.
+     */
+    protected TimestampType getExpiryTime(CacheConfig config) {
+
+        return getExpiryTime(config.getTtlSeconds());
+    }
+
+    /**
+     * @param ttlSeconds
+     * @return ttlSeconds after the start of this transaction, or null if
+     *         ttlSeconds isn't positive.
+     */
+    protected TimestampType getExpiryTime(long ttlSeconds) {
+
+        if (ttlSeconds <= 0) {
+            return null;
+        }
+
+        // TimestampType is in microseconds...
+        return new TimestampType((getTransactionTime().getTime() + (ttlSeconds * 1000)) * 1000);
+    }
+
     public VoltTable[] run() throws VoltAbortException {
 
         return null;
@@ -0,0 +1,157 @@
+package jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.voltdb.VoltTable;
+
+/**
+ * Snapshot of one cache's rows in kv_parameters and kv_event_filters.
+ * <p>
+ * Each VoltDB site runs its transactions one at a time on its own thread, so
+ * we keep a map of snapshots per site in a ThreadLocal. A site loads a cache's
+ * snapshot the first time one of its transactions needs it, and after that
+ * only RefreshCacheConfig replaces it. The client runs RefreshCacheConfig on
+ * every partition after it changes the config. Snapshots only change inside
+ * transactions, so replicas and command log replays change them at the same
+ * point. The exception is a site that starts without a snapshot, after a
+ * rejoin or restart, in the moment between a config change and its refresh
+ * reaching that partition. It loads the new config a little early.
+ *
+ */
+public class CacheConfig {
+
+    private static final ThreadLocal<HashMap<String, CacheConfig>> siteSnapshots = ThreadLocal
+            .withInitial(HashMap::new);
+
+    HashMap<String, Long> params = new HashMap<>();
+
+    /**
+     * Key prefixes and event types that listeners have asked for. If it's
+     * empty we export everything.
+     */
+    ArrayList<String[]> filters = new ArrayList<>();
+
+    /**
+     * @param paramTable  output of 'SELECT param_name, param_value FROM
+     *                    kv_parameters WHERE c = ?'
+     * @param filterTable output of 'SELECT key_prefix, event_types FROM
+     *                    kv_event_filters WHERE c = ?'
+     */
+    public CacheConfig(VoltTable paramTable, VoltTable filterTable) {
+
+        paramTable.resetRowPosition();
+
+        while (paramTable.advanceRow()) {
+            params.put(paramTable.getString("param_name"), paramTable.getLong("param_value"));
+        }
+
+        filterTable.resetRowPosition();
+
+        while (filterTable.advanceRow()) {
+            String[] filter = { filterTable.getString("key_prefix"), filterTable.getString("event_types") };
+            filters.add(filter);
+        }
+    }
+
+    /**
+     * @param paramName
+     * @param defaultValue
+     * @return the value of paramName, or defaultValue if it's not set.
+     */
+    public long getParam(String paramName, long defaultValue) {
+
+        Long value = params.get(paramName);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        return value;
+    }
+
+    /**
+     * @return true if change data capture is enabled for this cache.
+     */
+    public boolean isEventsEnabled() {
+        return getParam(AbstractEventTrackingProcedure.ENABLE_EVENTS, 0) == 1;
+    }
+
+    /**
+     * @return true if events for this cache should carry the value from before
+     *         the change.
+     */
+    public boolean isOldValuesEnabled() {
+        return getParam(AbstractEventTrackingProcedure.OLD_VALUES, 0) == 1;
+    }
+
+    /**
+     * @param k
+     * @param eventType
+     * @return true if there are no event filters, or at least one of them wants
+     *         this event.
+     */
+    public boolean wantsEvent(String k, String eventType) {
+
+        if (filters.isEmpty()) {
+            return true;
+        }
+
+        for (String[] filter : filters) {
+            if (filter[1].contains(eventType) && k.startsWith(filter[0])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the cache's TTL, or 0 if entries live forever.
+     */
+    public long getTtlSeconds() {
+        return getParam(AbstractEventTrackingProcedure.TTL_SECONDS, 0);
+    }
+
+    /**
+     * @param cacheName
+     * @return this site's snapshot for cacheName, or null if we don't have one.
+     */
+    static CacheConfig get(String cacheName) {
+        return siteSnapshots.get().get(cacheName);
+    }
+
+    static void put(String cacheName, CacheConfig config) {
+        siteSnapshots.get().put(cacheName, config);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheConfig " + params + " filters=" + filters.size();
+    }
+
+}
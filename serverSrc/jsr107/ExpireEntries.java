@@ -0,0 +1,115 @@
+package jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.HashMap;
+
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+
+/**
+ * Deletes entries whose time is up, a few at a time, and reports them as
+ * EXPIRED. This is a directed procedure - the ExpireEntriesTask task runs it on
+ * every partition, so each call only has to deal with its own partition's rows
+ * and never blocks the rest of the cluster.
+ *
+ */
+public class ExpireEntries extends AbstractEventTrackingProcedure {
+
+    // @formatter:off
+
+    public static final SQLStmt getExpired = new SQLStmt(
+            "SELECT c, k, v "
+            + "FROM kv "
+            + "WHERE expires_at <= NOW "
+            + "ORDER BY expires_at, c, k "
+            + "LIMIT ?;");
+
+    public static final SQLStmt deleteKV = new SQLStmt(
+            "DELETE FROM kv WHERE c = ? AND k = ?;");
+
+ 	// @formatter:on
+
+    /**
+     * @param maxRows most rows we delete in one go
+     * @return how many rows we deleted
+     * @throws VoltAbortException
+     */
+    public VoltTable[] run(int maxRows) throws VoltAbortException {
+
+        voltQueueSQL(getExpired, maxRows);
+
+        final VoltTable[] expired = voltExecuteSQL();
+
+        // Get each cache's config before we start queueing deletes...
+        HashMap<String, CacheConfig> configs = new HashMap<>();
+
+        while (expired[0].advanceRow()) {
+
+            String c = expired[0].getString("c");
+
+            if (!configs.containsKey(c)) {
+                configs.put(c, getCacheConfig(c));
+            }
+        }
+
+        int queuedStatements = 0;
+
+        expired[0].resetRowPosition();
+
+        while (expired[0].advanceRow()) {
+
+            if (queuedStatements + 2 > MAX_STATEMENTS_PER_BATCH) {
+                voltExecuteSQL();
+                queuedStatements = 0;
+            }
+
+            String c = expired[0].getString("c");
+            String k = expired[0].getString("k");
+            CacheConfig config = configs.get(c);
+
+            voltQueueSQL(deleteKV, c, k);
+            queuedStatements++;
+
+            if (config.isEventsEnabled()) {
+                final byte[] v = expired[0].getVarbinary("v");
+
+                if (queueEvent(config, c, k, v, v, EXPIRED)) {
+                    queuedStatements++;
+                }
+            }
+        }
+
+        voltExecuteSQL(true);
+
+        VoltTable rowCount = new VoltTable(new VoltTable.ColumnInfo("expired_tuples", VoltType.BIGINT));
+        rowCount.addRow(expired[0].getRowCount());
+
+        VoltTable[] tableArray = { rowCount };
+        return tableArray;
+
+    }
+}
@@ -31,13 +31,13 @@ public class GetAndPut extends AbstractEventTrackingProcedure {
     // @formatter:off
 
 	public static final SQLStmt getV = new SQLStmt(
-			"SELECT v FROM kv WHERE c = ? AND k = ?;");
+			"SELECT v FROM kv WHERE c = ? AND k = ?" + NOT_EXPIRED + ";");
 
     public static final SQLStmt upsertKV = new SQLStmt(
             "UPSERT INTO kv\n"
-            + "(c,k,v)\n"
+            + "(c,k,v,ver,expires_at)\n"
             + "VALUES \n"
-            + "(?,?,?);");
+            + "(?,?,?,?,?);");
 
 
 
@@ -45,21 +45,21 @@ public class GetAndPut extends AbstractEventTrackingProcedure {
 
     public VoltTable[] run(String k, String c, byte[] v) throws VoltAbortException {
 
-        voltQueueSQL(getV, c, k);
-        queueEventCheck(c);
+        final CacheConfig config = getCacheConfig(c);
 
-        final VoltTable[] oldValues = voltExecuteSQL();
+        // Statements in a batch run in order, so getV sees the old value...
+        voltQueueSQL(getV, c, k);
+        voltQueueSQL(upsertKV, c, k, v, getUniqueId(), getExpiryTime(config));
 
-        voltQueueSQL(upsertKV, c, k, v);
+        final VoltTable[] oldValues = voltExecuteSQL(!config.isEventsEnabled());
 
         if (oldValues[0].advanceRow()) {
-            reportEvent(c, k, v, UPDATED, oldValues);
+            finishWrite(config, c, k, v, oldValues[0].getVarbinary("v"), UPDATED);
         } else {
-            reportEvent(c, k, v, CREATED, oldValues);
+            finishWrite(config, c, k, v, null, CREATED);
         }
 
-        voltExecuteSQL(true);
-
+        // The client expects the old value to be second from last...
         return oldValues;
     }
 }
@@ -31,10 +31,10 @@ public class GetAndRemove extends AbstractEventTrackingProcedure {
     // @formatter:off
 
 	public static final SQLStmt getV = new SQLStmt(
-			"SELECT v FROM kv WHERE c = ? AND k = ?;");
+			"SELECT v FROM kv WHERE c = ? AND k = ?" + NOT_EXPIRED + ";");
 
     public static final SQLStmt deleteKV = new SQLStmt(
-            "DELETE FROM kv WHERE c = ? AND k = ?;");
+            "DELETE FROM kv WHERE c = ? AND k = ?" + NOT_EXPIRED + ";");
 
 
 
@@ -42,21 +42,20 @@ public class GetAndRemove extends AbstractEventTrackingProcedure {
 
     public VoltTable[] run(String k, String c) throws VoltAbortException {
 
+        final CacheConfig config = getCacheConfig(c);
+
+        // Statements in a batch run in order, so getV sees the old value...
         voltQueueSQL(getV, c, k);
-        queueEventCheck(c);
+        voltQueueSQL(deleteKV, c, k);
 
-        final VoltTable[] oldValues = voltExecuteSQL();
+        final VoltTable[] oldValues = voltExecuteSQL(!config.isEventsEnabled());
 
         if (oldValues[0].advanceRow()) {
-
-            voltQueueSQL(deleteKV, c, k);
-            reportEvent(c, k, oldValues[0].getVarbinary("v"), REMOVED, oldValues);
-            voltExecuteSQL(true);
-            return oldValues;
-
+            final byte[] oldV = oldValues[0].getVarbinary("v");
+            finishWrite(config, c, k, oldV, oldV, REMOVED);
         }
 
-        return voltExecuteSQL(true);
-
+        // The client expects the old value to be second from last...
+        return oldValues;
     }
 }
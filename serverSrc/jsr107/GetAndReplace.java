@@ -25,19 +25,20 @@ package jsr107;
 
 import org.voltdb.SQLStmt;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
 
 public class GetAndReplace extends AbstractEventTrackingProcedure {
 
     // @formatter:off
 
 	public static final SQLStmt getV = new SQLStmt(
-			"SELECT v FROM kv WHERE c = ? AND k = ?;");
+			"SELECT v FROM kv WHERE c = ? AND k = ?" + NOT_EXPIRED + ";");
 
     public static final SQLStmt upsertKV = new SQLStmt(
             "UPSERT INTO kv\n"
-            + "(c,k,v)\n"
+            + "(c,k,v,ver,expires_at)\n"
             + "VALUES \n"
-            + "(?,?,?);");
+            + "(?,?,?,?,?);");
 
 
 
@@ -45,21 +46,28 @@ public class GetAndReplace extends AbstractEventTrackingProcedure {
 
     public VoltTable[] run(String k, String c, byte[] v) throws VoltAbortException {
 
+        final CacheConfig config = getCacheConfig(c);
+
         voltQueueSQL(getV, c, k);
-        queueEventCheck(c);
 
         final VoltTable[] oldValues = voltExecuteSQL();
 
+        VoltTable writeResult;
+
         if (oldValues[0].advanceRow()) {
 
-            voltQueueSQL(upsertKV, c, k, v);
+            voltQueueSQL(upsertKV, c, k, v, getUniqueId(), getExpiryTime(config));
+            writeResult = voltExecuteSQL(!config.isEventsEnabled())[0];
+            finishWrite(config, c, k, v, oldValues[0].getVarbinary("v"), UPDATED);
 
-            reportEvent(c, k, v, UPDATED, oldValues);
+        } else {
 
+            writeResult = new VoltTable(new VoltTable.ColumnInfo("modified_tuples", VoltType.BIGINT));
+            writeResult.addRow(0);
         }
 
-        voltExecuteSQL(true);
-
-        return oldValues;
+        // The client expects the old value to be second from last...
+        VoltTable[] tableArray = { oldValues[0], writeResult };
+        return tableArray;
     }
 }
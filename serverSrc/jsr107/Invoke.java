@@ -40,13 +40,13 @@ public class Invoke extends AbstractEventTrackingProcedure {
     // @formatter:off
 
 	public static final SQLStmt getV = new SQLStmt(
-			"SELECT v FROM kv WHERE c = ? AND k = ?;");
+			"SELECT v FROM kv WHERE c = ? AND k = ?" + NOT_EXPIRED + ";");
 
     public static final SQLStmt upsertKV = new SQLStmt(
             "UPSERT INTO kv\n"
-            + "(c,k,v)\n"
+            + "(c,k,v,ver,expires_at)\n"
             + "VALUES \n"
-            + "(?,?,?);");
+            + "(?,?,?,?,?);");
 
     public static final SQLStmt deleteKV = new SQLStmt(
             "DELETE FROM kv WHERE c = ? AND k = ?;");
@@ -73,6 +73,7 @@ public class Invoke extends AbstractEventTrackingProcedure {
         VoltTable[] results = null;
         MutableEntry<String, byte[]> theEntry = null;
         boolean previouslyExisted = false;
+        byte[] oldValue = null;
 
         EntryProcessor<String, byte[], VoltTable[]> ourProcessor = processorMap
                 .get(c + System.lineSeparator() + processorClassName);
@@ -121,14 +122,15 @@ public class Invoke extends AbstractEventTrackingProcedure {
 
         }
 
+        final CacheConfig config = getCacheConfig(c);
+
         voltQueueSQL(getV, c, k);
-        queueEventCheck(c);
 
         final VoltTable[] oldValues = voltExecuteSQL();
 
         if (oldValues[0].advanceRow()) {
             previouslyExisted = true;
-            byte[] oldValue = oldValues[0].getVarbinary("v");
+            oldValue = oldValues[0].getVarbinary("v");
             theEntry = new VoltDBMutableEntry(k, oldValue, true);
         } else {
             this.setAppStatusCode(OK_BUT_NOT_FOUND);
@@ -145,15 +147,30 @@ public class Invoke extends AbstractEventTrackingProcedure {
             return convertErrorToVoltTable(e);
         }
 
+        // We already know everything we need, so the change and its event go in
+        // a single batch...
+        final boolean events = config.isEventsEnabled();
+
         if (theEntry.exists()) {
-            voltQueueSQL(upsertKV, c, k, theEntry.getValue());
-            reportEvent(c, k, theEntry.getValue(), UPDATED, oldValues);
+            voltQueueSQL(upsertKV, c, k, theEntry.getValue(), getUniqueId(), getExpiryTime(config));
+
+            if (events) {
+                queueEvent(config, c, k, theEntry.getValue(), oldValue, previouslyExisted ? UPDATED : CREATED);
+            }
+
+            voltExecuteSQL(true);
+
         } else if (previouslyExisted) {
             voltQueueSQL(deleteKV, c, k);
-            reportEvent(c, k, theEntry.getValue(), REMOVED, oldValues);
+
+            // Like every other REMOVED, the event carries the value that went away...
+            if (events) {
+                queueEvent(config, c, k, oldValue, oldValue, REMOVED);
+            }
+
+            voltExecuteSQL(true);
         }
 
-        voltExecuteSQL(true);
 
         return results;
 
@@ -30,36 +30,47 @@ public class Put extends AbstractEventTrackingProcedure {
 
     // @formatter:off
 
+	public static final SQLStmt getK = new SQLStmt(
+			"SELECT k FROM kv WHERE c = ? AND k = ?" + NOT_EXPIRED + ";");
+
 	public static final SQLStmt getV = new SQLStmt(
-			"SELECT v FROM kv WHERE c = ? AND k = ?;");
+			"SELECT v FROM kv WHERE c = ? AND k = ?" + NOT_EXPIRED + ";");
 
     public static final SQLStmt upsertKV = new SQLStmt(
             "UPSERT INTO kv\n"
-            + "(c,k,v)\n"
+            + "(c,k,v,ver,expires_at)\n"
             + "VALUES \n"
-            + "(?,?,?);");
-
-
+            + "(?,?,?,?,?);");
 
  	// @formatter:on
 
     public VoltTable[] run(String k, String c, byte[] v) throws VoltAbortException {
 
-        voltQueueSQL(getV, c, k);
-        queueEventCheck(c);
+        final CacheConfig config = getCacheConfig(c);
+
+        if (!config.isEventsEnabled()) {
+            // Nobody cares what was there before, so it's just the upsert...
+            voltQueueSQL(upsertKV, c, k, v, getUniqueId(), getExpiryTime(config));
+            return voltExecuteSQL(true);
+        }
+
+        // Only read the old value if the event is going to carry it...
+        final boolean wantOldValue = config.isOldValuesEnabled();
+
+        // Statements in a batch run in order, so getK sees the old value...
+        voltQueueSQL(wantOldValue ? getV : getK, c, k);
+        voltQueueSQL(upsertKV, c, k, v, getUniqueId(), getExpiryTime(config));
 
         final VoltTable[] oldValues = voltExecuteSQL();
 
-        if (oldValues[0].getRowCount() == 0) {
-            reportEvent(c, k, v, CREATED, oldValues);
+        if (oldValues[0].advanceRow()) {
+            finishWrite(config, c, k, v, wantOldValue ? oldValues[0].getVarbinary("v") : null, UPDATED);
         } else {
-            reportEvent(c, k, v, UPDATED, oldValues);
+            finishWrite(config, c, k, v, null, CREATED);
         }
 
-        voltQueueSQL(upsertKV, c, k, v);
-
-        voltExecuteSQL(true);
-
-        return oldValues;
+        // No need to send the old value back...
+        VoltTable[] tableArray = { oldValues[1] };
+        return tableArray;
     }
 }
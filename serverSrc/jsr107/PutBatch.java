@@ -0,0 +1,125 @@
+package jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.HashMap;
+
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Put a batch of key/value pairs that all live in the same partition. The
+ * client groups the pairs by partition and passes one of the keys as
+ * 'partitionKey' so we get routed to the right place.
+ *
+ */
+public class PutBatch extends AbstractEventTrackingProcedure {
+
+    // @formatter:off
+
+    public static final SQLStmt getKs = new SQLStmt(
+            "SELECT k FROM kv WHERE c = ? AND k IN ?" + NOT_EXPIRED + ";");
+
+    public static final SQLStmt getKVs = new SQLStmt(
+            "SELECT k, v FROM kv WHERE c = ? AND k IN ?" + NOT_EXPIRED + ";");
+
+    public static final SQLStmt upsertKV = new SQLStmt(
+            "UPSERT INTO kv\n"
+            + "(c,k,v,ver,expires_at)\n"
+            + "VALUES \n"
+            + "(?,?,?,?,?);");
+
+ 	// @formatter:on
+
+    /**
+     * @param partitionKey any key in kvRows
+     * @param c            cache name
+     * @param kvRows       a VoltTable with the columns 'k' (STRING) and 'v'
+     *                     (VARBINARY)
+     * @return the number of rows we upserted
+     * @throws VoltAbortException
+     */
+    public VoltTable[] run(String partitionKey, String c, VoltTable kvRows) throws VoltAbortException {
+
+        String[] keys = new String[kvRows.getRowCount()];
+
+        for (int i = 0; kvRows.advanceRow(); i++) {
+            keys[i] = kvRows.getString("k");
+        }
+
+        final CacheConfig config = getCacheConfig(c);
+
+        final boolean events = config.isEventsEnabled();
+
+        // Only read the old values if UPDATED events are going to carry them...
+        final boolean wantOldValues = events && config.isOldValuesEnabled();
+
+        // Find out which keys already exist...
+        voltQueueSQL(wantOldValues ? getKVs : getKs, c, keys);
+
+        final VoltTable[] oldValues = voltExecuteSQL();
+
+        HashMap<String, byte[]> existingKeys = new HashMap<>();
+
+        while (oldValues[0].advanceRow()) {
+            existingKeys.put(oldValues[0].getString("k"), wantOldValues ? oldValues[0].getVarbinary("v") : null);
+        }
+
+        final TimestampType expiresAt = getExpiryTime(config);
+        int queuedStatements = 0;
+
+        kvRows.resetRowPosition();
+
+        while (kvRows.advanceRow()) {
+
+            if (queuedStatements + 2 > MAX_STATEMENTS_PER_BATCH) {
+                voltExecuteSQL();
+                queuedStatements = 0;
+            }
+
+            String k = kvRows.getString("k");
+            byte[] v = kvRows.getVarbinary("v");
+
+            voltQueueSQL(upsertKV, c, k, v, getUniqueId(), expiresAt);
+            queuedStatements++;
+
+            if (events && queueEvent(config, c, k, v, existingKeys.get(k),
+                    existingKeys.containsKey(k) ? UPDATED : CREATED)) {
+                queuedStatements++;
+            }
+        }
+
+        voltExecuteSQL(true);
+
+        VoltTable rowCount = new VoltTable(new VoltTable.ColumnInfo("modified_tuples", VoltType.BIGINT));
+        rowCount.addRow(keys.length);
+
+        VoltTable[] tableArray = { rowCount };
+        return tableArray;
+
+    }
+}
@@ -0,0 +1,80 @@
+package jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltTable;
+
+/**
+ * Put, but with a TTL for this entry instead of the cache's TTL_SECONDS. The
+ * next ordinary put, replace etc. will set the expiry back to the cache's
+ * default.
+ *
+ */
+public class PutWithTTL extends AbstractEventTrackingProcedure {
+
+    // @formatter:off
+
+	public static final SQLStmt getV = new SQLStmt(
+			"SELECT v FROM kv WHERE c = ? AND k = ?" + NOT_EXPIRED + ";");
+
+    public static final SQLStmt upsertKV = new SQLStmt(
+            "UPSERT INTO kv\n"
+            + "(c,k,v,ver,expires_at)\n"
+            + "VALUES \n"
+            + "(?,?,?,?,?);");
+
+ 	// @formatter:on
+
+    /**
+     * @param k
+     * @param c
+     * @param v
+     * @param ttlSeconds how long until v expires. If it's 0 or less v never
+     *                   expires.
+     * @return
+     * @throws VoltAbortException
+     */
+    public VoltTable[] run(String k, String c, byte[] v, long ttlSeconds) throws VoltAbortException {
+
+        final CacheConfig config = getCacheConfig(c);
+
+        voltQueueSQL(getV, c, k);
+
+        final VoltTable[] oldValues = voltExecuteSQL();
+
+        if (oldValues[0].advanceRow()) {
+            reportEvent(config, c, k, v, oldValues[0].getVarbinary("v"), UPDATED);
+        } else {
+            reportEvent(config, c, k, v, null, CREATED);
+        }
+
+        voltQueueSQL(upsertKV, c, k, v, getUniqueId(), getExpiryTime(ttlSeconds));
+        voltExecuteSQL(true);
+
+        return oldValues;
+
+    }
+}
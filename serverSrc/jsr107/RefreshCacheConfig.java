@@ -0,0 +1,46 @@
+package jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import org.voltdb.VoltTable;
+
+/**
+ * Re-read a cache's kv_parameters and kv_event_filters rows into this
+ * partition's snapshot. 'partitionKey' is one of the values @GetPartitionKeys
+ * gives us, so we get routed to the partition we want. The client runs this on
+ * every partition after SetParam etc. Run it yourself if you change those
+ * tables some other way, for example with sqlcmd.
+ *
+ */
+public class RefreshCacheConfig extends AbstractEventTrackingProcedure {
+
+    public VoltTable[] run(String partitionKey, String c) throws VoltAbortException {
+
+        loadCacheConfig(c, true);
+
+        return new VoltTable[0];
+    }
+}
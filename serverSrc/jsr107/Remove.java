@@ -33,32 +33,39 @@ public class Remove extends AbstractEventTrackingProcedure {
     public static final SQLStmt getV = new SQLStmt(
             "SELECT v "
             + "FROM kv "
-            + "WHERE c = ? AND k = ?;");
+            + "WHERE c = ? AND k = ?" + NOT_EXPIRED + ";");
 
     public static final SQLStmt deleteKV = new SQLStmt(
             "DELETE "
             + "FROM kv "
-            + "WHERE c = ? AND k = ?;");
-
-
+            + "WHERE c = ? AND k = ?" + NOT_EXPIRED + ";");
 
  	// @formatter:on
 
     public VoltTable[] run(String k, String c) {
-        voltQueueSQL(getV, c, k);
-        queueEventCheck(c);
 
-        final VoltTable[] oldValues = voltExecuteSQL();
+        final CacheConfig config = getCacheConfig(c);
 
-        if (oldValues[0].advanceRow()) {
-
-            reportEvent(c, k, oldValues[0].getVarbinary("v"), REMOVED, oldValues);
+        if (!config.isEventsEnabled()) {
+            // We don't need the value for an event, so it's just the delete,
+            // whose row count says if there was anything to remove...
             voltQueueSQL(deleteKV, c, k);
             return voltExecuteSQL(true);
+        }
 
+        // Statements in a batch run in order, so getV sees the old value...
+        voltQueueSQL(getV, c, k);
+        voltQueueSQL(deleteKV, c, k);
+
+        final VoltTable[] oldValues = voltExecuteSQL();
+
+        if (oldValues[0].advanceRow()) {
+            final byte[] oldV = oldValues[0].getVarbinary("v");
+            finishWrite(config, c, k, oldV, oldV, REMOVED);
+            VoltTable[] tableArray = { oldValues[1] };
+            return tableArray;
         }
 
         return new VoltTable[0];
-
     }
 }
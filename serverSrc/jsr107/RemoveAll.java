@@ -32,25 +32,66 @@ public class RemoveAll extends VoltProcedure {
     // @formatter:off
 
     public static final SQLStmt getParam = new SQLStmt(
-            "SELECT param_value FROM kv_parameters WHERE param_name = ?;");
+            "SELECT param_value FROM kv_parameters WHERE c = ? AND param_name = ?;");
 
     public static final SQLStmt removeAll = new SQLStmt(
             "DELETE FROM kv WHERE c = ?;");
 
-    public static final SQLStmt exportAll = new SQLStmt(
-            "INSERT INTO kv_deltas (c,k,v,event_type) SELECT c,k,v,'"
-            + AbstractEventTrackingProcedure.REMOVED
-            + "' event_type FROM kv WHERE c = ? ORDER BY k ;"); //TODO
+    public static final SQLStmt exportAll0 = new SQLStmt(getExportAllSql(0, false));
+    public static final SQLStmt exportAll1 = new SQLStmt(getExportAllSql(1, false));
+    public static final SQLStmt exportAll2 = new SQLStmt(getExportAllSql(2, false));
+    public static final SQLStmt exportAll3 = new SQLStmt(getExportAllSql(3, false));
+    public static final SQLStmt exportAll4 = new SQLStmt(getExportAllSql(4, false));
+    public static final SQLStmt exportAll5 = new SQLStmt(getExportAllSql(5, false));
+    public static final SQLStmt exportAll6 = new SQLStmt(getExportAllSql(6, false));
+    public static final SQLStmt exportAll7 = new SQLStmt(getExportAllSql(7, false));
+
+    public static final SQLStmt exportAllWithOldValues0 = new SQLStmt(getExportAllSql(0, true));
+    public static final SQLStmt exportAllWithOldValues1 = new SQLStmt(getExportAllSql(1, true));
+    public static final SQLStmt exportAllWithOldValues2 = new SQLStmt(getExportAllSql(2, true));
+    public static final SQLStmt exportAllWithOldValues3 = new SQLStmt(getExportAllSql(3, true));
+    public static final SQLStmt exportAllWithOldValues4 = new SQLStmt(getExportAllSql(4, true));
+    public static final SQLStmt exportAllWithOldValues5 = new SQLStmt(getExportAllSql(5, true));
+    public static final SQLStmt exportAllWithOldValues6 = new SQLStmt(getExportAllSql(6, true));
+    public static final SQLStmt exportAllWithOldValues7 = new SQLStmt(getExportAllSql(7, true));
 
  	// @formatter:on
 
+    private static final SQLStmt[] exportAll = { exportAll0, exportAll1, exportAll2, exportAll3, exportAll4,
+            exportAll5, exportAll6, exportAll7 };
+
+    private static final SQLStmt[] exportAllWithOldValues = { exportAllWithOldValues0, exportAllWithOldValues1,
+            exportAllWithOldValues2, exportAllWithOldValues3, exportAllWithOldValues4, exportAllWithOldValues5,
+            exportAllWithOldValues6, exportAllWithOldValues7 };
+
+    /**
+     * @param bucket    which kv_deltas_N to write to
+     * @param oldValues true if old_v should be filled in
+     * @return SQL to export a REMOVED event for every entry in a cache
+     */
+    private static String getExportAllSql(int bucket, boolean oldValues) {
+
+        return "INSERT INTO " + AbstractEventTrackingProcedure.EVENT_STREAM_PREFIX + bucket
+                + (oldValues ? " (c,k,v,event_type,event_ts,old_v) SELECT c,k,v,'"
+                        : " (c,k,v,event_type,event_ts) SELECT c,k,v,'")
+                + AbstractEventTrackingProcedure.REMOVED
+                + (oldValues ? "' event_type, NOW event_ts, v old_v FROM kv WHERE c = ? ORDER BY k ;"
+                        : "' event_type, NOW event_ts FROM kv WHERE c = ? ORDER BY k ;");
+    }
+
     public VoltTable[] run(String c) throws VoltAbortException {
 
-        voltQueueSQL(getParam, "ENABLE_EVENTS");
-        VoltTable eventsTable = voltExecuteSQL()[0];
+        voltQueueSQL(getParam, c, AbstractEventTrackingProcedure.ENABLE_EVENTS);
+        voltQueueSQL(getParam, c, AbstractEventTrackingProcedure.OLD_VALUES);
+        VoltTable[] paramTables = voltExecuteSQL();
+
+        if (paramTables[0].advanceRow() && paramTables[0].getLong("param_value") == 1) {
 
-        if (eventsTable.advanceRow() && eventsTable.getLong("param_value") == 1) {
-            voltQueueSQL(exportAll, c);
+            if (paramTables[1].advanceRow() && paramTables[1].getLong("param_value") == 1) {
+                voltQueueSQL(exportAllWithOldValues[AbstractEventTrackingProcedure.getEventBucket(c)], c);
+            } else {
+                voltQueueSQL(exportAll[AbstractEventTrackingProcedure.getEventBucket(c)], c);
+            }
         }
 
         voltQueueSQL(removeAll, c);
@@ -35,7 +35,7 @@ public class RemoveKeyValuePair extends AbstractEventTrackingProcedure {
             + "FROM kv "
             + "WHERE c = ? "
             + "AND k = ? "
-            + "AND v = ?;");
+            + "AND v = ?" + NOT_EXPIRED + ";");
 
     public static final SQLStmt deleteKV = new SQLStmt(
             "DELETE "
@@ -48,14 +48,15 @@ public class RemoveKeyValuePair extends AbstractEventTrackingProcedure {
 
     public VoltTable[] run(String k, String c, byte[] v) throws VoltAbortException {
 
+        final CacheConfig config = getCacheConfig(c);
+
         voltQueueSQL(getV, c, k, v);
-        queueEventCheck(c);
 
         final VoltTable[] oldValues = voltExecuteSQL();
 
         if (oldValues[0].advanceRow()) {
 
-            reportEvent(c, k, v, REMOVED, oldValues);
+            reportEvent(config, c, k, v, v, REMOVED);
             voltQueueSQL(deleteKV, c, k, v);
             return voltExecuteSQL(true);
 
@@ -30,34 +30,47 @@ public class Replace extends AbstractEventTrackingProcedure {
 
     // @formatter:off
 
-	public static final SQLStmt getK = new SQLStmt(
-			"SELECT k FROM kv WHERE c = ? AND k = ?;");
-
-	   public static final SQLStmt upsertKV = new SQLStmt(
-	            "UPSERT INTO kv\n"
-	            + "(c,k,v)\n"
-	            + "VALUES \n"
-	            + "(?,?,?);");
+	public static final SQLStmt getV = new SQLStmt(
+			"SELECT v FROM kv WHERE c = ? AND k = ?" + NOT_EXPIRED + ";");
 
+    public static final SQLStmt updateKV = new SQLStmt(
+            "UPDATE kv "
+            + "SET v = ?, ver = ?, expires_at = ? "
+            + "WHERE c = ? "
+            + "AND k = ?" + NOT_EXPIRED + ";");
 
  	// @formatter:on
 
     public VoltTable[] run(String k, String c, byte[] newV) throws VoltAbortException {
 
-        voltQueueSQL(getK, c, k);
-        queueEventCheck(c);
+        final CacheConfig config = getCacheConfig(c);
+
+        // Only read the old value if an event is going to carry it...
+        final boolean wantOldValue = config.isEventsEnabled() && config.isOldValuesEnabled();
+
+        if (wantOldValue) {
+            voltQueueSQL(getV, c, k);
+        }
+
+        voltQueueSQL(updateKV, newV, getUniqueId(), getExpiryTime(config), c, k);
+
+        final VoltTable[] results = voltExecuteSQL(!config.isEventsEnabled());
+        final VoltTable updateCount = results[results.length - 1];
 
-        final VoltTable[] oldValues = voltExecuteSQL();
+        if (updateCount.asScalarLong() > 0) {
 
-        if (oldValues[0].advanceRow()) {
+            byte[] oldV = null;
 
-            reportEvent(c, k, newV, UPDATED, oldValues);
-            voltQueueSQL(upsertKV, c, k, newV);
-            return voltExecuteSQL(true);
+            if (wantOldValue && results[0].advanceRow()) {
+                oldV = results[0].getVarbinary("v");
+            }
 
+            finishWrite(config, c, k, newV, oldV, UPDATED);
+
+            VoltTable[] tableArray = { updateCount };
+            return tableArray;
         }
 
         return new VoltTable[0];
-
     }
 }
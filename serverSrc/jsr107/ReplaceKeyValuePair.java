@@ -35,27 +35,28 @@ public class ReplaceKeyValuePair extends AbstractEventTrackingProcedure {
 			+ "FROM kv "
 			+ "WHERE c = ? "
 			+ "AND k = ? "
-			+ "AND v = ?;");
+			+ "AND v = ?" + NOT_EXPIRED + ";");
 
 	   public static final SQLStmt upsertKV = new SQLStmt(
 	            "UPSERT INTO kv\n"
-	            + "(c,k,v)\n"
+	            + "(c,k,v,ver,expires_at)\n"
 	            + "VALUES \n"
-	            + "(?,?,?);");
+	            + "(?,?,?,?,?);");
 
  	// @formatter:on
 
     public VoltTable[] run(String k, String c, byte[] oldV, byte[] newV) throws VoltAbortException {
 
+        final CacheConfig config = getCacheConfig(c);
+
         voltQueueSQL(getV, c, k, oldV);
-        queueEventCheck(c);
 
         final VoltTable[] oldValues = voltExecuteSQL();
 
         if (oldValues[0].advanceRow()) {
 
-            reportEvent(c, k, newV, UPDATED, oldValues);
-            voltQueueSQL(upsertKV, c, k, newV);
+            reportEvent(config, c, k, newV, oldV, UPDATED);
+            voltQueueSQL(upsertKV, c, k, newV, getUniqueId(), getExpiryTime(config));
             return voltExecuteSQL(true);
 
         }
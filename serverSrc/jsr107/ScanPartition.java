@@ -0,0 +1,60 @@
+package jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltProcedure;
+import org.voltdb.VoltTable;
+
+/**
+ * Return the next page of a cache from a single partition. 'partitionKey' is
+ * one of the values @GetPartitionKeys gives us, so we get routed to the
+ * partition we want and don't have to lock the whole cluster.
+ *
+ */
+public class ScanPartition extends VoltProcedure {
+
+    // @formatter:off
+
+    public static final SQLStmt getFirstPage = new SQLStmt(
+            "SELECT k, v FROM kv WHERE c = ?" + AbstractEventTrackingProcedure.NOT_EXPIRED + " ORDER BY k LIMIT ?;");
+
+    public static final SQLStmt getNextPage = new SQLStmt(
+            "SELECT k, v FROM kv WHERE c = ? AND k > ?" + AbstractEventTrackingProcedure.NOT_EXPIRED + " ORDER BY k LIMIT ?;");
+
+ 	// @formatter:on
+
+    public VoltTable[] run(String partitionKey, String c, String lastKey, int limit) throws VoltAbortException {
+
+        if (lastKey == null) {
+            voltQueueSQL(getFirstPage, c, limit);
+        } else {
+            voltQueueSQL(getNextPage, c, lastKey, limit);
+        }
+
+        return voltExecuteSQL(true);
+
+    }
+}
@@ -0,0 +1,138 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.CacheException;
+
+import org.voltdb.client.Client;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+
+/**
+ * Callback for one async procedure call. If the call fails and the cache's
+ * RetryPolicy says it's worth another go we schedule one on
+ * VoltDBCache.retryScheduler, which hands it to VoltDBCache.retryCaller to
+ * send. Otherwise, or if the cache has been closed, we give up by completing
+ * the future exceptionally.
+ *
+ */
+public class AsyncProcedureCallback implements ProcedureCallback {
+
+    static final String CACHE_CLOSED = "Cache closed";
+
+    VoltDBCache cache;
+    CompletableFuture<ClientResponse> future;
+    String procedureName;
+    Object[] params;
+    RetryPolicy retryPolicy;
+    int attempt = 0;
+    long startMs = System.currentTimeMillis();
+
+    public AsyncProcedureCallback(VoltDBCache cache, CompletableFuture<ClientResponse> future, String procedureName,
+            Object[] params) {
+        super();
+        this.cache = cache;
+        this.future = future;
+        this.procedureName = procedureName;
+        this.params = params;
+        this.retryPolicy = cache.retryPolicy;
+    }
+
+    /**
+     * Send (or resend) our call to VoltDB.
+     */
+    void call() {
+
+        attempt++;
+
+        Client client = cache.c;
+
+        if (client == null) {
+            future.completeExceptionally(new CacheException(CACHE_CLOSED));
+            return;
+        }
+
+        try {
+
+            if (!client.callProcedure(this, procedureName, params)) {
+                retryOrFail("Unable to queue " + procedureName, true);
+            }
+
+        } catch (Exception e) {
+            // e.g. NoConnectionsException while we fail over...
+            retryOrFail(e.getClass().getName() + ":" + e.getMessage(), true);
+        }
+    }
+
+    @Override
+    public void clientCallback(ClientResponse arg0) throws Exception {
+
+        if (arg0.getStatus() == ClientResponse.SUCCESS) {
+
+            future.complete(arg0);
+
+        } else if (arg0.getStatusString() != null
+                && arg0.getStatusString().indexOf(VoltDBCache.NETWORK_BUFFER_OVERFLOW) > -1) {
+
+            // This is non-recoverable...don't retry...
+            future.completeExceptionally(new CacheException(VoltDBCache.TOO_MUCH_DATA_REQUESTED));
+
+        } else {
+
+            retryOrFail(arg0.getStatusString(), retryPolicy.isRetryable(procedureName, arg0.getStatus()));
+
+        }
+
+    }
+
+    private void retryOrFail(String errorStatus, boolean retryable) {
+
+        VoltDBCache.msg(errorStatus);
+
+        if (cache.isClosed()) {
+            // Nobody is going to reopen it, so there's no point waiting...
+            future.completeExceptionally(new CacheException(CACHE_CLOSED + ": " + errorStatus));
+            return;
+        }
+
+        long delayMs = -1;
+
+        if (retryable) {
+            delayMs = retryPolicy.getRetryDelayMs(attempt, startMs, System.currentTimeMillis());
+        }
+
+        if (delayMs < 0) {
+            future.completeExceptionally(new CacheException(errorStatus));
+            return;
+        }
+
+        VoltDBCache.retryScheduler.schedule(() -> VoltDBCache.retryCaller.execute(this::call), delayMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -0,0 +1,167 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+
+/**
+ * Decodes kv_deltas records written in VoltDB's Avro topic format.
+ * <p>
+ * VoltDB writes the Confluent wire format - a zero 'magic' byte, a four byte
+ * schema registry id and then the Avro binary encoding of the row. As kv_deltas
+ * never changes shape we don't need to look the schema up; we just walk the
+ * fields in order:
+ * <ul>
+ * <li>c - string (NOT NULL)
+ * <li>k - string (NOT NULL)
+ * <li>v - union of null and bytes
+ * <li>event_type - union of null and string
+ * <li>old_v - union of null and bytes
+ * <li>event_ts - union of null and long, in microseconds
+ * </ul>
+ * Strings and bytes are a zig-zag varint length followed by the data, so the
+ * value goes over the wire as itself rather than as twice as many hex
+ * characters. We read everything straight out of a ByteBuffer wrapped around
+ * the record; the only copy is the value array handed to the listener.
+ *
+ */
+public class AvroKVEventCodec implements KVEventCodec {
+
+    static final byte MAGIC_BYTE = 0;
+
+    /**
+     * Magic byte plus schema id.
+     */
+    static final int HEADER_LENGTH = 5;
+
+    @Override
+    public KVEvent decode(Cache<String, byte[]> source, byte[] record) {
+
+        ByteBuffer buf = ByteBuffer.wrap(record);
+
+        try {
+
+            if (buf.get() != MAGIC_BYTE) {
+                throw new CacheException("kv_deltas record isn't in Avro wire format");
+            }
+
+            buf.position(HEADER_LENGTH);
+
+            String cacheName = readString(buf);
+            String key = readString(buf);
+
+            byte[] value = new byte[0];
+
+            if (readUnionIndex(buf) != 0) {
+                int len = readLength(buf);
+                value = new byte[len];
+                buf.get(value);
+            }
+
+            String eventType = null;
+
+            if (readUnionIndex(buf) != 0) {
+                eventType = readString(buf);
+            }
+
+            byte[] oldValue = null;
+
+            // Records from before kv_deltas had old_v stop here...
+            if (buf.hasRemaining() && readUnionIndex(buf) != 0) {
+                oldValue = new byte[readLength(buf)];
+                buf.get(oldValue);
+            }
+
+            long eventTimeMs = 0;
+
+            // ... and from before event_ts here.
+            if (buf.hasRemaining() && readUnionIndex(buf) != 0) {
+                eventTimeMs = readLong(buf) / 1000;
+            }
+
+            return new KVEvent(source, KVEvent.getEventType(eventType), cacheName, key, value, oldValue,
+                    eventTimeMs);
+
+        } catch (RuntimeException e) {
+            if (e instanceof CacheException) {
+                throw e;
+            }
+            throw new CacheException("Unable to decode kv_deltas record: " + e.getMessage(), e);
+        }
+    }
+
+    static String readString(ByteBuffer buf) {
+
+        int len = readLength(buf);
+        String s = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+        buf.position(buf.position() + len);
+        return s;
+    }
+
+    static int readLength(ByteBuffer buf) {
+
+        long len = readLong(buf);
+
+        if (len < 0 || len > buf.remaining()) {
+            throw new CacheException("Bad Avro length " + len);
+        }
+
+        return (int) len;
+    }
+
+    /**
+     * @return 0 if the nullable field that follows is NULL
+     */
+    static long readUnionIndex(ByteBuffer buf) {
+        return readLong(buf);
+    }
+
+    /**
+     * Read an Avro 'long' - a zig-zag encoded varint.
+     */
+    static long readLong(ByteBuffer buf) {
+
+        long raw = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            if (shift > 63) {
+                throw new CacheException("Malformed Avro varint");
+            }
+            b = buf.get();
+            raw |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+}
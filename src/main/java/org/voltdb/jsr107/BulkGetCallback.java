@@ -26,8 +26,6 @@ package org.voltdb.jsr107;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
-import javax.cache.CacheException;
-
 import org.voltdb.VoltTable;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureCallback;
@@ -36,6 +34,7 @@ public class BulkGetCallback implements ProcedureCallback {
 
     CountDownLatch latch;
     Map<String, byte[]> results = null;
+    String failedBecause = null;
 
     public BulkGetCallback(CountDownLatch latch, Map<String, byte[]> results) {
 
@@ -49,16 +48,20 @@ public class BulkGetCallback implements ProcedureCallback {
     public void clientCallback(ClientResponse arg0) throws Exception {
 
         if (arg0.getStatus() != ClientResponse.SUCCESS) {
-            throw new CacheException(arg0.getStatusString());
+
+            // Throwing here would leave our caller waiting on the latch forever...
+            failedBecause = arg0.getStatusString();
 
         } else {
 
             VoltTable resultsTable = arg0.getResults()[0];
 
-            if (resultsTable.advanceRow()) {
-                String key = resultsTable.getString("k");
-                byte[] value = resultsTable.getVarbinary("v");
-                results.put(key, value);
+            synchronized (results) {
+                while (resultsTable.advanceRow()) {
+                    String key = resultsTable.getString("k");
+                    byte[] value = resultsTable.getVarbinary("v");
+                    results.put(key, value);
+                }
             }
 
         }
@@ -67,4 +70,11 @@ public class BulkGetCallback implements ProcedureCallback {
 
     }
 
+    /**
+     * @return the failedBecause
+     */
+    public String getFailedBecause() {
+        return failedBecause;
+    }
+
 }
@@ -0,0 +1,55 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+/**
+ * Passes byte[] values through untouched.
+ *
+ */
+public class ByteArraySerializer implements CacheSerializer<byte[]> {
+
+    @Override
+    public void serialize(byte[] value, SerializationBuffer buffer) {
+        buffer.putBytes(value);
+    }
+
+    @Override
+    public byte[] deserialize(byte[] bytes) {
+        return bytes;
+    }
+
+    @Override
+    public byte[] toBytes(byte[] value, SerializationBuffer buffer) {
+        // No need to copy it...
+        return value;
+    }
+
+    @Override
+    public Class<byte[]> getType() {
+        return byte[].class;
+    }
+
+}
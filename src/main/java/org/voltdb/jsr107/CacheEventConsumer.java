@@ -1,20 +1,13 @@
 package org.voltdb.jsr107;
 
 import java.text.SimpleDateFormat;
-import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
-import java.util.Properties;
+import java.util.HashMap;
+import java.util.List;
 
 import javax.cache.configuration.CacheEntryListenerConfiguration;
-import javax.cache.configuration.Factory;
-import javax.cache.event.CacheEntryCreatedListener;
-import javax.cache.event.CacheEntryEventFilter;
-import javax.cache.event.CacheEntryExpiredListener;
-import javax.cache.event.CacheEntryListener;
-import javax.cache.event.CacheEntryRemovedListener;
-import javax.cache.event.CacheEntryUpdatedListener;
-import javax.cache.event.EventType;
 
 /* This file is part of VoltDB.
  * Copyright (C) 2008-2022 VoltDB Inc.
@@ -39,123 +32,375 @@ import javax.cache.event.EventType;
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 
-import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
-
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Runnable class to read Kafka messages and log them.
+ * Runnable class to read a cache's events from a CacheEventSource and pass them
+ * on to its near cache and listeners.
  *
  */
 public class CacheEventConsumer implements Runnable {
 
     /**
-     * Comma delimited list of Kafka hosts. Note we expect the port number with each
-     * host name
+     * Name of cache
      */
-    String kafkaHostnames;
+    String cacheName;
 
     /**
-     * Name of cache
+     * Where our events come from
      */
-    String cacheName;
+    CacheEventSource source;
+
+    /**
+     * Optional near cache we invalidate whenever we see an event for our cache.
+     */
+    NearCache nearCache = null;
 
     /**
      * Keep running until told to stop..
      */
     AtomicBoolean keepGoing = new AtomicBoolean(true);
 
-    CacheEntryListenerConfiguration<String, byte[]> celc;
+    /**
+     * Holds listener events back so hot keys only get one, or null.
+     */
+    EventConflater conflater = null;
+
+    /**
+     * One per listener registration. Every event for our cache goes to all of
+     * them.
+     */
+    CopyOnWriteArrayList<EventDispatcher> dispatchers = new CopyOnWriteArrayList<>();
 
     VoltDBCache cache = null;
 
+    /**
+     * How long our events take to get to us, and how far behind we are.
+     */
+    CacheEventStats stats;
+
+    /**
+     * Listener consumers, shared by every VoltDBCache in this JVM that uses the
+     * same cache, by event source factory and cache name.
+     */
+    static final HashMap<List<Object>, CacheEventConsumer> sharedConsumers = new HashMap<>();
+
     /**
      * Used for formatting messages
      */
     static SimpleDateFormat sdfDate = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     /**
-     * Create a runnable instance of a class to poll the Kafka topic
-     * console_messages
+     * Create a runnable instance of a class to poll the kv_deltas_N topic our
+     * cache's events go to.
      *
-     * @param hostnames - hostname1:9092,hostname2:9092 etc
-     * @param string
+     * @param cacheName
+     * @param kafkaHostnames - hostname1:9092,hostname2:9092 etc
+     * @param celc
+     * @param cache
      */
     public CacheEventConsumer(String cacheName, String kafkaHostnames,
             CacheEntryListenerConfiguration<String, byte[]> celc, VoltDBCache cache) {
+        this(cacheName, new KafkaCacheEventSource(kafkaHostnames, cacheName), celc, cache, null);
+    }
+
+    /**
+     * Create a runnable instance of a class to read our cache's events from
+     * source.
+     *
+     * @param cacheName
+     * @param source    - where to get events from
+     * @param celc      - listener configuration, or null if we are only
+     *                  invalidating a near cache
+     * @param cache
+     * @param nearCache - near cache to invalidate, or null
+     */
+    public CacheEventConsumer(String cacheName, CacheEventSource source,
+            CacheEntryListenerConfiguration<String, byte[]> celc, VoltDBCache cache, NearCache nearCache) {
         super();
         this.cacheName = cacheName;
-        this.kafkaHostnames = kafkaHostnames;
-        this.celc = celc;
+        this.source = source;
         this.cache = cache;
+        this.nearCache = nearCache;
+        this.stats = new CacheEventStats(cacheName, nearCache == null ? "listeners" : "nearCache");
+
+        if (celc != null) {
+            addListener(cache, celc);
+        }
     }
 
-    @SuppressWarnings("unchecked")
-    @Override
-    public void run() {
+    /**
+     * Start sending our events to another listener.
+     *
+     * @param listenerCache the cache the listener was registered with
+     * @param celc
+     */
+    public void addListener(VoltDBCache listenerCache, CacheEntryListenerConfiguration<String, byte[]> celc) {
+        EventDispatcher dispatcher = new EventDispatcher(listenerCache, celc);
+        dispatcher.setStats(stats);
+        dispatchers.add(dispatcher);
+    }
+
+    /**
+     * Stop sending events to a listener, once it has dealt with the ones it
+     * already has.
+     *
+     * @param listenerCache
+     * @param celc
+     * @return true if we don't have any listeners left
+     */
+    public boolean removeListener(VoltDBCache listenerCache, CacheEntryListenerConfiguration<String, byte[]> celc) {
 
-        Factory<CacheEntryListener<? super String, ? super byte[]>> listenerFactory = celc
-                .getCacheEntryListenerFactory();
-        CacheEntryListener<? super String, ? super byte[]> l = listenerFactory.create();
+        for (EventDispatcher dispatcher : dispatchers) {
+            if (dispatcher.getSource() == listenerCache && dispatcher.getListenerConfig().equals(celc)) {
+                dispatchers.remove(dispatcher);
+                dispatcher.shutdown();
+                break;
+            }
+        }
 
-        Factory<CacheEntryEventFilter<? super String, ? super byte[]>> filterFactory = celc
-                .getCacheEntryEventFilterFactory();
-        CacheEntryEventFilter<? super String, ? super byte[]> filter = null;
+        return dispatchers.isEmpty();
+    }
 
-        if (filterFactory != null) {
-            filter = filterFactory.create();
+    /**
+     * Register a listener with the consumer for its cache, starting one if this
+     * JVM doesn't have one yet.
+     *
+     * @param cache
+     * @param celc
+     */
+    static synchronized void register(VoltDBCache cache, CacheEntryListenerConfiguration<String, byte[]> celc) {
+
+        CacheEventSourceFactory factory = cache.getEventSourceFactory();
+        List<Object> consumerKey = Arrays.asList(factory, cache.getName());
+        CacheEventConsumer consumer = sharedConsumers.get(consumerKey);
+
+        if (consumer == null) {
+            consumer = new CacheEventConsumer(cache.getName(), factory.createEventSource(cache.getName()), celc,
+                    cache, null);
+            sharedConsumers.put(consumerKey, consumer);
+
+            Thread consumerRunner = new Thread(consumer, cache.getName() + "-events");
+            consumerRunner.setDaemon(true);
+            consumerRunner.start();
+        } else {
+            consumer.addListener(cache, celc);
         }
+    }
+
+    /**
+     * Take a listener away from the consumer for its cache, and stop the
+     * consumer if nobody else is using it.
+     *
+     * @param cache
+     * @param celc
+     */
+    static synchronized void deregister(VoltDBCache cache, CacheEntryListenerConfiguration<String, byte[]> celc) {
 
-        Properties props = new Properties();
-        props.put("bootstrap.servers", kafkaHostnames);
-        props.put("group.id", cacheName);
-        props.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
-        props.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
-        props.put("auto.commit.interval.ms", "100");
-        props.put("auto.offset.reset", "latest");
+        List<Object> consumerKey = Arrays.asList(cache.getEventSourceFactory(), cache.getName());
+        CacheEventConsumer consumer = sharedConsumers.get(consumerKey);
 
-        KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props);
-        consumer.subscribe(Arrays.asList("kv_deltas"));
+        if (consumer != null && consumer.removeListener(cache, celc)) {
+            consumer.stop();
+            sharedConsumers.remove(consumerKey);
+        }
+    }
+
+    @Override
+    public void run() {
+
+        long pollMs = 100;
+
+        if (cache.getEventConflationWindowMs() > 0) {
+            conflater = new EventConflater(cache.getEventConflationWindowMs());
+            pollMs = Math.min(pollMs, cache.getEventConflationWindowMs());
+        }
+
+        stats.register();
 
         try {
 
-            while (keepGoing.get()) {
+            source.open(this);
+
+            long lagMs = 0;
+
+            try {
 
-                ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(100));
-                for (ConsumerRecord<String, String> record : records) {
+                while (keepGoing.get()) {
 
-                    KVEvent event = KVEvent.createEventFromKafka(cache, record.value().toString());
+                    Collection<KVEvent> events = source.poll(pollMs);
+                    final long nowMs = System.currentTimeMillis();
 
-                    if (event.getCacheName().equals(cacheName)) {
+                    if (nearCache != null && source.isReady()) {
+                        // We're seeing every event and can now invalidate...
+                        nearCache.setAccepting(true);
+                    }
+
+                    long latestEventTimeMs = 0;
+
+                    for (KVEvent event : events) {
+                        latestEventTimeMs = Math.max(latestEventTimeMs, event.getEventTimeMs());
+                        dispatch(event);
+                    }
 
-                        if (filter == null || filter.evaluate(event)) {
+                    long lag = source.getLag();
 
-                            if (event.getEventType() == EventType.CREATED && l instanceof CacheEntryCreatedListener) {
-                                ((CacheEntryCreatedListener<? super String, ? super byte[]>) l).onCreated(event);
-                            } else if (event.getEventType() == EventType.UPDATED
-                                    && l instanceof CacheEntryUpdatedListener) {
-                                ((CacheEntryUpdatedListener<? super String, ? super byte[]>) l).onUpdated(event);
-                            } else if (event.getEventType() == EventType.REMOVED
-                                    && l instanceof CacheEntryUpdatedListener) {
-                                ((CacheEntryRemovedListener<? super String, ? super byte[]>) l).onRemoved(event);
-                            } else if (event.getEventType() == EventType.EXPIRED
-                                    && l instanceof CacheEntryExpiredListener) {
-                                ((CacheEntryExpiredListener<? super String, ? super byte[]>) l).onExpired(event);
-                            }
-                        }
+                    if (latestEventTimeMs > 0) {
+                        lagMs = Math.max(0, nowMs - latestEventTimeMs);
+                    } else if (lag == 0) {
+                        // Caught up...
+                        lagMs = 0;
                     }
+
+                    stats.setLag(lag, lagMs);
+
+                    if (conflater != null && conflater.isDue()) {
+                        deliverConflated();
+                    }
+
+                    source.delivered();
                 }
 
+                if (conflater != null) {
+                    deliverConflated();
+                }
+
+            } finally {
+                source.close();
             }
 
         } catch (Exception e1) {
             CacheEventConsumer.msg(e1);
         } finally {
-            consumer.close();
+
+            if (nearCache != null) {
+                // Nobody is invalidating it any more...
+                nearCache.setAccepting(false);
+            }
+
+            stats.unregister();
+
+            for (EventDispatcher dispatcher : dispatchers) {
+                dispatcher.shutdown();
+            }
+
+            // If we died, the next registration will need to start a new one...
+            synchronized (CacheEventConsumer.class) {
+                sharedConsumers.values().remove(this);
+            }
+        }
+
+    }
+
+    /**
+     * Send an event to our near cache and listeners, if it's for our cache.
+     *
+     * @param event
+     * @throws InterruptedException
+     */
+    void dispatch(KVEvent event) throws InterruptedException {
+
+        if (event.getCacheName().equals(cacheName)) {
+
+            if (nearCache != null) {
+                nearCache.invalidate(event.getKey());
+                stats.reportEvent(event, System.currentTimeMillis());
+            }
+
+            if (conflater != null) {
+                conflater.add(event);
+            } else {
+                deliver(event);
+            }
+        }
+    }
+
+    /**
+     * @param event an event for our listeners
+     * @throws InterruptedException
+     */
+    void deliver(KVEvent event) throws InterruptedException {
+
+        // Blocks if a listener is falling behind...
+        for (EventDispatcher dispatcher : dispatchers) {
+            dispatcher.dispatch(event);
+        }
+    }
+
+    /**
+     * Pass on whatever our conflater has been holding back.
+     *
+     * @throws InterruptedException
+     */
+    void deliverConflated() throws InterruptedException {
+
+        for (KVEvent event : conflater.drain()) {
+            deliver(event);
         }
+    }
 
+    /**
+     * Wait until our listeners have seen every event we've been given, including
+     * any we're holding back for conflation. Sources call this before they
+     * remember that they've dealt with events.
+     *
+     * @throws InterruptedException
+     */
+    public void flush() throws InterruptedException {
+
+        if (conflater != null) {
+            deliverConflated();
+        }
+
+        for (EventDispatcher dispatcher : dispatchers) {
+            dispatcher.flush();
+        }
+    }
+
+    /**
+     * @return the name of the cache we are reading events for
+     */
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    /**
+     * @return the cache we were created for
+     */
+    public VoltDBCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return how long our events take to get to us, and how far behind we are
+     */
+    public CacheEventStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @param cache
+     * @return stats for the consumer cache's listeners share, or null if it
+     *         doesn't have any listeners
+     */
+    static synchronized CacheEventStats getListenerStats(VoltDBCache cache) {
+
+        CacheEventConsumer consumer = sharedConsumers
+                .get(Arrays.asList(cache.getEventSourceFactory(), cache.getName()));
+
+        if (consumer == null) {
+            return null;
+        }
+
+        return consumer.getStats();
+    }
+
+    /**
+     * @return the near cache we invalidate, or null
+     */
+    public NearCache getNearCache() {
+        return nearCache;
     }
 
     /**
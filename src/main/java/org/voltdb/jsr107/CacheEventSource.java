@@ -0,0 +1,77 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.util.Collection;
+
+/**
+ * Where a CacheEventConsumer gets its events from. The normal one is
+ * KafkaCacheEventSource, which reads the kv_deltas topics VoltDB exports to,
+ * but anything that can produce KVEvents can drive listeners and near caches.
+ * <p>
+ * A source is only used by the thread running its consumer.
+ *
+ * @see CacheEventSourceFactory
+ */
+public interface CacheEventSource {
+
+    /**
+     * Start reading events.
+     *
+     * @param consumer the consumer we are reading for
+     */
+    public void open(CacheEventConsumer consumer);
+
+    /**
+     * @param timeoutMs how long to wait if there aren't any events
+     * @return events for the consumer's cache, in the order they happened for
+     *         each key. May be empty.
+     * @throws InterruptedException
+     */
+    public Collection<KVEvent> poll(long timeoutMs) throws InterruptedException;
+
+    /**
+     * @return true once we are seeing every new event
+     */
+    public boolean isReady();
+
+    /**
+     * @return how many events we are behind, or -1 if we can't tell
+     */
+    public long getLag();
+
+    /**
+     * Called after the events from the last poll have been passed on, so we can
+     * remember we've dealt with them.
+     */
+    public void delivered();
+
+    /**
+     * Stop reading events.
+     */
+    public void close();
+
+}
@@ -0,0 +1,310 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * How long a CacheEventConsumer's events take to reach it and how far behind it
+ * is. Each consumer has one, and registers it with the platform MBean server as
+ * 'org.voltdb.jsr107:type=CacheEventStats,name=cacheName,consumer=listeners' (or
+ * consumer=nearCache) while it's running.
+ * <p>
+ * Latency is from the transaction that made the change, which stamps event_ts
+ * with its own time, to the event being acted on: for listeners, when
+ * EventDispatcher calls the listener, so time spent queued behind a slow
+ * listener or held back for conflation counts; for a near cache, when the key
+ * is invalidated. An event delivered to two listeners is counted twice, and
+ * events the listener doesn't want aren't counted. It's measured with two
+ * different clocks, so it's only as good as the clock sync between VoltDB and
+ * this JVM. Lag is in events, as the event source sees it, and in time, as
+ * the age of the latest event we've seen, or 0 if we are caught up.
+ *
+ */
+public class CacheEventStats implements CacheEventStatsMXBean {
+
+    public static final String JMX_DOMAIN = "org.voltdb.jsr107";
+
+    /**
+     * Latencies are counted per millisecond up to this, and anything higher is
+     * counted as this.
+     */
+    public static final int MAX_LATENCY_MS = 10000;
+
+    String cacheName;
+
+    String consumerName;
+
+    AtomicLongArray latencyCounts = new AtomicLongArray(MAX_LATENCY_MS + 1);
+
+    AtomicLong eventCount = new AtomicLong(0);
+
+    AtomicLong eventsWithoutTimeCount = new AtomicLong(0);
+
+    AtomicLong latencyTotalMs = new AtomicLong(0);
+
+    AtomicLong latencyMaxMs = new AtomicLong(0);
+
+    volatile long lagEvents = -1;
+
+    volatile long lagMs = 0;
+
+    ObjectName objectName = null;
+
+    /**
+     * @param cacheName
+     * @param consumerName what kind of consumer we are watching
+     */
+    public CacheEventStats(String cacheName, String consumerName) {
+        super();
+        this.cacheName = cacheName;
+        this.consumerName = consumerName;
+    }
+
+    /**
+     * Count an event that has just been handed to a listener or used to
+     * invalidate a near cache.
+     *
+     * @param event
+     * @param nowMs
+     */
+    public void reportEvent(KVEvent event, long nowMs) {
+
+        if (event.getEventTimeMs() <= 0) {
+            eventsWithoutTimeCount.incrementAndGet();
+            return;
+        }
+
+        // Clocks can disagree...
+        long latencyMs = Math.max(0, nowMs - event.getEventTimeMs());
+
+        latencyCounts.incrementAndGet((int) Math.min(latencyMs, MAX_LATENCY_MS));
+        latencyTotalMs.addAndGet(latencyMs);
+        eventCount.incrementAndGet();
+
+        long currentMax = latencyMaxMs.get();
+
+        while (latencyMs > currentMax && !latencyMaxMs.compareAndSet(currentMax, latencyMs)) {
+            currentMax = latencyMaxMs.get();
+        }
+    }
+
+    /**
+     * @param lagEvents how many events we are behind, or -1 if we can't tell
+     * @param lagMs     how old the latest event we've seen is, or 0 if we're
+     *                  caught up
+     */
+    public void setLag(long lagEvents, long lagMs) {
+        this.lagEvents = lagEvents;
+        this.lagMs = lagMs;
+    }
+
+    /**
+     * Make us visible to JMX. If someone else already has our name, for example
+     * a second near cache for the same cache, we add a number to it.
+     */
+    public synchronized void register() {
+
+        if (objectName != null) {
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+
+            for (int i = 1; objectName == null; i++) {
+
+                ObjectName candidate = new ObjectName(JMX_DOMAIN + ":type=CacheEventStats,name="
+                        + quoteIfNeeded(cacheName) + ",consumer=" + consumerName + (i > 1 ? i : ""));
+
+                if (!server.isRegistered(candidate)) {
+                    server.registerMBean(this, candidate);
+                    objectName = candidate;
+                }
+            }
+
+        } catch (Exception e) {
+            // Stats aren't worth failing over...
+            CacheEventConsumer.msg(e);
+        }
+    }
+
+    /**
+     * @param value
+     * @return value, quoted if it has characters ObjectName doesn't allow
+     */
+    static String quoteIfNeeded(String value) {
+
+        if (value.matches("[A-Za-z0-9_.\\-]+")) {
+            return value;
+        }
+
+        return ObjectName.quote(value);
+    }
+
+    /**
+     * Take us out of JMX.
+     */
+    public synchronized void unregister() {
+
+        if (objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            CacheEventConsumer.msg(e);
+        }
+
+        objectName = null;
+    }
+
+    /**
+     * @return our JMX name, or null if we aren't registered
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    @Override
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    @Override
+    public long getEventsWithoutTimeCount() {
+        return eventsWithoutTimeCount.get();
+    }
+
+    @Override
+    public double getLatencyAverageMs() {
+
+        long count = eventCount.get();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        return (double) latencyTotalMs.get() / count;
+    }
+
+    @Override
+    public long getLatencyMaxMs() {
+        return latencyMaxMs.get();
+    }
+
+    @Override
+    public long getLatency50thPercentileMs() {
+        return getLatencyPercentileMs(50);
+    }
+
+    @Override
+    public long getLatency99thPercentileMs() {
+        return getLatencyPercentileMs(99);
+    }
+
+    @Override
+    public long getLatency999thPercentileMs() {
+        return getLatencyPercentileMs(99.9);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the latency percentile% of events took no longer than, or
+     *         MAX_LATENCY_MS if it's more than that
+     */
+    @Override
+    public long getLatencyPercentileMs(double percentile) {
+
+        long total = 0;
+
+        for (int i = 0; i < latencyCounts.length(); i++) {
+            total += latencyCounts.get(i);
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long wanted = (long) Math.ceil(total * (percentile / 100));
+        long seen = 0;
+
+        for (int i = 0; i < latencyCounts.length(); i++) {
+
+            seen += latencyCounts.get(i);
+
+            if (seen >= wanted && seen > 0) {
+                return i;
+            }
+        }
+
+        return MAX_LATENCY_MS;
+    }
+
+    @Override
+    public long getLagEvents() {
+        return lagEvents;
+    }
+
+    @Override
+    public long getLagMs() {
+        return lagMs;
+    }
+
+    @Override
+    public void reset() {
+
+        for (int i = 0; i < latencyCounts.length(); i++) {
+            latencyCounts.set(i, 0);
+        }
+
+        eventCount.set(0);
+        eventsWithoutTimeCount.set(0);
+        latencyTotalMs.set(0);
+        latencyMaxMs.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheEventStats [cacheName=" + cacheName + ", consumer=" + consumerName + ", events="
+                + getEventCount() + ", latencyAverageMs=" + getLatencyAverageMs() + ", latency50thMs="
+                + getLatency50thPercentileMs() + ", latency99thMs=" + getLatency99thPercentileMs()
+                + ", latencyMaxMs=" + getLatencyMaxMs() + ", lagEvents=" + lagEvents + ", lagMs=" + lagMs + "]";
+    }
+
+}
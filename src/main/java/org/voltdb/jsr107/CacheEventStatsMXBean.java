@@ -0,0 +1,58 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+/**
+ * What JMX can see of a CacheEventStats.
+ *
+ */
+public interface CacheEventStatsMXBean {
+
+    public String getCacheName();
+
+    public long getEventCount();
+
+    public long getEventsWithoutTimeCount();
+
+    public double getLatencyAverageMs();
+
+    public long getLatencyMaxMs();
+
+    public long getLatency50thPercentileMs();
+
+    public long getLatency99thPercentileMs();
+
+    public long getLatency999thPercentileMs();
+
+    public long getLatencyPercentileMs(double percentile);
+
+    public long getLagEvents();
+
+    public long getLagMs();
+
+    public void reset();
+
+}
@@ -0,0 +1,71 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+/**
+ * Turns values of type T into the byte[] VoltDBCache stores, and back again.
+ * <p>
+ * serialize writes into a SerializationBuffer that VoltDBTypedCache reuses for
+ * every call on a thread, so a serializer that writes its fields straight into
+ * it doesn't allocate anything until the final byte[] is made. deserialize gets
+ * the byte[] VoltDB sent us and can read it in place.
+ *
+ * @param <T>
+ * @see VoltDBTypedCache
+ */
+public interface CacheSerializer<T> {
+
+    /**
+     * @param value  never null
+     * @param buffer buffer to write value to, already reset
+     */
+    public void serialize(T value, SerializationBuffer buffer);
+
+    /**
+     * @param bytes never null
+     * @return the value bytes came from
+     */
+    public T deserialize(byte[] bytes);
+
+    /**
+     * @return the class of the values we serialize
+     */
+    public Class<T> getType();
+
+    /**
+     * @param value
+     * @param buffer a buffer we can use
+     * @return value as a byte[]. Serializers that already have one can return
+     *         it without copying.
+     */
+    public default byte[] toBytes(T value, SerializationBuffer buffer) {
+
+        buffer.reset();
+        serialize(value, buffer);
+        return buffer.toByteArray();
+    }
+
+}
@@ -0,0 +1,229 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+
+/**
+ * Decodes kv_deltas records written in VoltDB's default CSV topic format - c, k,
+ * v as hex, event_type, old_v as hex and event_ts as 'yyyy-MM-dd HH:mm:ss.SSS'
+ * in GMT, with '\N' for NULL.
+ * <p>
+ * We work directly on the record bytes rather than building a String and
+ * splitting it, so we don't make extra copies of the value and keys that
+ * contain commas or quotes (which VoltDB quotes) come out right.
+ *
+ */
+public class CsvKVEventCodec implements KVEventCodec {
+
+    static final int FIELD_COUNT = 6;
+
+    /**
+     * Records from before kv_deltas had old_v and event_ts don't have the last
+     * fields.
+     */
+    static final int MIN_FIELD_COUNT = 4;
+
+    @Override
+    public KVEvent decode(Cache<String, byte[]> source, byte[] record) {
+
+        int[] starts = new int[FIELD_COUNT];
+        int[] ends = new int[FIELD_COUNT];
+        boolean[] quoted = new boolean[FIELD_COUNT];
+
+        int pos = 0;
+        int fieldCount = 0;
+
+        while (fieldCount < FIELD_COUNT && pos <= record.length) {
+
+            if (pos < record.length && record[pos] == '"') {
+
+                quoted[fieldCount] = true;
+                starts[fieldCount] = ++pos;
+
+                // A quote is either the end of the field or the first half of ""
+                while (pos < record.length && (record[pos] != '"'
+                        || (pos + 1 < record.length && record[pos + 1] == '"'))) {
+                    pos += (record[pos] == '"' ? 2 : 1);
+                }
+
+                ends[fieldCount] = pos;
+                pos += 2; // closing quote and comma
+
+            } else {
+
+                starts[fieldCount] = pos;
+
+                while (pos < record.length && record[pos] != ',') {
+                    pos++;
+                }
+
+                ends[fieldCount] = pos;
+                pos++;
+            }
+
+            fieldCount++;
+        }
+
+        if (fieldCount < MIN_FIELD_COUNT) {
+            throw new CacheException("Expected " + FIELD_COUNT + " fields, got " + fieldCount);
+        }
+
+        String cacheName = getString(record, starts[0], ends[0], quoted[0]);
+        String key = getString(record, starts[1], ends[1], quoted[1]);
+        byte[] value = getBytes(record, starts[2], ends[2], quoted[2]);
+
+        if (value == null) {
+            value = new byte[0];
+        }
+
+        String eventType = getString(record, starts[3], ends[3], quoted[3]);
+        byte[] oldValue = null;
+
+        if (fieldCount > 4) {
+            oldValue = getBytes(record, starts[4], ends[4], quoted[4]);
+        }
+
+        long eventTimeMs = 0;
+
+        if (fieldCount > 5 && !isNull(record, starts[5], ends[5], quoted[5])) {
+            eventTimeMs = parseTimestamp(record, starts[5], ends[5]);
+        }
+
+        return new KVEvent(source, KVEvent.getEventType(eventType), cacheName, key, value, oldValue, eventTimeMs);
+    }
+
+    /**
+     * Read a timestamp VoltDB has written as 'yyyy-MM-dd HH:mm:ss.SSS' in GMT.
+     * Some export configurations write a number of microseconds instead, so we
+     * accept that too.
+     *
+     * @return milliseconds since the epoch
+     */
+    static long parseTimestamp(byte[] record, int start, int end) {
+
+        if (end - start >= 19 && record[start + 4] == '-') {
+
+            long epochMs = LocalDateTime.of((int) getDigits(record, start, 4), (int) getDigits(record, start + 5, 2),
+                    (int) getDigits(record, start + 8, 2), (int) getDigits(record, start + 11, 2),
+                    (int) getDigits(record, start + 14, 2), (int) getDigits(record, start + 17, 2))
+                    .toInstant(ZoneOffset.UTC).toEpochMilli();
+
+            // Fractions of a second, of whatever precision...
+            int scale = 100;
+
+            for (int i = start + 20; i < end && scale > 0; i++) {
+                epochMs += getDigits(record, i, 1) * scale;
+                scale /= 10;
+            }
+
+            return epochMs;
+        }
+
+        return getDigits(record, start, end - start) / 1000;
+    }
+
+    static long getDigits(byte[] record, int start, int len) {
+
+        long value = 0;
+
+        for (int i = start; i < start + len; i++) {
+
+            if (record[i] < '0' || record[i] > '9') {
+                throw new CacheException("Bad digit '" + (char) record[i] + "' in timestamp");
+            }
+
+            value = (value * 10) + (record[i] - '0');
+        }
+
+        return value;
+    }
+
+    /**
+     * @return true if this field is VoltDB's unquoted NULL marker.
+     */
+    static boolean isNull(byte[] record, int start, int end, boolean quoted) {
+        return !quoted && end - start == 2 && record[start] == '\\' && record[start + 1] == 'N';
+    }
+
+    static String getString(byte[] record, int start, int end, boolean quoted) {
+
+        if (isNull(record, start, end, quoted)) {
+            return null;
+        }
+
+        String field = new String(record, start, end - start, StandardCharsets.UTF_8);
+
+        if (quoted) {
+            field = field.replace("\"\"", "\"");
+        }
+
+        return field;
+    }
+
+    static byte[] getBytes(byte[] record, int start, int end, boolean quoted) {
+
+        if (isNull(record, start, end, quoted)) {
+            return null;
+        }
+
+        return decodeHex(record, start, end);
+    }
+
+    static byte[] decodeHex(byte[] record, int start, int end) {
+
+        if ((end - start) % 2 != 0) {
+            throw new CacheException("Odd number of hex digits in value");
+        }
+
+        byte[] value = new byte[(end - start) / 2];
+
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte) ((hexDigit(record[start + (i * 2)]) << 4) | hexDigit(record[start + (i * 2) + 1]));
+        }
+
+        return value;
+    }
+
+    static int hexDigit(byte b) {
+
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        } else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        } else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+
+        throw new CacheException("Bad hex digit '" + (char) b + "' in value");
+    }
+
+}
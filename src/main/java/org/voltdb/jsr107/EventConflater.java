@@ -0,0 +1,150 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.cache.event.EventType;
+
+/**
+ * Merges events for the same key that arrive within a window, so that a
+ * listener that only cares about the latest state of a hot key gets one event
+ * instead of hundreds.
+ * <p>
+ * The merged event has the latest value, the value from before the first event
+ * as its old value, and KVEvent.getMergedEventCount() says how many events went
+ * into it. A CREATED followed by UPDATEs is still a CREATED, and a REMOVED or
+ * EXPIRED followed by a CREATED is an UPDATED. A CREATED followed by a REMOVED
+ * or EXPIRED cancels out - listeners never knew the key existed, so they get
+ * nothing for it.
+ * <p>
+ * Not thread safe. CacheEventConsumer only uses it from its own thread.
+ *
+ */
+public class EventConflater {
+
+    long windowMs;
+
+    long windowEndMs = 0;
+
+    LinkedHashMap<String, KVEvent> events = new LinkedHashMap<>();
+
+    /**
+     * @param windowMs how long to hold on to events after the first one arrives
+     */
+    public EventConflater(long windowMs) {
+        super();
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * @param event
+     */
+    public void add(KVEvent event) {
+
+        if (events.isEmpty()) {
+            windowEndMs = System.currentTimeMillis() + windowMs;
+        }
+
+        // Remove first, so the key moves to the end of the order...
+        KVEvent earlier = events.remove(event.getKey());
+
+        if (earlier == null) {
+            events.put(event.getKey(), event);
+        } else {
+
+            KVEvent merged = merge(earlier, event);
+
+            if (merged != null) {
+                events.put(event.getKey(), merged);
+            }
+        }
+    }
+
+    /**
+     * @return true if we have events and the window is over
+     */
+    public boolean isDue() {
+        return !events.isEmpty() && System.currentTimeMillis() >= windowEndMs;
+    }
+
+    /**
+     * @return the events we've been holding, in the order their keys last
+     *         changed, and start a new window
+     */
+    public List<KVEvent> drain() {
+
+        List<KVEvent> drained = new ArrayList<>(events.values());
+        events.clear();
+        return drained;
+    }
+
+    /**
+     * @return how many keys we are holding events for
+     */
+    public int size() {
+        return events.size();
+    }
+
+    /**
+     * @param earlier
+     * @param later   a later event for the same key
+     * @return an event that stands for both, or null if they cancel out
+     */
+    public static KVEvent merge(KVEvent earlier, KVEvent later) {
+
+        EventType eventType = later.getEventType();
+        byte[] oldValue = earlier.getOldValue();
+
+        if (earlier.getEventType() == EventType.CREATED
+                && (eventType == EventType.REMOVED || eventType == EventType.EXPIRED)) {
+            // Came and went within the window...
+            return null;
+        }
+
+        if (earlier.getEventType() == EventType.CREATED && eventType == EventType.UPDATED) {
+            // As far as anyone knows it's brand new...
+            eventType = EventType.CREATED;
+        } else if ((earlier.getEventType() == EventType.REMOVED || earlier.getEventType() == EventType.EXPIRED)
+                && eventType == EventType.CREATED) {
+            // It was there before and it's there now...
+            eventType = EventType.UPDATED;
+        }
+
+        if (eventType == EventType.CREATED) {
+            oldValue = null;
+        }
+
+        KVEvent merged = new KVEvent(later.getSource(), eventType, later.getCacheName(), later.getKey(),
+                later.getValue(), oldValue, later.getEventTimeMs());
+        merged.mergedEventCount = earlier.getMergedEventCount() + later.getMergedEventCount();
+
+        return merged;
+    }
+
+}
@@ -0,0 +1,442 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.cache.Cache;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.configuration.Factory;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryEventFilter;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.event.EventType;
+
+/**
+ * Hands events to a listener on a pool of worker threads, so one slow event
+ * doesn't hold up the rest.
+ * <p>
+ * Events are routed to a worker by the hash of their key, so events for the
+ * same key are always delivered in the order they happened. Each worker has a
+ * bounded queue; when it's full, dispatch() blocks, which stops the Kafka poll
+ * loop from reading more until the listener catches up.
+ * <p>
+ * Workers pass events to the listener in batches - whatever has built up in
+ * their queue, up to maxBatchSize, optionally waiting up to batchWindowMs for
+ * more. A batch is split into runs of the same event type, so a listener sees
+ * events in the order they happened; e.g. CREATED, CREATED, REMOVED, CREATED
+ * becomes onCreated with 2 events, onRemoved with 1 and onCreated with 1.
+ * <p>
+ * If there is more than one worker the listener will be called from several
+ * threads at once, so it has to be thread safe.
+ *
+ */
+public class EventDispatcher {
+
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    /**
+     * How long a worker waits for an event before checking whether it should
+     * stop.
+     */
+    static final long WORKER_POLL_MS = 100;
+
+    Cache<String, byte[]> source;
+
+    CacheEntryListenerConfiguration<String, byte[]> listenerConfig;
+
+    CacheEntryListener<? super String, ? super byte[]> listener;
+
+    CacheEntryEventFilter<? super String, ? super byte[]> filter = null;
+
+    int maxBatchSize;
+
+    long batchWindowMs;
+
+    ArrayBlockingQueue<KVEvent>[] queues;
+
+    Thread[] workers;
+
+    AtomicBoolean keepGoing = new AtomicBoolean(true);
+
+    /**
+     * dispatch() holds the read lock while it queues an event, and shutdown()
+     * takes the write lock to stop, so nothing can be queued once the workers
+     * have been told to finish.
+     */
+    ReentrantReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+
+    /**
+     * Events we've been given that the listener hasn't seen yet. flush() waits
+     * on it until it gets to 0.
+     */
+    AtomicLong pending = new AtomicLong(0);
+
+    /**
+     * Where we report how long events took to reach the listener, or null.
+     */
+    CacheEventStats stats = null;
+
+    /**
+     * Create a dispatcher for one listener registration, using the cache's
+     * listener thread and batching settings.
+     *
+     * @param source         the cache the listener was registered with
+     * @param listenerConfig
+     */
+    public EventDispatcher(VoltDBCache source, CacheEntryListenerConfiguration<String, byte[]> listenerConfig) {
+        this(source, listenerConfig, source.getListenerThreads(), source.getListenerQueueSize(),
+                source.getListenerMaxBatchSize(), source.getListenerBatchWindowMs());
+    }
+
+    /**
+     * @param source         the cache the listener was registered with
+     * @param listenerConfig
+     * @param threadCount    how many workers to use
+     * @param queueSize      how many events each worker can have waiting
+     * @param maxBatchSize   most events we pass to the listener in one call
+     * @param batchWindowMs  how long a worker waits for a batch to fill up. If
+     *                       it's 0 we send whatever is already queued.
+     */
+    @SuppressWarnings("unchecked")
+    public EventDispatcher(Cache<String, byte[]> source, CacheEntryListenerConfiguration<String, byte[]> listenerConfig,
+            int threadCount, int queueSize, int maxBatchSize, long batchWindowMs) {
+        super();
+
+        if (threadCount < 1 || queueSize < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("threadCount, queueSize and maxBatchSize must be > 0");
+        }
+
+        if (batchWindowMs < 0) {
+            throw new IllegalArgumentException("batchWindowMs must be >= 0");
+        }
+
+        this.source = source;
+        this.listenerConfig = listenerConfig;
+        this.listener = listenerConfig.getCacheEntryListenerFactory().create();
+
+        Factory<CacheEntryEventFilter<? super String, ? super byte[]>> filterFactory = listenerConfig
+                .getCacheEntryEventFilterFactory();
+
+        if (filterFactory != null) {
+            this.filter = filterFactory.create();
+        }
+
+        this.maxBatchSize = maxBatchSize;
+        this.batchWindowMs = batchWindowMs;
+
+        queues = new ArrayBlockingQueue[threadCount];
+        workers = new Thread[threadCount];
+
+        for (int i = 0; i < threadCount; i++) {
+
+            final ArrayBlockingQueue<KVEvent> queue = new ArrayBlockingQueue<>(queueSize);
+            queues[i] = queue;
+
+            workers[i] = new Thread(() -> work(queue), source.getName() + "-listener-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * @return the cache the listener was registered with
+     */
+    public Cache<String, byte[]> getSource() {
+        return source;
+    }
+
+    /**
+     * @return the listener's configuration
+     */
+    public CacheEntryListenerConfiguration<String, byte[]> getListenerConfig() {
+        return listenerConfig;
+    }
+
+    /**
+     * @param stats where to report how long events took to reach the
+     *              listener, or null
+     */
+    public void setStats(CacheEventStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Queue an event for its key's worker, waiting if the queue is full. Once
+     * we've been shut down events are dropped, as there's nobody to deliver
+     * them.
+     *
+     * @param event
+     * @return true if the event was queued
+     * @throws InterruptedException
+     */
+    public boolean dispatch(KVEvent event) throws InterruptedException {
+
+        shutdownLock.readLock().lock();
+
+        try {
+
+            if (!keepGoing.get()) {
+                return false;
+            }
+
+            pending.incrementAndGet();
+
+            try {
+                queues[Math.floorMod(event.getKey().hashCode(), queues.length)].put(event.withSource(source));
+            } catch (InterruptedException e) {
+                eventsDone(1);
+                throw e;
+            }
+
+            return true;
+
+        } finally {
+            shutdownLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Wait until the listener has seen every event we've been given, so that
+     * it's safe to say we've dealt with them. Gives up if the workers have all
+     * stopped, as then nobody is going to deliver what's left.
+     *
+     * @throws InterruptedException
+     */
+    public void flush() throws InterruptedException {
+
+        synchronized (pending) {
+            while (pending.get() > 0 && isAnyWorkerAlive()) {
+                pending.wait(WORKER_POLL_MS);
+            }
+        }
+    }
+
+    /**
+     * Let the workers finish what they have queued and wait for them to stop.
+     * Anything dispatched after this is dropped.
+     */
+    public void shutdown() {
+
+        shutdownLock.writeLock().lock();
+
+        try {
+            keepGoing.set(false);
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    void work(ArrayBlockingQueue<KVEvent> queue) {
+
+        ArrayList<KVEvent> batch = new ArrayList<>(maxBatchSize);
+
+        try {
+            while (keepGoing.get() || !queue.isEmpty()) {
+
+                KVEvent event = queue.poll(WORKER_POLL_MS, TimeUnit.MILLISECONDS);
+
+                if (event == null) {
+                    continue;
+                }
+
+                batch.add(event);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+
+                if (batchWindowMs > 0) {
+
+                    final long batchEndMs = System.currentTimeMillis() + batchWindowMs;
+                    long waitMs = batchWindowMs;
+
+                    while (batch.size() < maxBatchSize && waitMs > 0
+                            && (event = queue.poll(waitMs, TimeUnit.MILLISECONDS)) != null) {
+
+                        batch.add(event);
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        waitMs = batchEndMs - System.currentTimeMillis();
+                    }
+                }
+
+                try {
+                    deliver(batch);
+                } catch (Throwable t) {
+                    // Not even an Error from the listener should stop the
+                    // worker, or flush() would never see pending get to 0...
+                    CacheEventConsumer.msg(source.getName() + ": listener failed: " + t);
+                } finally {
+                    eventsDone(batch.size());
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param count how many events the listener has finished with
+     */
+    void eventsDone(int count) {
+
+        if (pending.addAndGet(-count) <= 0) {
+            synchronized (pending) {
+                pending.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return true if any of our workers are still running
+     */
+    boolean isAnyWorkerAlive() {
+
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Pass a batch to the listener, one call per run of events of the same
+     * type.
+     *
+     * @param batch
+     */
+    void deliver(List<KVEvent> batch) {
+
+        ArrayList<CacheEntryEvent<? extends String, ? extends byte[]>> run = new ArrayList<>(batch.size());
+        EventType runType = null;
+
+        for (KVEvent event : batch) {
+
+            try {
+                if (filter != null && !filter.evaluate(event)) {
+                    continue;
+                }
+            } catch (Exception e) {
+                CacheEventConsumer.msg(e);
+                continue;
+            }
+
+            if (event.getEventType() != runType) {
+                deliverRun(runType, run);
+                run.clear();
+                runType = event.getEventType();
+            }
+
+            run.add(event);
+        }
+
+        deliverRun(runType, run);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    void deliverRun(EventType eventType, List<CacheEntryEvent<? extends String, ? extends byte[]>> run) {
+
+        if (run.isEmpty()) {
+            return;
+        }
+
+        // The listener may hang on to what we give it...
+        List<CacheEntryEvent<? extends String, ? extends byte[]>> events = new ArrayList<>(run);
+
+        if (stats != null && isListeningFor(eventType)) {
+
+            // Now, not when we read them, so queueing and conflation count...
+            final long nowMs = System.currentTimeMillis();
+
+            for (CacheEntryEvent<? extends String, ? extends byte[]> event : events) {
+                stats.reportEvent((KVEvent) event, nowMs);
+            }
+        }
+
+        try {
+
+            if (eventType == EventType.CREATED && listener instanceof CacheEntryCreatedListener) {
+                ((CacheEntryCreatedListener) listener).onCreated(events);
+            } else if (eventType == EventType.UPDATED && listener instanceof CacheEntryUpdatedListener) {
+                ((CacheEntryUpdatedListener) listener).onUpdated(events);
+            } else if (eventType == EventType.REMOVED && listener instanceof CacheEntryRemovedListener) {
+                ((CacheEntryRemovedListener) listener).onRemoved(events);
+            } else if (eventType == EventType.EXPIRED && listener instanceof CacheEntryExpiredListener) {
+                ((CacheEntryExpiredListener) listener).onExpired(events);
+            }
+
+        } catch (Exception e) {
+            // A listener that throws shouldn't stop us delivering other events...
+            CacheEventConsumer.msg(e);
+        }
+    }
+
+    /**
+     * @param eventType
+     * @return true if our listener has a method for eventType
+     */
+    boolean isListeningFor(EventType eventType) {
+
+        if (listener instanceof TypedCacheEntryListener) {
+            return ((TypedCacheEntryListener<?, ?>) listener).isListeningFor(eventType);
+        }
+
+        switch (eventType) {
+        case CREATED:
+            return listener instanceof CacheEntryCreatedListener;
+        case UPDATED:
+            return listener instanceof CacheEntryUpdatedListener;
+        case REMOVED:
+            return listener instanceof CacheEntryRemovedListener;
+        case EXPIRED:
+            return listener instanceof CacheEntryExpiredListener;
+        default:
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.concurrent.CountDownLatch;
+
+import org.voltdb.VoltTable;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+
+/**
+ * Holds the result of a single page request made by KVPagedIterator.
+ *
+ */
+public class IteratorPageCallback implements ProcedureCallback {
+
+    CountDownLatch latch = new CountDownLatch(1);
+    VoltTable page = null;
+    String failedBecause = null;
+    int rowsRequested;
+
+    public IteratorPageCallback(int rowsRequested) {
+        super();
+        this.rowsRequested = rowsRequested;
+    }
+
+    @Override
+    public void clientCallback(ClientResponse arg0) throws Exception {
+
+        if (arg0.getStatus() != ClientResponse.SUCCESS) {
+            failedBecause = arg0.getStatusString();
+        } else {
+            page = arg0.getResults()[0];
+        }
+
+        latch.countDown();
+
+    }
+
+    /**
+     * Used when we couldn't queue the request in the first place.
+     *
+     * @param reason
+     */
+    void fail(String reason) {
+        failedBecause = reason;
+        latch.countDown();
+    }
+
+    /**
+     * Wait for the page to arrive.
+     *
+     * @return the page, or null if the request failed.
+     */
+    VoltTable await() {
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedBecause = "Interrupted";
+        }
+
+        return page;
+    }
+
+    /**
+     * @return the failedBecause
+     */
+    public String getFailedBecause() {
+        return failedBecause;
+    }
+
+    /**
+     * @return the rowsRequested
+     */
+    public int getRowsRequested() {
+        return rowsRequested;
+    }
+
+}
@@ -23,6 +23,7 @@ package org.voltdb.jsr107;
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -32,8 +33,6 @@ import javax.cache.Cache;
 import javax.cache.event.CacheEntryEvent;
 import javax.cache.event.EventType;
 
-import org.apache.commons.codec.DecoderException;
-import org.apache.commons.codec.binary.Hex;
 import org.voltdb.autojar.IsNeededByAVoltDBProcedure;
 
 import jsr107.AbstractEventTrackingProcedure;
@@ -47,17 +46,64 @@ public class KVEvent extends CacheEntryEvent<String, byte[]> implements Iterable
      */
     private static final long serialVersionUID = 1L;
 
-    private static String NULL_KAFKA_FIELD = "\\N";
-
     String cacheName;
     String key;
     byte[] value;
+    byte[] oldValue;
+    int mergedEventCount = 1;
+    long eventTimeMs = 0;
 
     public KVEvent(Cache<String, byte[]> source, EventType eventType, String cacheName, String key, byte[] value) {
+        this(source, eventType, cacheName, key, value, null);
+    }
+
+    /**
+     * @param source
+     * @param eventType
+     * @param cacheName
+     * @param key
+     * @param value
+     * @param oldValue  value before the change, or null if we don't know it
+     */
+    public KVEvent(Cache<String, byte[]> source, EventType eventType, String cacheName, String key, byte[] value,
+            byte[] oldValue) {
+        this(source, eventType, cacheName, key, value, oldValue, 0);
+    }
+
+    /**
+     * @param source
+     * @param eventType
+     * @param cacheName
+     * @param key
+     * @param value
+     * @param oldValue    value before the change, or null if we don't know it
+     * @param eventTimeMs when the transaction that made the change ran, or 0 if
+     *                    we don't know
+     */
+    public KVEvent(Cache<String, byte[]> source, EventType eventType, String cacheName, String key, byte[] value,
+            byte[] oldValue, long eventTimeMs) {
         super(source, eventType);
         this.key = key;
         this.cacheName = cacheName;
         this.value = value;
+        this.oldValue = oldValue;
+        this.eventTimeMs = eventTimeMs;
+    }
+
+    /**
+     * @param source
+     * @return this event, or a copy of it if it came from a different cache
+     *         object.
+     */
+    public KVEvent withSource(Cache<String, byte[]> source) {
+
+        if (source == getSource()) {
+            return this;
+        }
+
+        KVEvent copy = new KVEvent(source, getEventType(), cacheName, key, value, oldValue, eventTimeMs);
+        copy.mergedEventCount = mergedEventCount;
+        return copy;
     }
 
     @Override
@@ -73,7 +119,7 @@ public class KVEvent extends CacheEntryEvent<String, byte[]> implements Iterable
     @Override
     public byte[] getOldValue() {
 
-        return null;
+        return oldValue;
     }
 
     @Override
@@ -88,9 +134,26 @@ public class KVEvent extends CacheEntryEvent<String, byte[]> implements Iterable
         return cacheName;
     }
 
+    /**
+     * @return how many changes this event stands for. More than 1 if events
+     *         were conflated.
+     * @see EventConflater
+     */
+    public int getMergedEventCount() {
+        return mergedEventCount;
+    }
+
+    /**
+     * @return when VoltDB made the change, by the VoltDB server's clock, or 0 if
+     *         the record didn't say.
+     */
+    public long getEventTimeMs() {
+        return eventTimeMs;
+    }
+
     @Override
     public boolean isOldValueAvailable() {
-        return false;
+        return oldValue != null;
     }
 
     @Override
@@ -101,41 +164,33 @@ public class KVEvent extends CacheEntryEvent<String, byte[]> implements Iterable
         return events.iterator();
     }
 
-    public static KVEvent createEventFromKafka(Cache<String, byte[]> source, String record) throws DecoderException {
-
-        EventType eventType = null;
-        String cacheName;
-        String key;
-        byte[] value = null;
-
-        String[] recordParts = record.split(",");
-
-        cacheName = recordParts[0];
-        key = recordParts[1];
-
-        try {
-            if (recordParts[2].equals(NULL_KAFKA_FIELD)) {
-                value = new byte[0];
-            } else {
-                value = Hex.decodeHex(recordParts[2]);
-            }
-
-        } catch (DecoderException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+    /**
+     * @param source
+     * @param record a kv_deltas record in VoltDB's CSV format
+     * @return a KVEvent
+     * @see CsvKVEventCodec
+     */
+    public static KVEvent createEventFromKafka(Cache<String, byte[]> source, String record) {
+        return new CsvKVEventCodec().decode(source, record.getBytes(StandardCharsets.UTF_8));
+    }
 
-        if (recordParts[3].equals(AbstractEventTrackingProcedure.CREATED)) {
-            eventType = EventType.CREATED;
-        } else if (recordParts[3].equals(AbstractEventTrackingProcedure.REMOVED)) {
-            eventType = EventType.REMOVED;
-        } else if (recordParts[3].equals(AbstractEventTrackingProcedure.UPDATED)) {
-            eventType = EventType.UPDATED;
-        } else if (recordParts[3].equals(AbstractEventTrackingProcedure.EXPIRED)) {
-            eventType = EventType.EXPIRED;
+    /**
+     * @param eventType an event_type from kv_deltas
+     * @return the matching EventType, or null if we don't recognize it
+     */
+    public static EventType getEventType(String eventType) {
+
+        if (AbstractEventTrackingProcedure.CREATED.equals(eventType)) {
+            return EventType.CREATED;
+        } else if (AbstractEventTrackingProcedure.REMOVED.equals(eventType)) {
+            return EventType.REMOVED;
+        } else if (AbstractEventTrackingProcedure.UPDATED.equals(eventType)) {
+            return EventType.UPDATED;
+        } else if (AbstractEventTrackingProcedure.EXPIRED.equals(eventType)) {
+            return EventType.EXPIRED;
         }
 
-        return new KVEvent(source, eventType, cacheName, key, value);
+        return null;
     }
 
     @Override
@@ -157,6 +212,11 @@ public class KVEvent extends CacheEntryEvent<String, byte[]> implements Iterable
             builder.append(Arrays.toString(value));
         }
 
+        if (mergedEventCount > 1) {
+            builder.append(", mergedEventCount=");
+            builder.append(mergedEventCount);
+        }
+
         builder.append("]");
         return builder.toString();
     }
@@ -0,0 +1,48 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import javax.cache.Cache;
+
+/**
+ * Turns a kv_deltas Kafka record into a KVEvent.
+ * <p>
+ * How the record is laid out depends on the 'format' of the kv_deltas topic in
+ * the VoltDB deployment file, so the codec a cache uses has to match it. See
+ * {@link CsvKVEventCodec} and {@link AvroKVEventCodec}.
+ *
+ */
+public interface KVEventCodec {
+
+    /**
+     * @param source the cache the event will claim to come from
+     * @param record the raw value of a kv_deltas record
+     * @return a KVEvent
+     * @throws javax.cache.CacheException if the record can't be decoded
+     */
+    public KVEvent decode(Cache<String, byte[]> source, byte[] record);
+
+}
@@ -0,0 +1,231 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.cache.Cache.Entry;
+import javax.cache.CacheException;
+
+import org.voltdb.VoltTable;
+
+/**
+ * Iterator that walks a cache in key order a page at a time, using 'k >
+ * lastKey LIMIT n' so each page is cheap to find no matter how far in we are.
+ * While the caller works through one page we ask VoltDB for the next one, so
+ * we never hold more than two pages in memory.
+ * <p>
+ * Like any JSR107 iterator we don't promise a consistent snapshot - entries
+ * added or removed while we're iterating may or may not show up.
+ *
+ */
+public class KVPagedIterator implements Iterator<Entry<String, byte[]>> {
+
+    VoltDBCache cache;
+
+    int pageSize;
+
+    /**
+     * Page we are currently handing out.
+     */
+    VoltTable currentPage = null;
+
+    /**
+     * Request for the next page, if we've made one.
+     */
+    IteratorPageCallback nextPage = null;
+
+    /**
+     * Last key we fetched. The next page starts after this.
+     */
+    String lastKey = null;
+
+    /**
+     * Key of the entry we last handed out, for remove().
+     */
+    String lastReturnedKey = null;
+
+    boolean noMorePages = false;
+
+    KVEntry nextEntry = null;
+
+    public KVPagedIterator(VoltDBCache cache, int pageSize) {
+        super();
+        this.cache = cache;
+        this.pageSize = pageSize;
+
+        VoltTable firstPage = fetchPage(null);
+        setCurrentPage(firstPage, this.pageSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        while (nextEntry == null) {
+
+            if (currentPage != null && currentPage.advanceRow()) {
+
+                nextEntry = new KVEntry(currentPage.getString("k"), currentPage.getVarbinary("v"));
+
+            } else if (noMorePages) {
+
+                return false;
+
+            } else {
+
+                int rowsRequested = nextPage.getRowsRequested();
+                VoltTable page = nextPage.await();
+
+                if (page == null) {
+                    // Prefetch failed. Try again the slow way, which
+                    // knows how to retry and shrink the page...
+                    page = fetchPage(lastKey);
+                    rowsRequested = pageSize;
+                }
+
+                setCurrentPage(page, rowsRequested);
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public Entry<String, byte[]> next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        KVEntry answer = nextEntry;
+        nextEntry = null;
+        lastReturnedKey = answer.getKey();
+        return answer;
+    }
+
+    @Override
+    public void remove() {
+
+        if (lastReturnedKey == null) {
+            throw new IllegalStateException();
+        }
+
+        cache.remove(lastReturnedKey);
+        lastReturnedKey = null;
+    }
+
+    /**
+     * Start using a new page, and if there might be more ask for the next one.
+     *
+     * @param page
+     * @param rowsRequested
+     */
+    private void setCurrentPage(VoltTable page, int rowsRequested) {
+
+        currentPage = page;
+        nextPage = null;
+
+        if (page.getRowCount() < rowsRequested) {
+            noMorePages = true;
+            return;
+        }
+
+        // Find the last key on this page, then rewind...
+        page.advanceToRow(page.getRowCount() - 1);
+        lastKey = page.getString("k");
+        page.resetRowPosition();
+
+        nextPage = requestPage(lastKey);
+    }
+
+    /**
+     * Ask VoltDB for the page after 'afterKey' without waiting for it.
+     *
+     * @param afterKey key to start after, or null for the first page.
+     * @return a callback we can wait on later
+     */
+    private IteratorPageCallback requestPage(String afterKey) {
+
+        IteratorPageCallback callback = new IteratorPageCallback(pageSize);
+
+        try {
+            boolean queued;
+
+            if (afterKey == null) {
+                queued = cache.c.callProcedure(callback, "IteratorFirstPage", cache.getName(), pageSize);
+            } else {
+                queued = cache.c.callProcedure(callback, "IteratorPage", cache.getName(), afterKey, pageSize);
+            }
+
+            if (!queued) {
+                callback.fail("Unable to queue request for next page");
+            }
+
+        } catch (Exception e) {
+            callback.fail(e.getClass().getName() + ":" + e.getMessage());
+        }
+
+        return callback;
+    }
+
+    /**
+     * Get the page after 'afterKey' and wait for it. If VoltDB can't send back
+     * that much data we halve the page size and try again.
+     *
+     * @param afterKey key to start after, or null for the first page.
+     * @return a page of k,v rows
+     */
+    private VoltTable fetchPage(String afterKey) {
+
+        while (true) {
+
+            try {
+
+                VoltTable[] results;
+
+                if (afterKey == null) {
+                    results = cache.callVoltDBProcReturnTables("IteratorFirstPage", cache.getName(), pageSize);
+                } else {
+                    results = cache.callVoltDBProcReturnTables("IteratorPage", cache.getName(), afterKey, pageSize);
+                }
+
+                return results[0];
+
+            } catch (CacheException e) {
+
+                if (pageSize > 1 && e.getMessage() != null
+                        && e.getMessage().startsWith(VoltDBCache.TOO_MUCH_DATA_REQUESTED)) {
+                    pageSize = pageSize / 2;
+                    VoltDBCache.msg("Iterator page too big, trying " + pageSize + " entries");
+                } else {
+                    throw e;
+                }
+            }
+        }
+
+    }
+
+}
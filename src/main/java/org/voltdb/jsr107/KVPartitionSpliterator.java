@@ -0,0 +1,171 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import javax.cache.Cache.Entry;
+import javax.cache.CacheException;
+
+import org.voltdb.VoltTable;
+
+/**
+ * Spliterator that scans a cache one VoltDB partition at a time using
+ * ScanPartition. Each scan is a single partition transaction, so when used in
+ * a parallel stream the partitions are read at the same time instead of by one
+ * multi partition transaction that stops the whole cluster.
+ * <p>
+ * We split by handing half of our remaining partitions to a new spliterator.
+ * Within a partition entries come back in key order; there is no order across
+ * partitions.
+ *
+ */
+public class KVPartitionSpliterator implements Spliterator<Entry<String, byte[]>> {
+
+    VoltDBCache cache;
+
+    /**
+     * One key per partition, from @GetPartitionKeys. We scan partitionKeys[next
+     * ... end - 1].
+     */
+    List<String> partitionKeys;
+    int next;
+    int end;
+
+    int pageSize;
+
+    /**
+     * Partition we're currently scanning, and where we got to.
+     */
+    String currentPartitionKey = null;
+    String lastKey = null;
+    VoltTable currentPage = null;
+    boolean partitionFinished = true;
+
+    public KVPartitionSpliterator(VoltDBCache cache, List<String> partitionKeys, int pageSize) {
+        this(cache, partitionKeys, 0, partitionKeys.size(), pageSize);
+    }
+
+    KVPartitionSpliterator(VoltDBCache cache, List<String> partitionKeys, int next, int end, int pageSize) {
+        super();
+        this.cache = cache;
+        this.partitionKeys = partitionKeys;
+        this.next = next;
+        this.end = end;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Entry<String, byte[]>> action) {
+
+        while (true) {
+
+            if (currentPage != null && currentPage.advanceRow()) {
+
+                lastKey = currentPage.getString("k");
+                action.accept(new KVEntry(lastKey, currentPage.getVarbinary("v")));
+                return true;
+
+            }
+
+            if (partitionFinished) {
+
+                if (next >= end) {
+                    currentPage = null;
+                    return false;
+                }
+
+                currentPartitionKey = partitionKeys.get(next++);
+                lastKey = null;
+            }
+
+            // fetchPage may shrink pageSize, so check after we call it...
+            currentPage = fetchPage();
+            partitionFinished = currentPage.getRowCount() < pageSize;
+
+        }
+
+    }
+
+    @Override
+    public Spliterator<Entry<String, byte[]>> trySplit() {
+
+        // Only split partitions we haven't started on...
+        int remaining = end - next;
+
+        if (remaining < 2) {
+            return null;
+        }
+
+        int mid = next + (remaining / 2);
+        KVPartitionSpliterator otherHalf = new KVPartitionSpliterator(cache, partitionKeys, mid, end, pageSize);
+        end = mid;
+
+        return otherHalf;
+    }
+
+    @Override
+    public long estimateSize() {
+        // We've no idea how big the cache is...
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | DISTINCT;
+    }
+
+    /**
+     * Get the next page of the current partition. If VoltDB can't send back that
+     * much data we halve the page size and try again.
+     *
+     * @return a page of k,v rows
+     */
+    private VoltTable fetchPage() {
+
+        while (true) {
+
+            try {
+
+                return cache.callVoltDBProcReturnTables("ScanPartition", currentPartitionKey, cache.getName(),
+                        lastKey, pageSize)[0];
+
+            } catch (CacheException e) {
+
+                if (pageSize > 1 && e.getMessage() != null
+                        && e.getMessage().startsWith(VoltDBCache.TOO_MUCH_DATA_REQUESTED)) {
+                    pageSize = pageSize / 2;
+                    VoltDBCache.msg("Scan page too big, trying " + pageSize + " entries");
+                } else {
+                    throw e;
+                }
+            }
+        }
+
+    }
+
+}
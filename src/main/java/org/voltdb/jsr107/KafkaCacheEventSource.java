@@ -0,0 +1,335 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+
+import jsr107.AbstractEventTrackingProcedure;
+
+/**
+ * Reads a cache's events from the kv_deltas_N topic VoltDB exports them to.
+ * <p>
+ * If the cache has a checkpoint file we keep our offsets in it, and only save
+ * them once the consumer's listeners have seen the events. If it has a catch up
+ * threshold and we start further behind than that, we read in big chunks and
+ * only pass on the last event for each key in each chunk until we are back
+ * within it.
+ *
+ */
+public class KafkaCacheEventSource implements CacheEventSource {
+
+    /**
+     * How often we save our offsets, if we have a checkpoint file.
+     */
+    public static final long CHECKPOINT_INTERVAL_MS = 1000;
+
+    /**
+     * Finding our lag means asking the brokers, so we only do it this often.
+     */
+    public static final long LAG_REFRESH_INTERVAL_MS = 1000;
+
+    /**
+     * Bigger fetches we use if catching up is enabled.
+     */
+    public static final int CATCH_UP_MAX_POLL_RECORDS = 10000;
+    public static final int CATCH_UP_MAX_PARTITION_FETCH_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * Comma delimited list of Kafka hosts. Note we expect the port number with each
+     * host name
+     */
+    String kafkaHostnames;
+
+    /**
+     * Kafka consumer group. Consumers that share a group share the work, so
+     * anything that needs to see every event needs a group of its own.
+     */
+    String groupId;
+
+    CacheEventConsumer owner;
+
+    KafkaConsumer<String, byte[]> consumer;
+
+    KVEventCodec codec;
+
+    OffsetCheckpoint checkpoint = null;
+
+    long catchUpThreshold = 0;
+
+    /**
+     * True while we are more than the cache's catch up threshold behind.
+     */
+    volatile boolean catchingUp = false;
+
+    long nextCheckpointMs;
+
+    long nextLagRefreshMs = 0;
+
+    long lag = -1;
+
+    /**
+     * What we got last time we polled, so we can record offsets once it's been
+     * delivered.
+     */
+    ConsumerRecords<String, byte[]> lastRecords = null;
+
+    /**
+     * @param kafkaHostnames - hostname1:9092,hostname2:9092 etc
+     * @param groupId        - Kafka consumer group
+     */
+    public KafkaCacheEventSource(String kafkaHostnames, String groupId) {
+        super();
+        this.kafkaHostnames = kafkaHostnames;
+        this.groupId = groupId;
+    }
+
+    @Override
+    public void open(CacheEventConsumer owner) {
+
+        this.owner = owner;
+
+        VoltDBCache cache = owner.getCache();
+
+        Properties props = new Properties();
+        props.put("bootstrap.servers", kafkaHostnames);
+        props.put("group.id", groupId);
+        props.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+        props.put("value.deserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer");
+        props.put("auto.offset.reset", "latest");
+
+        // Near caches are empty when they start, so they have nothing to resume...
+        if (owner.getNearCache() == null) {
+
+            if (cache.getEventCheckpointFile() != null) {
+                checkpoint = new OffsetCheckpoint(cache.getEventCheckpointFile());
+            }
+
+            catchUpThreshold = cache.getEventCatchUpThreshold();
+        }
+
+        if (checkpoint == null) {
+            props.put("auto.commit.interval.ms", "100");
+        } else {
+            // We only commit once listeners have seen the events...
+            props.put("enable.auto.commit", "false");
+        }
+
+        if (catchUpThreshold > 0) {
+            props.put("max.poll.records", Integer.toString(CATCH_UP_MAX_POLL_RECORDS));
+            props.put("max.partition.fetch.bytes", Integer.toString(CATCH_UP_MAX_PARTITION_FETCH_BYTES));
+        }
+
+        codec = cache.getEventCodec();
+        consumer = new KafkaConsumer<>(props);
+        nextCheckpointMs = System.currentTimeMillis() + CHECKPOINT_INTERVAL_MS;
+
+        // We only need the stream our cache's events go to...
+        consumer.subscribe(Arrays.asList(AbstractEventTrackingProcedure.getEventTopic(owner.getCacheName())),
+                new ConsumerRebalanceListener() {
+
+                    @Override
+                    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+
+                        if (checkpoint != null) {
+                            saveCheckpoint();
+                        }
+                    }
+
+                    @Override
+                    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+
+                        if (checkpoint != null) {
+                            for (TopicPartition partition : partitions) {
+
+                                Long nextOffset = checkpoint.getOffset(partition);
+
+                                if (nextOffset != null) {
+                                    consumer.seek(partition, nextOffset);
+                                }
+                            }
+                        }
+
+                        if (catchUpThreshold > 0 && getLag(partitions) > catchUpThreshold) {
+                            CacheEventConsumer.msg(owner.getCacheName() + ": catching up");
+                            catchingUp = true;
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public Collection<KVEvent> poll(long timeoutMs) throws InterruptedException {
+
+        ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofMillis(timeoutMs));
+        lastRecords = records;
+
+        if (catchingUp) {
+
+            // When we're a long way behind we only pass on the last event in each
+            // poll for each key. Listeners that are keeping a copy of the cache up
+            // to date end up in the same place with a lot less work.
+            EventConflater latestEvents = new EventConflater(0);
+
+            for (ConsumerRecord<String, byte[]> record : records) {
+
+                KVEvent event = codec.decode(owner.getCache(), record.value());
+
+                if (event.getCacheName().equals(owner.getCacheName())) {
+                    latestEvents.add(event);
+                }
+            }
+
+            if (getLag(consumer.assignment()) <= catchUpThreshold) {
+                CacheEventConsumer.msg(owner.getCacheName() + ": caught up");
+                catchingUp = false;
+            }
+
+            return latestEvents.drain();
+        }
+
+        List<KVEvent> events = new ArrayList<>(records.count());
+
+        for (ConsumerRecord<String, byte[]> record : records) {
+
+            KVEvent event = codec.decode(owner.getCache(), record.value());
+
+            if (event.getCacheName().equals(owner.getCacheName())) {
+                events.add(event);
+            }
+        }
+
+        return events;
+    }
+
+    @Override
+    public boolean isReady() {
+        // We've been assigned partitions...
+        return !consumer.assignment().isEmpty();
+    }
+
+    @Override
+    public long getLag() {
+
+        if (System.currentTimeMillis() >= nextLagRefreshMs && !consumer.assignment().isEmpty()) {
+
+            try {
+                lag = getLag(consumer.assignment());
+            } catch (Exception e) {
+                // Try again next time...
+                CacheEventConsumer.msg(e);
+            }
+
+            nextLagRefreshMs = System.currentTimeMillis() + LAG_REFRESH_INTERVAL_MS;
+        }
+
+        return lag;
+    }
+
+    @Override
+    public void delivered() {
+
+        if (checkpoint != null && lastRecords != null) {
+
+            for (TopicPartition partition : lastRecords.partitions()) {
+                List<ConsumerRecord<String, byte[]>> partitionRecords = lastRecords.records(partition);
+                checkpoint.setOffset(partition, partitionRecords.get(partitionRecords.size() - 1).offset() + 1);
+            }
+
+            lastRecords = null;
+
+            if (System.currentTimeMillis() >= nextCheckpointMs) {
+                saveCheckpoint();
+                nextCheckpointMs = System.currentTimeMillis() + CHECKPOINT_INTERVAL_MS;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+
+        try {
+            if (checkpoint != null) {
+                saveCheckpoint();
+            }
+        } finally {
+            consumer.close();
+        }
+    }
+
+    /**
+     * Wait for listeners to see everything we've given them, then write our
+     * offsets to disk and commit them to Kafka.
+     */
+    void saveCheckpoint() {
+
+        try {
+
+            owner.flush();
+
+            checkpoint.save();
+            consumer.commitSync(checkpoint.getCommitOffsets());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // We'll try again next time...
+            CacheEventConsumer.msg(e);
+        }
+    }
+
+    /**
+     * @param partitions
+     * @return how many records we are behind on partitions
+     */
+    long getLag(Collection<TopicPartition> partitions) {
+
+        long lag = 0;
+
+        for (Map.Entry<TopicPartition, Long> endOffset : consumer.endOffsets(partitions).entrySet()) {
+            lag += Math.max(0, endOffset.getValue() - consumer.position(endOffset.getKey()));
+        }
+
+        return lag;
+    }
+
+    @Override
+    public String toString() {
+        return "KafkaCacheEventSource [kafkaHostnames=" + kafkaHostnames + ", groupId=" + groupId + "]";
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+/**
+ * Makes KafkaCacheEventSources for a set of Kafka hosts. This is what
+ * VoltDBCache uses unless you give it something else.
+ *
+ */
+public class KafkaCacheEventSourceFactory implements CacheEventSourceFactory {
+
+    /**
+     * Comma delimited list of Kafka hosts. Note we expect the port number with each
+     * host name
+     */
+    String kafkaHostnames;
+
+    /**
+     * @param kafkaHostnames - hostname1:9092,hostname2:9092 etc
+     */
+    public KafkaCacheEventSourceFactory(String kafkaHostnames) {
+        super();
+        this.kafkaHostnames = kafkaHostnames;
+    }
+
+    @Override
+    public CacheEventSource createEventSource(String groupId) {
+        return new KafkaCacheEventSource(kafkaHostnames, groupId);
+    }
+
+    /**
+     * @return the kafkaHostnames
+     */
+    public String getKafkaHostnames() {
+        return kafkaHostnames;
+    }
+
+    @Override
+    public int hashCode() {
+        return kafkaHostnames.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (!(obj instanceof KafkaCacheEventSourceFactory)) {
+            return false;
+        }
+
+        return kafkaHostnames.equals(((KafkaCacheEventSourceFactory) obj).kafkaHostnames);
+    }
+
+    @Override
+    public String toString() {
+        return "KafkaCacheEventSourceFactory [kafkaHostnames=" + kafkaHostnames + "]";
+    }
+
+}
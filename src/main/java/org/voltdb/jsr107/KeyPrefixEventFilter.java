@@ -0,0 +1,134 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.io.Serializable;
+import java.util.EnumSet;
+
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryEventFilter;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.EventType;
+
+import jsr107.AbstractEventTrackingProcedure;
+
+/**
+ * A CacheEntryEventFilter that VoltDB understands. If a listener's filter
+ * factory creates one of these, VoltDBCache tells the server about it, and
+ * events that don't match never get written to kv_deltas in the first place.
+ * <p>
+ * Any other kind of filter still works, but only on the client, after every
+ * event for the cache has been sent to it.
+ *
+ */
+public class KeyPrefixEventFilter implements CacheEntryEventFilter<String, byte[]>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    String keyPrefix;
+
+    EnumSet<EventType> eventTypes;
+
+    /**
+     * Match events of any type for keys starting with keyPrefix.
+     *
+     * @param keyPrefix
+     */
+    public KeyPrefixEventFilter(String keyPrefix) {
+        this(keyPrefix, EnumSet.allOf(EventType.class));
+    }
+
+    /**
+     * @param keyPrefix  keys we are interested in start with this. "" means all
+     *                   keys.
+     * @param eventTypes events we are interested in
+     */
+    public KeyPrefixEventFilter(String keyPrefix, EnumSet<EventType> eventTypes) {
+        super();
+
+        if (keyPrefix == null || eventTypes == null) {
+            throw new NullPointerException();
+        }
+
+        this.keyPrefix = keyPrefix;
+        this.eventTypes = EnumSet.copyOf(eventTypes);
+    }
+
+    @Override
+    public boolean evaluate(CacheEntryEvent<? extends String, ? extends byte[]> event)
+            throws CacheEntryListenerException {
+
+        return eventTypes.contains(event.getEventType()) && event.getKey().startsWith(keyPrefix);
+    }
+
+    /**
+     * @return the keyPrefix
+     */
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * @return the eventTypes
+     */
+    public EnumSet<EventType> getEventTypes() {
+        return EnumSet.copyOf(eventTypes);
+    }
+
+    /**
+     * @return our event types as kv_deltas event_type codes, e.g. "CU"
+     */
+    String getEventTypeCodes() {
+
+        StringBuilder codes = new StringBuilder();
+
+        for (EventType eventType : eventTypes) {
+
+            switch (eventType) {
+            case CREATED:
+                codes.append(AbstractEventTrackingProcedure.CREATED);
+                break;
+            case UPDATED:
+                codes.append(AbstractEventTrackingProcedure.UPDATED);
+                break;
+            case REMOVED:
+                codes.append(AbstractEventTrackingProcedure.REMOVED);
+                break;
+            case EXPIRED:
+                codes.append(AbstractEventTrackingProcedure.EXPIRED);
+                break;
+            }
+        }
+
+        return codes.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "KeyPrefixEventFilter [keyPrefix=" + keyPrefix + ", eventTypes=" + eventTypes + "]";
+    }
+
+}
@@ -0,0 +1,189 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, in-process LRU copy of recently read values for a VoltDBCache.
+ * <p>
+ * Entries are only trusted while a CacheEventConsumer is reading kv_deltas for
+ * this cache and calling {@link #invalidate(String)}. Until the consumer is
+ * running (or after it dies) we don't accept new entries, so we can never serve
+ * something we won't hear about changing.
+ *
+ */
+public class NearCache {
+
+    /**
+     * Maximum number of entries we keep before we evict the least recently used
+     * one.
+     */
+    int maxEntries;
+
+    /**
+     * Access ordered, so the eldest entry is the least recently used one.
+     */
+    LinkedHashMap<String, byte[]> entries;
+
+    /**
+     * Incremented every time anything is invalidated. Used to spot a read that
+     * raced with a change.
+     */
+    long invalidationCount = 0;
+
+    /**
+     * True once the event consumer is running and able to invalidate us.
+     */
+    boolean accepting = false;
+
+    long hits = 0;
+    long misses = 0;
+
+    public NearCache(int maxEntries) {
+        super();
+        this.maxEntries = maxEntries;
+
+        entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > NearCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key
+     * @return a copy of our value for key, or null if we don't have one.
+     */
+    public synchronized byte[] get(String key) {
+
+        byte[] value = entries.get(key);
+
+        if (value == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return value.clone();
+    }
+
+    /**
+     * @return a token to pass to {@link #putIfNotInvalidatedSince}
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     * Remember a value we've just read from VoltDB, unless something was
+     * invalidated while we were reading it. In that case we can't tell if our
+     * value is already stale, so we drop it.
+     *
+     * @param key
+     * @param value
+     * @param invalidationCountBeforeRead value of getInvalidationCount() before
+     *                                    we asked VoltDB
+     */
+    public synchronized void putIfNotInvalidatedSince(String key, byte[] value, long invalidationCountBeforeRead) {
+
+        if (accepting && value != null && invalidationCount == invalidationCountBeforeRead) {
+            entries.put(key, value.clone());
+        }
+    }
+
+    /**
+     * Forget whatever we know about key.
+     *
+     * @param key
+     */
+    public synchronized void invalidate(String key) {
+        invalidationCount++;
+        entries.remove(key);
+    }
+
+    /**
+     * Forget everything.
+     */
+    public synchronized void clear() {
+        invalidationCount++;
+        entries.clear();
+    }
+
+    /**
+     * Called by our event consumer when it starts and stops listening to
+     * kv_deltas. When it stops we throw everything away.
+     *
+     * @param accepting
+     */
+    public synchronized void setAccepting(boolean accepting) {
+        this.accepting = accepting;
+
+        if (!accepting) {
+            clear();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("NearCache [maxEntries=");
+        builder.append(maxEntries);
+        builder.append(", size=");
+        builder.append(entries.size());
+        builder.append(", hits=");
+        builder.append(hits);
+        builder.append(", misses=");
+        builder.append(misses);
+        builder.append(", accepting=");
+        builder.append(accepting);
+        builder.append("]");
+        return builder.toString();
+    }
+
+}
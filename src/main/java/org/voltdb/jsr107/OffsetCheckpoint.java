@@ -0,0 +1,156 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.cache.CacheException;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Remembers how far a CacheEventConsumer has got through its topic, in a local
+ * file, so that it can carry on from the same place after a restart instead of
+ * starting at the end and missing whatever happened while it was down.
+ * <p>
+ * Offsets are the next offset to read for each partition. The file is a
+ * Properties file of 'topic:partition=offset' lines, and is written to a
+ * temporary file and renamed so a crash never leaves half of one behind.
+ *
+ */
+public class OffsetCheckpoint {
+
+    File file;
+
+    HashMap<TopicPartition, Long> offsets = new HashMap<>();
+
+    /**
+     * @param fileName where to keep our offsets. If it exists we load it.
+     */
+    public OffsetCheckpoint(String fileName) {
+        super();
+
+        file = new File(fileName);
+
+        if (file.exists()) {
+
+            Properties props = new Properties();
+
+            try (InputStream is = new FileInputStream(file)) {
+                props.load(is);
+            } catch (IOException e) {
+                throw new CacheException("Unable to read checkpoint " + fileName + ": " + e.getMessage(), e);
+            }
+
+            for (String name : props.stringPropertyNames()) {
+
+                int separator = name.lastIndexOf(':');
+
+                if (separator > 0) {
+                    offsets.put(
+                            new TopicPartition(name.substring(0, separator),
+                                    Integer.parseInt(name.substring(separator + 1))),
+                            Long.parseLong(props.getProperty(name)));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param partition
+     * @return the next offset to read, or null if we've never read partition
+     */
+    public synchronized Long getOffset(TopicPartition partition) {
+        return offsets.get(partition);
+    }
+
+    /**
+     * @param partition
+     * @param nextOffset the offset after the last one we dealt with
+     */
+    public synchronized void setOffset(TopicPartition partition, long nextOffset) {
+        offsets.put(partition, nextOffset);
+    }
+
+    /**
+     * @return our offsets in the form KafkaConsumer.commitSync wants them
+     */
+    public synchronized Map<TopicPartition, OffsetAndMetadata> getCommitOffsets() {
+
+        HashMap<TopicPartition, OffsetAndMetadata> commitOffsets = new HashMap<>();
+
+        for (Map.Entry<TopicPartition, Long> entry : offsets.entrySet()) {
+            commitOffsets.put(entry.getKey(), new OffsetAndMetadata(entry.getValue()));
+        }
+
+        return commitOffsets;
+    }
+
+    /**
+     * Write our offsets to disk.
+     */
+    public synchronized void save() {
+
+        Properties props = new Properties();
+
+        for (Map.Entry<TopicPartition, Long> entry : offsets.entrySet()) {
+            props.setProperty(entry.getKey().topic() + ":" + entry.getKey().partition(),
+                    Long.toString(entry.getValue()));
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+
+        try {
+
+            try (OutputStream os = new FileOutputStream(tempFile)) {
+                props.store(os, "CacheEventConsumer offsets");
+            }
+
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException e) {
+            throw new CacheException("Unable to write checkpoint " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "OffsetCheckpoint [file=" + file + ", offsets=" + offsets + "]";
+    }
+
+}
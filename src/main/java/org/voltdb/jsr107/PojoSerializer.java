@@ -0,0 +1,401 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import javax.cache.CacheException;
+
+/**
+ * A compact binary format for simple objects, much smaller and cheaper to make
+ * than JSON. We write each non-static, non-transient field in turn, by name
+ * within each class, superclass first, with no names or tags:
+ * <ul>
+ * <li>boolean and byte - one byte
+ * <li>short, char, int, long and enums (by ordinal) - a zig-zag varint
+ * <li>float and double - 4 or 8 bytes
+ * <li>String - varint length and UTF-8
+ * <li>byte[] - varint length and the bytes
+ * <li>Date - varint milliseconds
+ * </ul>
+ * Fields that can be null start with a byte that is 0 for null and 1 otherwise.
+ * The class needs a no argument constructor. As there are no tags, adding,
+ * removing or renaming fields makes values written before unreadable.
+ *
+ * @param <T>
+ */
+public class PojoSerializer<T> implements CacheSerializer<T> {
+
+    static final int BOOLEAN = 0;
+    static final int BYTE = 1;
+    static final int SHORT = 2;
+    static final int CHAR = 3;
+    static final int INT = 4;
+    static final int LONG = 5;
+    static final int FLOAT = 6;
+    static final int DOUBLE = 7;
+    static final int STRING = 8;
+    static final int BYTES = 9;
+    static final int ENUM = 10;
+    static final int DATE = 11;
+
+    Class<T> pojoClass;
+
+    Constructor<T> constructor;
+
+    Field[] fields;
+
+    int[] fieldTypes;
+
+    boolean[] nullable;
+
+    /**
+     * @param pojoClass
+     * @throws IllegalArgumentException if pojoClass has fields we can't store
+     *                                  or no no argument constructor
+     */
+    public PojoSerializer(Class<T> pojoClass) {
+        super();
+        this.pojoClass = pojoClass;
+
+        try {
+            constructor = pojoClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(pojoClass.getName() + " needs a no argument constructor");
+        }
+
+        List<Class<?>> hierarchy = new ArrayList<>();
+
+        for (Class<?> c = pojoClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+
+        List<Field> fieldList = new ArrayList<>();
+
+        for (Class<?> c : hierarchy) {
+
+            Field[] declaredFields = c.getDeclaredFields();
+            Arrays.sort(declaredFields, Comparator.comparing(Field::getName));
+
+            for (Field field : declaredFields) {
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())
+                        && !field.isSynthetic()) {
+                    field.setAccessible(true);
+                    fieldList.add(field);
+                }
+            }
+        }
+
+        fields = fieldList.toArray(new Field[fieldList.size()]);
+        fieldTypes = new int[fields.length];
+        nullable = new boolean[fields.length];
+
+        for (int i = 0; i < fields.length; i++) {
+            fieldTypes[i] = getFieldType(fields[i].getType());
+            nullable[i] = !fields[i].getType().isPrimitive();
+        }
+    }
+
+    /**
+     * @param type
+     * @return which of our types type is stored as
+     */
+    static int getFieldType(Class<?> type) {
+
+        if (type == boolean.class || type == Boolean.class) {
+            return BOOLEAN;
+        } else if (type == byte.class || type == Byte.class) {
+            return BYTE;
+        } else if (type == short.class || type == Short.class) {
+            return SHORT;
+        } else if (type == char.class || type == Character.class) {
+            return CHAR;
+        } else if (type == int.class || type == Integer.class) {
+            return INT;
+        } else if (type == long.class || type == Long.class) {
+            return LONG;
+        } else if (type == float.class || type == Float.class) {
+            return FLOAT;
+        } else if (type == double.class || type == Double.class) {
+            return DOUBLE;
+        } else if (type == String.class) {
+            return STRING;
+        } else if (type == byte[].class) {
+            return BYTES;
+        } else if (type.isEnum()) {
+            return ENUM;
+        } else if (type == Date.class) {
+            return DATE;
+        }
+
+        throw new IllegalArgumentException("PojoSerializer can't store fields of type " + type.getName());
+    }
+
+    @Override
+    public void serialize(T value, SerializationBuffer buffer) {
+
+        try {
+
+            for (int i = 0; i < fields.length; i++) {
+
+                Object fieldValue = fields[i].get(value);
+
+                if (nullable[i]) {
+
+                    if (fieldValue == null) {
+                        buffer.putByte(0);
+                        continue;
+                    }
+
+                    buffer.putByte(1);
+                }
+
+                switch (fieldTypes[i]) {
+                case BOOLEAN:
+                    buffer.putByte((Boolean) fieldValue ? 1 : 0);
+                    break;
+                case BYTE:
+                    buffer.putByte((Byte) fieldValue);
+                    break;
+                case SHORT:
+                    buffer.putVarLong((Short) fieldValue);
+                    break;
+                case CHAR:
+                    buffer.putVarLong((Character) fieldValue);
+                    break;
+                case INT:
+                    buffer.putVarLong((Integer) fieldValue);
+                    break;
+                case LONG:
+                    buffer.putVarLong((Long) fieldValue);
+                    break;
+                case FLOAT:
+                    buffer.putInt(Float.floatToRawIntBits((Float) fieldValue));
+                    break;
+                case DOUBLE:
+                    buffer.putLong(Double.doubleToRawLongBits((Double) fieldValue));
+                    break;
+                case STRING:
+                    buffer.putString((String) fieldValue);
+                    break;
+                case BYTES:
+                    byte[] bytes = (byte[]) fieldValue;
+                    buffer.putVarLong(bytes.length);
+                    buffer.putBytes(bytes);
+                    break;
+                case ENUM:
+                    buffer.putVarLong(((Enum<?>) fieldValue).ordinal());
+                    break;
+                case DATE:
+                    buffer.putVarLong(((Date) fieldValue).getTime());
+                    break;
+                }
+            }
+
+        } catch (IllegalAccessException e) {
+            throw new CacheException("Unable to serialize " + pojoClass.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) {
+
+        Reader reader = new Reader(bytes);
+
+        try {
+
+            T value = constructor.newInstance();
+
+            for (int i = 0; i < fields.length; i++) {
+
+                if (nullable[i] && reader.getByte() == 0) {
+                    fields[i].set(value, null);
+                    continue;
+                }
+
+                Object fieldValue = null;
+
+                switch (fieldTypes[i]) {
+                case BOOLEAN:
+                    fieldValue = reader.getByte() != 0;
+                    break;
+                case BYTE:
+                    fieldValue = reader.getByte();
+                    break;
+                case SHORT:
+                    fieldValue = (short) reader.getVarLong();
+                    break;
+                case CHAR:
+                    fieldValue = (char) reader.getVarLong();
+                    break;
+                case INT:
+                    fieldValue = (int) reader.getVarLong();
+                    break;
+                case LONG:
+                    fieldValue = reader.getVarLong();
+                    break;
+                case FLOAT:
+                    fieldValue = Float.intBitsToFloat(reader.getInt());
+                    break;
+                case DOUBLE:
+                    fieldValue = Double.longBitsToDouble(reader.getLong());
+                    break;
+                case STRING:
+                    fieldValue = reader.getString();
+                    break;
+                case BYTES:
+                    fieldValue = reader.getBytes();
+                    break;
+                case ENUM:
+                    fieldValue = fields[i].getType().getEnumConstants()[(int) reader.getVarLong()];
+                    break;
+                case DATE:
+                    fieldValue = new Date(reader.getVarLong());
+                    break;
+                }
+
+                fields[i].set(value, fieldValue);
+            }
+
+            if (reader.position != bytes.length) {
+                throw new CacheException(
+                        (bytes.length - reader.position) + " bytes left over reading " + pojoClass.getName());
+            }
+
+            return value;
+
+        } catch (CacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CacheException("Unable to deserialize " + pojoClass.getName() + ": " + e, e);
+        }
+    }
+
+    /**
+     * Reads the values SerializationBuffer wrote from a byte[] in place.
+     */
+    static class Reader {
+
+        byte[] bytes;
+
+        int position = 0;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        byte getByte() {
+            return bytes[position++];
+        }
+
+        int getInt() {
+
+            int value = 0;
+
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+
+            return value;
+        }
+
+        long getLong() {
+
+            long value = 0;
+
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+
+            return value;
+        }
+
+        long getVarLong() {
+
+            long raw = 0;
+            int shift = 0;
+            byte b;
+
+            do {
+                if (shift > 63) {
+                    throw new CacheException("Malformed varint");
+                }
+                b = bytes[position++];
+                raw |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        int getLength() {
+
+            long length = getVarLong();
+
+            if (length < 0 || length > bytes.length - position) {
+                throw new CacheException("Bad length " + length);
+            }
+
+            return (int) length;
+        }
+
+        String getString() {
+
+            int length = getLength();
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        byte[] getBytes() {
+
+            int length = getLength();
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+    }
+
+    @Override
+    public Class<T> getType() {
+        return pojoClass;
+    }
+
+    @Override
+    public String toString() {
+        return "PojoSerializer [pojoClass=" + pojoClass.getName() + ", fields=" + fields.length + "]";
+    }
+
+}
@@ -0,0 +1,269 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.voltdb.client.ClientResponse;
+
+/**
+ * Decides whether a failed call to VoltDB is worth retrying, and if so how long
+ * to wait first.
+ * <p>
+ * Only failures that might go away on their own are retried - lost connections,
+ * timeouts, an unavailable server (e.g. during a failover) and transaction
+ * restarts. User aborts and graceful failures mean the procedure ran and said
+ * no, so trying again won't help.
+ * <p>
+ * A lost connection, a timeout or RESPONSE_UNKNOWN means the call may or may
+ * not have happened, so a retry could apply a change twice. An EntryProcessor
+ * that adds to a value would add to it twice, and a second putIfAbsent,
+ * getAndPut, replace(k, old, new) etc. would report the wrong answer. We only
+ * retry these for procedures in IDEMPOTENT_PROCEDURES, which don't change
+ * anything or end up in the same state with the same answer however many
+ * times they run. Everything else gets a CacheException, and it's up to the
+ * caller to find out what happened.
+ * <p>
+ * Delays grow as baseDelayMs * attempt ^ power, up to maxDelayMs, and are then
+ * reduced by up to 'jitter' (a fraction between 0 and 1) so that lots of
+ * clients don't all come back at once. We give up when we have made maxAttempts
+ * calls or when the next attempt would start after deadlineMs has passed.
+ *
+ */
+public class RetryPolicy {
+
+    public static final long DEFAULT_BASE_DELAY_MS = 1000;
+    public static final int DEFAULT_POWER = 2;
+    public static final long DEFAULT_MAX_DELAY_MS = 30000;
+    public static final double DEFAULT_JITTER = 0.5;
+    public static final long DEFAULT_DEADLINE_MS = 60000;
+
+    /**
+     * Procedures that are safe to call again when we don't know if the first
+     * call happened.
+     */
+    public static final Set<String> IDEMPOTENT_PROCEDURES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "Get", "GetKV", "GetAll", "GetWithVersion", "ContainsKey", "IteratorFirstPage", "IteratorPage",
+            "ScanPartition", "GetParam", "Put", "PutBatch", "PutWithTTL", "RemoveAll", "Clear", "SetParam",
+            "AddEventFilter", "RemoveEventFilter", "ClearEventFilters", "RefreshCacheConfig",
+            "@GetPartitionKeys")));
+
+    int maxAttempts;
+    long baseDelayMs = DEFAULT_BASE_DELAY_MS;
+    int power = DEFAULT_POWER;
+    long maxDelayMs = DEFAULT_MAX_DELAY_MS;
+    double jitter = DEFAULT_JITTER;
+    long deadlineMs = DEFAULT_DEADLINE_MS;
+
+    /**
+     * @param maxAttempts How many times we try to speak to VoltDB before giving
+     *                    up.
+     */
+    public RetryPolicy(int maxAttempts) {
+        super();
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param procedureName
+     * @param status        a ClientResponse status
+     * @return true if a call to procedureName that failed with this status
+     *         might work next time, and calling it again can't do any harm.
+     */
+    public boolean isRetryable(String procedureName, byte status) {
+
+        if (isOutcomeUnknown(status)) {
+            return IDEMPOTENT_PROCEDURES.contains(procedureName);
+        }
+
+        return isRetryable(status);
+    }
+
+    /**
+     * @param status a ClientResponse status
+     * @return true if a call that failed with this status may have happened
+     *         anyway.
+     */
+    public boolean isOutcomeUnknown(byte status) {
+
+        switch (status) {
+        case ClientResponse.CONNECTION_LOST:
+        case ClientResponse.CONNECTION_TIMEOUT:
+        case ClientResponse.RESPONSE_UNKNOWN:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @param status a ClientResponse status
+     * @return true if a call that failed with this status might work next time.
+     *         Use isRetryable(procedureName, status) to also check if it's
+     *         safe to try again.
+     */
+    public boolean isRetryable(byte status) {
+
+        switch (status) {
+        case ClientResponse.CONNECTION_LOST:
+        case ClientResponse.CONNECTION_TIMEOUT:
+        case ClientResponse.SERVER_UNAVAILABLE:
+        case ClientResponse.RESPONSE_UNKNOWN:
+        case ClientResponse.TXN_RESTART:
+            return true;
+        default:
+            // USER_ABORT, GRACEFUL_FAILURE, UNEXPECTED_FAILURE etc.
+            return false;
+        }
+    }
+
+    /**
+     * @param attempt     how many calls we've made so far, starting at 1
+     * @param startMs     when the first call was made
+     * @param nowMs       current time
+     * @return how long to wait before the next attempt, or -1 if we should give
+     *         up.
+     */
+    public long getRetryDelayMs(int attempt, long startMs, long nowMs) {
+
+        if (attempt >= maxAttempts) {
+            return -1;
+        }
+
+        long delayMs = (long) Math.min(maxDelayMs, baseDelayMs * Math.pow(attempt, power));
+
+        if (jitter > 0) {
+            delayMs -= (long) (delayMs * jitter * ThreadLocalRandom.current().nextDouble());
+        }
+
+        if (deadlineMs > 0 && nowMs + delayMs - startMs > deadlineMs) {
+            return -1;
+        }
+
+        return delayMs;
+    }
+
+    /**
+     * @return the maxAttempts
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts the maxAttempts to set
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return the baseDelayMs
+     */
+    public long getBaseDelayMs() {
+        return baseDelayMs;
+    }
+
+    /**
+     * @param baseDelayMs the baseDelayMs to set
+     */
+    public void setBaseDelayMs(long baseDelayMs) {
+        this.baseDelayMs = baseDelayMs;
+    }
+
+    /**
+     * @return the power
+     */
+    public int getPower() {
+        return power;
+    }
+
+    /**
+     * @param power the power to set
+     */
+    public void setPower(int power) {
+        this.power = power;
+    }
+
+    /**
+     * @return the maxDelayMs
+     */
+    public long getMaxDelayMs() {
+        return maxDelayMs;
+    }
+
+    /**
+     * @param maxDelayMs the maxDelayMs to set
+     */
+    public void setMaxDelayMs(long maxDelayMs) {
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * @return the jitter
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @param jitter fraction of each delay, between 0 and 1, that we randomly
+     *               take off.
+     */
+    public void setJitter(double jitter) {
+
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+
+        this.jitter = jitter;
+    }
+
+    /**
+     * @return the deadlineMs
+     */
+    public long getDeadlineMs() {
+        return deadlineMs;
+    }
+
+    /**
+     * @param deadlineMs how long a call can spend retrying, in total. 0 means
+     *                   no limit.
+     */
+    public void setDeadlineMs(long deadlineMs) {
+        this.deadlineMs = deadlineMs;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy [maxAttempts=" + maxAttempts + ", baseDelayMs=" + baseDelayMs + ", power=" + power
+                + ", maxDelayMs=" + maxDelayMs + ", jitter=" + jitter + ", deadlineMs=" + deadlineMs + "]";
+    }
+
+}
@@ -0,0 +1,251 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process stand in for VoltDB's kv_deltas topics. Whatever is publishing
+ * changes calls publish(), and every listener consumer and near cache reading
+ * from the bus sees every event published after it started, without a Kafka
+ * broker being involved. This makes it possible to test listeners, and measure
+ * what dispatching events costs, in a single JVM.
+ * <p>
+ * Events go into a fixed size ring buffer. Publishers claim a sequence number
+ * and swap their event into its slot, and readers each keep their own position,
+ * so nobody takes a lock. A reader that falls more than the capacity behind
+ * loses the events that were overwritten, and getLostEventCount() says how
+ * many.
+ *
+ */
+public class RingBufferEventBus implements CacheEventSourceFactory {
+
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    /**
+     * Most events a reader will return from one poll
+     */
+    public static final int MAX_POLL_EVENTS = 1000;
+
+    /**
+     * How long readers sleep when there's nothing to read
+     */
+    static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * An event and the sequence number it was published with.
+     */
+    static class Slot {
+
+        final long sequence;
+        final KVEvent event;
+
+        Slot(long sequence, KVEvent event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+    }
+
+    final AtomicReferenceArray<Slot> slots;
+
+    final int mask;
+
+    final AtomicLong nextSequence = new AtomicLong(0);
+
+    final AtomicLong lostEvents = new AtomicLong(0);
+
+    public RingBufferEventBus() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity how many events we keep. Must be a power of 2.
+     */
+    public RingBufferEventBus(int capacity) {
+        super();
+
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2, not " + capacity);
+        }
+
+        slots = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Send an event to everyone reading from the bus. Never blocks.
+     *
+     * @param event
+     */
+    public void publish(KVEvent event) {
+
+        long sequence = nextSequence.getAndIncrement();
+        int index = (int) (sequence & mask);
+        Slot slot = new Slot(sequence, event);
+
+        Slot current;
+
+        do {
+            current = slots.get(index);
+
+            if (current != null && current.sequence > sequence) {
+                // We were so slow that someone a whole lap ahead got here first.
+                // Readers will count our event as lost when they skip it...
+                return;
+            }
+
+        } while (!slots.compareAndSet(index, current, slot));
+    }
+
+    @Override
+    public CacheEventSource createEventSource(String groupId) {
+        // Everyone sees every event, so groups don't mean anything here...
+        return new Reader();
+    }
+
+    /**
+     * @return how many events we can hold
+     */
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * @return how many events have been published
+     */
+    public long getPublishedEventCount() {
+        return nextSequence.get();
+    }
+
+    /**
+     * @return how many events readers missed because they were overwritten
+     */
+    public long getLostEventCount() {
+        return lostEvents.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RingBufferEventBus [capacity=" + getCapacity() + ", published=" + getPublishedEventCount()
+                + ", lost=" + getLostEventCount() + "]";
+    }
+
+    /**
+     * One consumer's view of the bus.
+     */
+    class Reader implements CacheEventSource {
+
+        String cacheName;
+
+        /**
+         * Sequence number of the next event we want
+         */
+        long position;
+
+        volatile boolean open = false;
+
+        @Override
+        public void open(CacheEventConsumer consumer) {
+            cacheName = consumer.getCacheName();
+            // Like Kafka's 'latest', we only see what happens from now on...
+            position = nextSequence.get();
+            open = true;
+        }
+
+        @Override
+        public Collection<KVEvent> poll(long timeoutMs) throws InterruptedException {
+
+            List<KVEvent> events = new ArrayList<>();
+            long endNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+            while (events.size() < MAX_POLL_EVENTS) {
+
+                Slot slot = slots.get((int) (position & mask));
+
+                if (slot == null || slot.sequence < position) {
+
+                    // Nothing new yet...
+                    if (!events.isEmpty() || System.nanoTime() >= endNanos) {
+                        break;
+                    }
+
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+
+                } else if (slot.sequence > position) {
+
+                    // We've been lapped. Skip to the oldest event we still have...
+                    long oldest = Math.max(position, nextSequence.get() - slots.length());
+                    lostEvents.addAndGet(oldest - position);
+                    CacheEventConsumer.msg(cacheName + ": lost " + (oldest - position) + " events");
+                    position = oldest;
+
+                } else {
+
+                    position++;
+
+                    if (slot.event.getCacheName().equals(cacheName)) {
+                        events.add(slot.event);
+                    }
+                }
+            }
+
+            return events;
+        }
+
+        @Override
+        public boolean isReady() {
+            return open;
+        }
+
+        @Override
+        public long getLag() {
+            // Includes other caches' events...
+            return Math.max(0, nextSequence.get() - position);
+        }
+
+        @Override
+        public void delivered() {
+            // Nothing to remember...
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+    }
+
+}
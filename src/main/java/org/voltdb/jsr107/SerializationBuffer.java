@@ -0,0 +1,225 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that CacheSerializers write to. VoltDBTypedCache keeps
+ * one per thread and resets it between values, so once it has grown to the
+ * size of a typical value, serializing costs one allocation - the byte[] that
+ * goes to VoltDB.
+ *
+ */
+public class SerializationBuffer {
+
+    public static final int DEFAULT_SIZE = 1024;
+
+    byte[] buffer;
+
+    int position = 0;
+
+    public SerializationBuffer() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * @param initialSize
+     */
+    public SerializationBuffer(int initialSize) {
+        super();
+        buffer = new byte[initialSize];
+    }
+
+    /**
+     * Start again with an empty buffer.
+     */
+    public void reset() {
+        position = 0;
+    }
+
+    /**
+     * @return how many bytes have been written
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * @return how big the buffer currently is
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * @return the bytes written so far, as a new array
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Make sure we have room for another extraBytes.
+     *
+     * @param extraBytes
+     */
+    void ensureCapacity(int extraBytes) {
+
+        if (position + extraBytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extraBytes));
+        }
+    }
+
+    public void putByte(int value) {
+
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    public void putBytes(byte[] value) {
+        putBytes(value, 0, value.length);
+    }
+
+    public void putBytes(byte[] value, int offset, int length) {
+
+        ensureCapacity(length);
+        System.arraycopy(value, offset, buffer, position, length);
+        position += length;
+    }
+
+    public void putShort(int value) {
+
+        ensureCapacity(2);
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    public void putInt(int value) {
+
+        ensureCapacity(4);
+        buffer[position++] = (byte) (value >> 24);
+        buffer[position++] = (byte) (value >> 16);
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    public void putLong(long value) {
+
+        ensureCapacity(8);
+
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >> shift);
+        }
+    }
+
+    /**
+     * Write a zig-zag encoded varint, so small numbers, positive or negative,
+     * take a byte or two.
+     *
+     * @param value
+     */
+    public void putVarLong(long value) {
+
+        ensureCapacity(10);
+
+        long zigZag = (value << 1) ^ (value >> 63);
+
+        while ((zigZag & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((zigZag & 0x7F) | 0x80);
+            zigZag >>>= 7;
+        }
+
+        buffer[position++] = (byte) zigZag;
+    }
+
+    /**
+     * Write value as UTF-8, without making a byte[] of it first.
+     *
+     * @param value
+     */
+    public void putUtf8(CharSequence value) {
+
+        // Worst case is 3 bytes per char...
+        ensureCapacity(value.length() * 3);
+
+        for (int i = 0; i < value.length(); i++) {
+
+            char c = value.charAt(i);
+
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, which is what String.getBytes does too...
+                buffer[position++] = (byte) '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Write value as a varint length followed by its UTF-8 bytes.
+     *
+     * @param value
+     */
+    public void putString(CharSequence value) {
+
+        // Write the string after enough space for the longest length we could
+        // need, then move it down if the length turns out shorter...
+        ensureCapacity(5);
+        int lengthPosition = position;
+        position += 5;
+
+        putUtf8(value);
+
+        int length = position - lengthPosition - 5;
+
+        position = lengthPosition;
+        putVarLong(length);
+
+        System.arraycopy(buffer, lengthPosition + 5, buffer, position, length);
+        position += length;
+    }
+
+    @Override
+    public String toString() {
+        return "SerializationBuffer [size=" + position + ", capacity=" + buffer.length + "]";
+    }
+
+}
@@ -0,0 +1,103 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import javax.cache.Cache;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.EventType;
+
+/**
+ * A KVEvent with its key and values turned back into the types a
+ * VoltDBTypedCache uses.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class TypedCacheEntryEvent<K, V> extends CacheEntryEvent<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    K key;
+
+    V value;
+
+    V oldValue;
+
+    boolean oldValueAvailable;
+
+    /**
+     * @param source            the typed cache
+     * @param eventType
+     * @param key
+     * @param value
+     * @param oldValue
+     * @param oldValueAvailable
+     */
+    public TypedCacheEntryEvent(Cache<K, V> source, EventType eventType, K key, V value, V oldValue,
+            boolean oldValueAvailable) {
+        super(source, eventType);
+        this.key = key;
+        this.value = value;
+        this.oldValue = oldValue;
+        this.oldValueAvailable = oldValueAvailable;
+    }
+
+    @Override
+    public K getKey() {
+        return key;
+    }
+
+    @Override
+    public V getValue() {
+        return value;
+    }
+
+    @Override
+    public V getOldValue() {
+        return oldValue;
+    }
+
+    @Override
+    public boolean isOldValueAvailable() {
+        return oldValueAvailable;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> arg0) {
+
+        if (arg0.isInstance(this)) {
+            return arg0.cast(this);
+        }
+
+        throw new IllegalArgumentException("Unwrapping to class is not supported: " + arg0);
+    }
+
+    @Override
+    public String toString() {
+        return "TypedCacheEntryEvent [eventType=" + getEventType() + ", key=" + key + "]";
+    }
+
+}
@@ -0,0 +1,146 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.event.EventType;
+
+/**
+ * Listens to a VoltDBCache on behalf of a listener registered with a
+ * VoltDBTypedCache, turning each event's key and values into the typed
+ * cache's types before passing them on. Event types the typed listener doesn't
+ * listen for are dropped.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class TypedCacheEntryListener<K, V> implements CacheEntryCreatedListener<String, byte[]>,
+        CacheEntryUpdatedListener<String, byte[]>, CacheEntryRemovedListener<String, byte[]>,
+        CacheEntryExpiredListener<String, byte[]> {
+
+    VoltDBTypedCache<K, V> typedCache;
+
+    CacheEntryListener<? super K, ? super V> listener;
+
+    /**
+     * @param typedCache
+     * @param listener   the typed listener
+     */
+    public TypedCacheEntryListener(VoltDBTypedCache<K, V> typedCache, CacheEntryListener<? super K, ? super V> listener) {
+        super();
+        this.typedCache = typedCache;
+        this.listener = listener;
+    }
+
+    /**
+     * @return the typed listener we pass events to
+     */
+    public CacheEntryListener<? super K, ? super V> getListener() {
+        return listener;
+    }
+
+    /**
+     * @param eventType
+     * @return true if the typed listener wants events of this type
+     */
+    public boolean isListeningFor(EventType eventType) {
+
+        switch (eventType) {
+        case CREATED:
+            return listener instanceof CacheEntryCreatedListener;
+        case UPDATED:
+            return listener instanceof CacheEntryUpdatedListener;
+        case REMOVED:
+            return listener instanceof CacheEntryRemovedListener;
+        case EXPIRED:
+            return listener instanceof CacheEntryExpiredListener;
+        default:
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends byte[]>> arg0)
+            throws CacheEntryListenerException {
+
+        if (isListeningFor(EventType.CREATED)) {
+            ((CacheEntryCreatedListener<K, V>) listener).onCreated(toTypedEvents(arg0));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void onUpdated(Iterable<CacheEntryEvent<? extends String, ? extends byte[]>> arg0)
+            throws CacheEntryListenerException {
+
+        if (isListeningFor(EventType.UPDATED)) {
+            ((CacheEntryUpdatedListener<K, V>) listener).onUpdated(toTypedEvents(arg0));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void onRemoved(Iterable<CacheEntryEvent<? extends String, ? extends byte[]>> arg0)
+            throws CacheEntryListenerException {
+
+        if (isListeningFor(EventType.REMOVED)) {
+            ((CacheEntryRemovedListener<K, V>) listener).onRemoved(toTypedEvents(arg0));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void onExpired(Iterable<CacheEntryEvent<? extends String, ? extends byte[]>> arg0)
+            throws CacheEntryListenerException {
+
+        if (isListeningFor(EventType.EXPIRED)) {
+            ((CacheEntryExpiredListener<K, V>) listener).onExpired(toTypedEvents(arg0));
+        }
+    }
+
+    List<CacheEntryEvent<? extends K, ? extends V>> toTypedEvents(
+            Iterable<CacheEntryEvent<? extends String, ? extends byte[]>> events) {
+
+        ArrayList<CacheEntryEvent<? extends K, ? extends V>> typedEvents = new ArrayList<>();
+
+        for (CacheEntryEvent<? extends String, ? extends byte[]> event : events) {
+            typedEvents.add(typedCache.toTypedEvent(event));
+        }
+
+        return typedEvents;
+    }
+
+}
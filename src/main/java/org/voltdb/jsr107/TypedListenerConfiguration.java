@@ -0,0 +1,169 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.configuration.Factory;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryEventFilter;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryListenerException;
+
+/**
+ * What VoltDBTypedCache registers with its VoltDBCache for a typed listener
+ * configuration. The listener and filter it creates convert events to the typed
+ * cache's types and hand them to the ones the typed configuration creates.
+ * <p>
+ * Two of these are equal if they are for the same typed configuration and
+ * typed cache, so deregistering finds the one we registered.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class TypedListenerConfiguration<K, V> implements CacheEntryListenerConfiguration<String, byte[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    transient VoltDBTypedCache<K, V> typedCache;
+
+    CacheEntryListenerConfiguration<K, V> typedConfig;
+
+    /**
+     * @param typedCache
+     * @param typedConfig the configuration registered with typedCache
+     */
+    public TypedListenerConfiguration(VoltDBTypedCache<K, V> typedCache,
+            CacheEntryListenerConfiguration<K, V> typedConfig) {
+        super();
+        this.typedCache = typedCache;
+        this.typedConfig = typedConfig;
+    }
+
+    /**
+     * @return the configuration registered with the typed cache
+     */
+    public CacheEntryListenerConfiguration<K, V> getTypedConfig() {
+        return typedConfig;
+    }
+
+    /**
+     * @return the typed cache the configuration was registered with
+     */
+    public VoltDBTypedCache<K, V> getTypedCache() {
+        return typedCache;
+    }
+
+    @Override
+    public Factory<CacheEntryListener<? super String, ? super byte[]>> getCacheEntryListenerFactory() {
+        return new ListenerFactory<>(typedCache, typedConfig);
+    }
+
+    @Override
+    public Factory<CacheEntryEventFilter<? super String, ? super byte[]>> getCacheEntryEventFilterFactory() {
+
+        if (typedConfig.getCacheEntryEventFilterFactory() == null) {
+            return null;
+        }
+
+        return new FilterFactory<>(typedCache, typedConfig);
+    }
+
+    @Override
+    public boolean isOldValueRequired() {
+        return typedConfig.isOldValueRequired();
+    }
+
+    @Override
+    public boolean isSynchronous() {
+        return typedConfig.isSynchronous();
+    }
+
+    @Override
+    public int hashCode() {
+        return typedConfig.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (!(obj instanceof TypedListenerConfiguration)) {
+            return false;
+        }
+
+        TypedListenerConfiguration<?, ?> other = (TypedListenerConfiguration<?, ?>) obj;
+        return typedCache == other.typedCache && typedConfig.equals(other.typedConfig);
+    }
+
+    static class ListenerFactory<K, V> implements Factory<CacheEntryListener<? super String, ? super byte[]>> {
+
+        private static final long serialVersionUID = 1L;
+
+        transient VoltDBTypedCache<K, V> typedCache;
+
+        CacheEntryListenerConfiguration<K, V> typedConfig;
+
+        ListenerFactory(VoltDBTypedCache<K, V> typedCache, CacheEntryListenerConfiguration<K, V> typedConfig) {
+            this.typedCache = typedCache;
+            this.typedConfig = typedConfig;
+        }
+
+        @Override
+        public CacheEntryListener<? super String, ? super byte[]> create() {
+            return new TypedCacheEntryListener<>(typedCache, typedConfig.getCacheEntryListenerFactory().create());
+        }
+    }
+
+    static class FilterFactory<K, V> implements Factory<CacheEntryEventFilter<? super String, ? super byte[]>> {
+
+        private static final long serialVersionUID = 1L;
+
+        transient VoltDBTypedCache<K, V> typedCache;
+
+        CacheEntryListenerConfiguration<K, V> typedConfig;
+
+        FilterFactory(VoltDBTypedCache<K, V> typedCache, CacheEntryListenerConfiguration<K, V> typedConfig) {
+            this.typedCache = typedCache;
+            this.typedConfig = typedConfig;
+        }
+
+        @Override
+        public CacheEntryEventFilter<? super String, ? super byte[]> create() {
+
+            final CacheEntryEventFilter<? super K, ? super V> typedFilter = typedConfig
+                    .getCacheEntryEventFilterFactory().create();
+
+            return new CacheEntryEventFilter<String, byte[]>() {
+
+                @Override
+                public boolean evaluate(CacheEntryEvent<? extends String, ? extends byte[]> arg0)
+                        throws CacheEntryListenerException {
+                    return typedFilter.evaluate(typedCache.toTypedEvent(arg0));
+                }
+            };
+        }
+    }
+
+}
@@ -25,19 +25,34 @@ package org.voltdb.jsr107;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.cache.Cache;
 import javax.cache.CacheException;
 import javax.cache.CacheManager;
 import javax.cache.configuration.CacheEntryListenerConfiguration;
 import javax.cache.configuration.Configuration;
+import javax.cache.configuration.Factory;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.CacheEntryEventFilter;
 import javax.cache.integration.CompletionListener;
 import javax.cache.processor.EntryProcessor;
 import javax.cache.processor.EntryProcessorException;
@@ -50,21 +65,77 @@ import org.voltdb.client.Client;
 import org.voltdb.client.ClientConfig;
 import org.voltdb.client.ClientFactory;
 import org.voltdb.client.ClientResponse;
-import org.voltdb.client.ProcCallException;
 
 import jsr107.VoltParameterWrangler;
 
 public class VoltDBCache implements Cache<String, byte[]> {
 
-    private static final String NETWORK_BUFFER_OVERFLOW = "SQL ERROR Output from SQL stmt overflowed output/network buffer of 50mb";
+    static final String NETWORK_BUFFER_OVERFLOW = "SQL ERROR Output from SQL stmt overflowed output/network buffer of 50mb";
     String hostnames;
-    int retryAttempts;
-    int retryPower = 2;
+    volatile RetryPolicy retryPolicy;
     boolean events = false;
-    Thread eventConsumerRunner;
     String entryProcessorPackageName;
     int kafkaPort;
     public static final String TOO_MUCH_DATA_REQUESTED = "Too much data requested";
+
+    /**
+     * Name of the kv_parameters entry that says whether a cache exports events.
+     */
+    public static final String ENABLE_EVENTS = "ENABLE_EVENTS";
+
+    /**
+     * Name of the kv_parameters entry that holds a cache's TTL.
+     */
+    public static final String TTL_SECONDS = "TTL_SECONDS";
+
+    /**
+     * Name of the kv_parameters entry that says whether events carry old values.
+     */
+    public static final String OLD_VALUES = "OLD_VALUES";
+
+    /**
+     * Most keys we send to VoltDB in a single call when doing 'all' methods.
+     */
+    public static final int MAX_KEYS_PER_BATCH = 100;
+
+    /**
+     * Most value bytes we send to VoltDB in a single putAll call.
+     */
+    public static final long MAX_BYTES_PER_BATCH = 10 * 1024 * 1024;
+
+    /**
+     * How many entries iterator() fetches at a time by default.
+     */
+    public static final int DEFAULT_ITERATOR_PAGE_SIZE = 500;
+
+    int iteratorPageSize = DEFAULT_ITERATOR_PAGE_SIZE;
+
+    /**
+     * How we read kv_deltas. Has to match the topic's format in the deployment
+     * file.
+     */
+    volatile KVEventCodec eventCodec = new CsvKVEventCodec();
+
+    int listenerThreads = 1;
+
+    int listenerQueueSize = EventDispatcher.DEFAULT_QUEUE_SIZE;
+
+    int listenerMaxBatchSize = EventDispatcher.DEFAULT_MAX_BATCH_SIZE;
+
+    long listenerBatchWindowMs = 0;
+
+    String eventCheckpointFile = null;
+
+    long eventCatchUpThreshold = 0;
+
+    long eventConflationWindowMs = 0;
+
+    /**
+     * Where listeners and near caches get events from. Kafka unless someone
+     * says otherwise.
+     */
+    CacheEventSourceFactory eventSourceFactory = null;
+
     /**
      * Used for formatting messages
      */
@@ -72,11 +143,54 @@ public class VoltDBCache implements Cache<String, byte[]> {
 
     Client c = null;
 
+    /**
+     * Manager that owns us and our Client, if any.
+     */
+    VoltDBCacheManager cacheManager = null;
+
+    /**
+     * Shared by all caches in this JVM to schedule async retries, so a failed
+     * call doesn't tie up a thread while it waits.
+     */
+    static final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "VoltDBCache-retry");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Where retryScheduler hands retries when they're due. Queueing a call can
+     * block while the Client has too many outstanding, and we don't want that
+     * to hold up every other cache's retries.
+     */
+    static final ExecutorService retryCaller = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "VoltDBCache-retry-call");
+        t.setDaemon(true);
+        return t;
+    });
+
     String cacheName;
 
-    CacheEntryListenerConfiguration<String, byte[]> celc;
+    /**
+     * Our registered listeners, and the kv_event_filters row we added for each
+     * of them.
+     */
+    LinkedHashMap<CacheEntryListenerConfiguration<String, byte[]>, String> listeners = new LinkedHashMap<>();
+
+    /**
+     * kv_event_filters row we added for our near cache.
+     */
+    String nearCacheFilterId = null;
+
+    /**
+     * Optional in-process copy of recently read values. Kept honest by
+     * nearCacheInvalidator, which watches kv_deltas.
+     */
+    volatile NearCache nearCache = null;
 
-    CacheEventConsumer eventConsumer = null;
+    CacheEventConsumer nearCacheInvalidator = null;
+
+    Thread nearCacheInvalidatorRunner;
 
     /**
      *
@@ -96,7 +210,7 @@ public class VoltDBCache implements Cache<String, byte[]> {
             int kafkaPort) {
         super();
         this.hostnames = hostnames;
-        this.retryAttempts = retryAttempts;
+        this.retryPolicy = new RetryPolicy(retryAttempts);
         this.cacheName = cacheName;
         this.entryProcessorPackageName = entryProcessorPackageName;
         this.kafkaPort = kafkaPort;
@@ -110,6 +224,41 @@ public class VoltDBCache implements Cache<String, byte[]> {
 
     }
 
+    /**
+     * Create a cache that belongs to a VoltDBCacheManager and uses its Client.
+     * Caches like this are cheap, as they don't have a connection of their own.
+     *
+     * @param cacheManager              the manager that owns us
+     * @param sharedClient              Client shared with the manager's other
+     *                                  caches
+     * @param hostnames                 comma delimited list of hostnames that make
+     *                                  up the VoltDB cluster
+     * @param retryAttempts             How many times we try to speak to VoltDB
+     *                                  before giving up.
+     * @param cacheName                 name of our cache.
+     * @param entryProcessorPackageName If we are using Invoke this is the package
+     *                                  name our Invokeable classes use
+     * @param kafkaPort                 - kafka port number on VoltDB, usually 9092
+     */
+    VoltDBCache(VoltDBCacheManager cacheManager, Client sharedClient, String hostnames, int retryAttempts,
+            String cacheName, String entryProcessorPackageName, int kafkaPort) {
+        super();
+        this.cacheManager = cacheManager;
+        this.c = sharedClient;
+        this.hostnames = hostnames;
+        this.retryPolicy = new RetryPolicy(retryAttempts);
+        this.cacheName = cacheName;
+        this.entryProcessorPackageName = entryProcessorPackageName;
+        this.kafkaPort = kafkaPort;
+
+        try {
+            getEventsFromDB();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+    }
+
     public void loadEntryProcessors() {
         try {
 
@@ -129,7 +278,7 @@ public class VoltDBCache implements Cache<String, byte[]> {
     private void getEventsFromDB() {
         long eventsFlag;
         try {
-            eventsFlag = (long) callVoltDBProcReturnLastRow("GetParam", cacheName, "ENABLE_EVENTS");
+            eventsFlag = (long) callVoltDBProcReturnLastRow("GetParam", cacheName, ENABLE_EVENTS);
             if (eventsFlag == 1) {
                 events = true;
             } else {
@@ -141,15 +290,122 @@ public class VoltDBCache implements Cache<String, byte[]> {
 
     }
 
+    /**
+     * Start keeping a bounded, in-process copy of values we read. Entries are
+     * invalidated by watching kv_deltas, so this turns on change data capture for
+     * this cache.
+     *
+     * @param maxEntries how many values we keep before evicting the least
+     *                   recently used one
+     */
+    public void enableNearCache(int maxEntries) {
+
+        checkNotClosed();
+
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0");
+        }
+
+        disableNearCache();
+
+        if (!events) {
+            setEvents(true);
+        }
+
+        nearCache = new NearCache(maxEntries);
+
+        // If anyone else is filtering events on the server we still need to see
+        // all of them...
+        nearCacheFilterId = addEventFilter(new KeyPrefixEventFilter(""));
+
+        // Each near cache needs to see every event, so it gets a consumer group
+        // of its own...
+        nearCacheInvalidator = new CacheEventConsumer(cacheName,
+                getEventSourceFactory().createEventSource(cacheName + "_nearcache_" + UUID.randomUUID().toString()),
+                null, this, nearCache);
+        nearCacheInvalidatorRunner = new Thread(nearCacheInvalidator);
+        nearCacheInvalidatorRunner.setDaemon(true);
+        nearCacheInvalidatorRunner.start();
+
+    }
+
+    /**
+     * Stop using the near cache, if we have one.
+     */
+    public void disableNearCache() {
+
+        if (nearCacheInvalidator != null) {
+            nearCacheInvalidator.stop();
+            nearCacheInvalidator = null;
+            nearCacheInvalidatorRunner = null;
+        }
+
+        if (nearCache != null) {
+            nearCache.setAccepting(false);
+            nearCache = null;
+        }
+
+        if (nearCacheFilterId != null) {
+            removeEventFilter(nearCacheFilterId);
+            nearCacheFilterId = null;
+        }
+
+    }
+
+    /**
+     * @return the near cache, or null if we aren't using one.
+     */
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    /**
+     * Remove everything in the cache. As JSR-107 allows, listeners aren't told,
+     * and nor are other clients' near caches, so they may carry on returning
+     * old values until those are evicted or changed. Use removeAll() if they
+     * need to know.
+     */
     @Override
     public void clear() {
-        // NOOP - we don't actually cache anything...
+
+        checkNotClosed();
+
+        callVoltDBProcReturnLastRow("Clear", cacheName);
+        clearNearCache();
+    }
+
+    /**
+     * Empty our near cache, if we have one.
+     */
+    private void clearNearCache() {
+
+        NearCache ourNearCache = nearCache;
+
+        if (ourNearCache != null) {
+            ourNearCache.clear();
+        }
     }
 
     @Override
     public void close() {
 
-        if (c != null) {
+        disableNearCache();
+
+        // Other clients may still want events, so we leave them on...
+        synchronized (this) {
+            for (CacheEntryListenerConfiguration<String, byte[]> listenerConfig : new ArrayList<>(
+                    listeners.keySet())) {
+                detachListener(listenerConfig);
+            }
+        }
+
+        if (cacheManager != null) {
+
+            // The Client belongs to our manager...
+            c = null;
+            cacheManager.forget(this);
+
+        } else if (c != null) {
             try {
                 c.drain();
                 c.close();
@@ -167,6 +423,12 @@ public class VoltDBCache implements Cache<String, byte[]> {
 
         checkNotNull(arg0);
 
+        NearCache ourNearCache = nearCache;
+
+        if (ourNearCache != null && ourNearCache.get(arg0) != null) {
+            return true;
+        }
+
         Object key = callVoltDBProcReturnLastRow("ContainsKey", arg0, cacheName);
 
         if (key != null) {
@@ -177,11 +439,20 @@ public class VoltDBCache implements Cache<String, byte[]> {
     }
 
     @Override
-    public void deregisterCacheEntryListener(CacheEntryListenerConfiguration<String, byte[]> arg0) {
+    public synchronized void deregisterCacheEntryListener(CacheEntryListenerConfiguration<String, byte[]> arg0) {
+
+        checkNotNull(arg0);
 
-        stopCacheEntryListenerThread();
-        setEvents(false);
-        celc = null;
+        if (!listeners.containsKey(arg0)) {
+            return;
+        }
+
+        detachListener(arg0);
+
+        if (listeners.isEmpty() && nearCache == null) {
+            // Our near cache still needs events...
+            setEvents(false);
+        }
 
     }
 
@@ -192,7 +463,21 @@ public class VoltDBCache implements Cache<String, byte[]> {
 
         checkNotNull(arg0);
 
-        return (byte[]) callVoltDBProcReturnLastRow("Get", arg0, cacheName);
+        NearCache ourNearCache = nearCache;
+
+        if (ourNearCache == null) {
+            return (byte[]) callVoltDBProcReturnLastRow("Get", arg0, cacheName);
+        }
+
+        byte[] value = ourNearCache.get(arg0);
+
+        if (value == null) {
+            long invalidationCount = ourNearCache.getInvalidationCount();
+            value = (byte[]) callVoltDBProcReturnLastRow("Get", arg0, cacheName);
+            ourNearCache.putIfNotInvalidatedSince(arg0, value, invalidationCount);
+        }
+
+        return value;
     }
 
     @Override
@@ -204,13 +489,41 @@ public class VoltDBCache implements Cache<String, byte[]> {
 
         checkNotNull(arg0);
 
-        CountDownLatch latch = new CountDownLatch(arg0.size());
-        BulkGetCallback bgcc = new BulkGetCallback(latch, results);
+        NearCache ourNearCache = nearCache;
+        Set<? extends String> keysToFetch = arg0;
+        long invalidationCount = 0;
 
-        for (String key : arg0) {
+        if (ourNearCache != null) {
+
+            Set<String> missingKeys = new HashSet<>();
+
+            for (String key : arg0) {
+                byte[] value = ourNearCache.get(key);
+                if (value == null) {
+                    missingKeys.add(key);
+                } else {
+                    results.put(key, value);
+                }
+            }
+
+            keysToFetch = missingKeys;
+            invalidationCount = ourNearCache.getInvalidationCount();
+        }
+
+        // One call per batch of keys in the same partition, instead of one per
+        // key...
+        List<List<String>> batches = groupKeysByPartition(keysToFetch);
+
+        Map<String, byte[]> fetchedResults = new HashMap<>();
+        CountDownLatch latch = new CountDownLatch(batches.size());
+        BulkGetCallback bgcc = new BulkGetCallback(latch, fetchedResults);
+
+        for (List<String> batch : batches) {
+
+            String[] keyArray = batch.toArray(new String[batch.size()]);
 
             try {
-                c.callProcedure(bgcc, "GetKV", key, cacheName);
+                c.callProcedure(bgcc, "GetAll", keyArray[0], cacheName, keyArray);
             } catch (IOException e) {
                 throw new CacheException("IOException:" + e.getMessage());
             }
@@ -223,6 +536,18 @@ public class VoltDBCache implements Cache<String, byte[]> {
             throw new CacheException("InterruptedException:" + e.getMessage());
         }
 
+        if (bgcc.getFailedBecause() != null) {
+            throw new CacheException(bgcc.getFailedBecause());
+        }
+
+        if (ourNearCache != null) {
+            for (Map.Entry<String, byte[]> entry : fetchedResults.entrySet()) {
+                ourNearCache.putIfNotInvalidatedSince(entry.getKey(), entry.getValue(), invalidationCount);
+            }
+        }
+
+        results.putAll(fetchedResults);
+
         return results;
     }
 
@@ -234,7 +559,9 @@ public class VoltDBCache implements Cache<String, byte[]> {
 
         checkNotNull(arg1);
 
-        return (byte[]) callVoltDBProcRwturnSecondLastRow("GetAndPut", arg0, cacheName, arg1);
+        byte[] oldValue = (byte[]) callVoltDBProcRwturnSecondLastRow("GetAndPut", arg0, cacheName, arg1);
+        invalidateNearCache(arg0);
+        return oldValue;
     }
 
     @Override
@@ -244,7 +571,9 @@ public class VoltDBCache implements Cache<String, byte[]> {
 
         checkNotNull(arg0);
 
-        return (byte[]) callVoltDBProcRwturnSecondLastRow("GetAndRemove", arg0, cacheName);
+        byte[] oldValue = (byte[]) callVoltDBProcRwturnSecondLastRow("GetAndRemove", arg0, cacheName);
+        invalidateNearCache(arg0);
+        return oldValue;
     }
 
     @Override
@@ -256,19 +585,36 @@ public class VoltDBCache implements Cache<String, byte[]> {
 
         checkNotNull(arg1);
 
-        return (byte[]) callVoltDBProcRwturnSecondLastRow("GetAndReplace", arg0, cacheName, arg1);
+        byte[] oldValue = (byte[]) callVoltDBProcRwturnSecondLastRow("GetAndReplace", arg0, cacheName, arg1);
+        invalidateNearCache(arg0);
+        return oldValue;
     }
 
     @Override
     public CacheManager getCacheManager() {
 
-        // Cache is not managed...
-        return null;
+        // Will be null if we were created directly...
+        return cacheManager;
     }
 
     @Override
     public <C extends Configuration<String, byte[]>> C getConfiguration(Class<C> arg0) {
-        throw new UnsupportedOperationException();
+
+        MutableConfiguration<String, byte[]> config = new MutableConfiguration<String, byte[]>()
+                .setTypes(String.class, byte[].class).setStoreByValue(true)
+                .setStatisticsEnabled(false).setManagementEnabled(false);
+
+        synchronized (this) {
+            for (CacheEntryListenerConfiguration<String, byte[]> listenerConfig : listeners.keySet()) {
+                config.addCacheEntryListenerConfiguration(listenerConfig);
+            }
+        }
+
+        if (arg0.isInstance(config)) {
+            return arg0.cast(config);
+        }
+
+        throw new IllegalArgumentException("Configuration class " + arg0 + " is not supported");
     }
 
     @Override
@@ -345,6 +691,7 @@ public class VoltDBCache implements Cache<String, byte[]> {
 
             EntryProcessorResult<T> result = null;
 
+            invalidateNearCache(key);
             result = bpcc.getResults().get(key);
 
             if (result != null) {
@@ -365,202 +712,973 @@ public class VoltDBCache implements Cache<String, byte[]> {
         return false;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Iterator<Entry<String, byte[]>> iterator() {
-        // We're being asked to return the entire database.
-        // We may throw a CacheException if the contents are too big.
 
-        Set<Entry<String, byte[]>> answer = null;
+        checkNotClosed();
 
-        Object[] params = { cacheName };
-        answer = (Set<Entry<String, byte[]>>) callVoltDBProcWithAllParams("Iterator", true, 1, params);
-        return answer.iterator();
+        // We page through the cache in key order, fetching the next page while
+        // the caller works on the current one.
+        return new KVPagedIterator(this, iteratorPageSize);
 
     }
 
-    @Override
-    public void loadAll(Set<? extends String> arg0, boolean arg1, CompletionListener arg2) {
-
-        // NOOP - we don't actually cache anything...
-        arg2.onCompletion();
+    /**
+     * Non-API method that returns the contents of the cache as a Stream. Each
+     * VoltDB partition is scanned separately, in key order. There is no order
+     * across partitions.
+     *
+     * @return a Stream of cache entries
+     */
+    public Stream<Entry<String, byte[]>> stream() {
+        return stream(false);
+    }
 
+    /**
+     * Non-API method that returns the contents of the cache as a parallel
+     * Stream. The VoltDB partitions are scanned at the same time, so this scales
+     * with the number of partitions.
+     *
+     * @return a parallel Stream of cache entries
+     */
+    public Stream<Entry<String, byte[]>> parallelStream() {
+        return stream(true);
     }
 
-    @Override
-    public void put(String arg0, byte[] arg1) {
+    private Stream<Entry<String, byte[]>> stream(boolean parallel) {
 
         checkNotClosed();
 
-        checkNotNull(arg0);
+        return StreamSupport.stream(new KVPartitionSpliterator(this, getPartitionKeys(), iteratorPageSize),
+                parallel);
+    }
 
-        checkNotNull(arg1);
+    /**
+     * @return one key for each VoltDB partition. Passing it as the partitioning
+     *         parameter gets us routed to that partition.
+     */
+    List<String> getPartitionKeys() {
 
-        callVoltDBProcReturnLastRow("Put", arg0, cacheName, arg1);
+        VoltTable partitionKeyTable = callVoltDBProcReturnTables("@GetPartitionKeys", "STRING")[0];
+        List<String> partitionKeys = new ArrayList<>(partitionKeyTable.getRowCount());
+
+        while (partitionKeyTable.advanceRow()) {
+            partitionKeys.add(partitionKeyTable.getString("PARTITION_KEY"));
+        }
 
+        return partitionKeys;
     }
 
-    @Override
-    public void putAll(Map<? extends String, ? extends byte[]> arg0) {
+    /**
+     * Set how many entries iterator() asks VoltDB for at a time. It will
+     * halve this if a page turns out to be too big to send back.
+     *
+     * @param iteratorPageSize
+     */
+    public void setIteratorPageSize(int iteratorPageSize) {
 
-        checkNotClosed();
+        if (iteratorPageSize < 1) {
+            throw new IllegalArgumentException("iteratorPageSize must be > 0");
+        }
 
-        checkNotNull(arg0);
+        this.iteratorPageSize = iteratorPageSize;
+    }
 
-        CountDownLatch latch = new CountDownLatch(arg0.size());
-        BulkProcedureCallCallback bpcc = new BulkProcedureCallCallback(latch);
+    /**
+     * @return how many threads deliver events to our listener
+     */
+    public int getListenerThreads() {
+        return listenerThreads;
+    }
 
-        Iterator<?> it = arg0.entrySet().iterator();
-        while (it.hasNext()) {
+    /**
+     * Set how many threads deliver events to our listener. Events for the same
+     * key always go to the same thread, so they arrive in order, but if this is
+     * more than 1 the listener has to be thread safe. Takes effect next time a
+     * listener is registered.
+     *
+     * @param listenerThreads
+     */
+    public void setListenerThreads(int listenerThreads) {
 
-            @SuppressWarnings("rawtypes")
-            Map.Entry pair = (Map.Entry) it.next();
-            it.remove();
+        if (listenerThreads < 1) {
+            throw new IllegalArgumentException("listenerThreads must be > 0");
+        }
 
-            try {
-                c.callProcedure(bpcc, "Put", pair.getKey(), cacheName, pair.getValue());
-            } catch (IOException e) {
-                throw new CacheException("IOException:" + e.getMessage());
-            }
+        this.listenerThreads = listenerThreads;
+    }
 
-        }
+    /**
+     * @return how many events each listener thread can have waiting
+     */
+    public int getListenerQueueSize() {
+        return listenerQueueSize;
+    }
 
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            throw new CacheException("Interrupted while waiting for response");
-        }
+    /**
+     * Set how many events each listener thread can have waiting. When a
+     * thread's queue is full we stop reading from Kafka until it catches up.
+     *
+     * @param listenerQueueSize
+     */
+    public void setListenerQueueSize(int listenerQueueSize) {
 
-        if (bpcc.getFailedBecause() != null) {
-            throw new CacheException(bpcc.getFailedBecause());
+        if (listenerQueueSize < 1) {
+            throw new IllegalArgumentException("listenerQueueSize must be > 0");
         }
 
+        this.listenerQueueSize = listenerQueueSize;
     }
 
-    @Override
-    public boolean putIfAbsent(String arg0, byte[] arg1) {
-
-        checkNotClosed();
-
-        checkNotNull(arg0);
+    /**
+     * @return most events we pass to a listener in one call
+     */
+    public int getListenerMaxBatchSize() {
+        return listenerMaxBatchSize;
+    }
 
-        checkNotNull(arg1);
+    /**
+     * @return how long we wait for a batch of events to fill up
+     */
+    public long getListenerBatchWindowMs() {
+        return listenerBatchWindowMs;
+    }
 
-        Object existingKey = callVoltDBProcRwturnSecondLastRow("PutIfAbsent", arg0, cacheName, arg1);
+    /**
+     * Set how events are batched up for our listener. Listener threads pass on
+     * whatever has arrived, up to maxBatchSize events at a time, as one Iterable
+     * per run of events of the same type. If batchWindowMs is more than 0 they
+     * wait up to that long for more to arrive first. Takes effect next time a
+     * listener is registered.
+     *
+     * @param maxBatchSize  1 means one event per call
+     * @param batchWindowMs 0 means don't wait
+     */
+    public void setListenerBatching(int maxBatchSize, long batchWindowMs) {
 
-        if (existingKey == null) {
-            return true;
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be > 0");
         }
 
-        return false;
+        if (batchWindowMs < 0) {
+            throw new IllegalArgumentException("batchWindowMs must be >= 0");
+        }
 
+        this.listenerMaxBatchSize = maxBatchSize;
+        this.listenerBatchWindowMs = batchWindowMs;
     }
 
-    @Override
-    public void registerCacheEntryListener(CacheEntryListenerConfiguration<String, byte[]> arg0) {
+    /**
+     * @return where listeners keep their Kafka offsets, or null
+     */
+    public String getEventCheckpointFile() {
+        return eventCheckpointFile;
+    }
+
+    /**
+     * Make listeners remember how far through the event stream they've got in a
+     * local file, and carry on from there when they next start, instead of
+     * missing everything that happened in between. Offsets are only saved once
+     * listeners have seen the events, so after a crash a listener may see some
+     * events twice. Takes effect when the first listener for this cache in this
+     * JVM is registered.
+     *
+     * @param eventCheckpointFile file name, or null to start from the latest
+     *                            event each time.
+     */
+    public void setEventCheckpointFile(String eventCheckpointFile) {
+        this.eventCheckpointFile = eventCheckpointFile;
+    }
+
+    /**
+     * @return how far behind listeners have to be to start catching up, or 0
+     */
+    public long getEventCatchUpThreshold() {
+        return eventCatchUpThreshold;
+    }
+
+    /**
+     * If listeners start more than eventCatchUpThreshold events behind, such as
+     * after resuming from a checkpoint, read the stream in big chunks and only
+     * pass on the latest event for each key in each chunk until they are back
+     * within the threshold. Takes effect when the first listener for this cache
+     * in this JVM is registered.
+     *
+     * @param eventCatchUpThreshold 0 to always pass on every event
+     */
+    public void setEventCatchUpThreshold(long eventCatchUpThreshold) {
+
+        if (eventCatchUpThreshold < 0) {
+            throw new IllegalArgumentException("eventCatchUpThreshold must be >= 0");
+        }
+
+        this.eventCatchUpThreshold = eventCatchUpThreshold;
+    }
+
+    /**
+     * @return how long events take to get to this cache's listeners in this JVM
+     *         and how far behind they are, or null if there aren't any. These are
+     *         also in JMX as
+     *         org.voltdb.jsr107:type=CacheEventStats,name=cacheName,consumer=listeners
+     */
+    public CacheEventStats getListenerEventStats() {
+        return CacheEventConsumer.getListenerStats(this);
+    }
+
+    /**
+     * @return how long events take to get to our near cache and how far behind
+     *         it is, or null if we don't have one
+     */
+    public CacheEventStats getNearCacheEventStats() {
+
+        CacheEventConsumer ourNearCacheInvalidator = nearCacheInvalidator;
+
+        if (ourNearCacheInvalidator == null) {
+            return null;
+        }
+
+        return ourNearCacheInvalidator.getStats();
+    }
+
+    /**
+     * @return where listeners and near caches get their events from
+     */
+    public synchronized CacheEventSourceFactory getEventSourceFactory() {
+
+        if (eventSourceFactory == null) {
+            eventSourceFactory = new KafkaCacheEventSourceFactory(getKafkaHostnames());
+        }
+
+        return eventSourceFactory;
+    }
+
+    /**
+     * Get listener and near cache events from somewhere other than VoltDB's
+     * Kafka topics, such as a RingBufferEventBus. Only affects listeners and near
+     * caches started after the call, so deregister listeners first.
+     *
+     * @param eventSourceFactory null to go back to using Kafka
+     */
+    public synchronized void setEventSourceFactory(CacheEventSourceFactory eventSourceFactory) {
+
+        if (!listeners.isEmpty()) {
+            throw new IllegalStateException("Can't change event source while listeners are registered");
+        }
+
+        this.eventSourceFactory = eventSourceFactory;
+    }
+
+    /**
+     * @return how long listener events are held back for conflation, or 0
+     */
+    public long getEventConflationWindowMs() {
+        return eventConflationWindowMs;
+    }
+
+    /**
+     * Only give listeners the latest event for each key that changes within
+     * eventConflationWindowMs. KVEvent.getMergedEventCount() says how many
+     * events were merged. Near caches are still invalidated for every event.
+     * Takes effect when the first listener for this cache in this JVM is
+     * registered.
+     *
+     * @param eventConflationWindowMs 0 to pass on every event
+     */
+    public void setEventConflationWindowMs(long eventConflationWindowMs) {
+
+        if (eventConflationWindowMs < 0) {
+            throw new IllegalArgumentException("eventConflationWindowMs must be >= 0");
+        }
+
+        this.eventConflationWindowMs = eventConflationWindowMs;
+    }
+
+    /**
+     * @return the codec we use to read kv_deltas records
+     */
+    public KVEventCodec getEventCodec() {
+        return eventCodec;
+    }
+
+    /**
+     * Set how we decode kv_deltas records. Use an AvroKVEventCodec if the
+     * kv_deltas topic has format="avro" in the deployment file. Takes effect
+     * next time a listener or near cache starts.
+     *
+     * @param eventCodec
+     */
+    public void setEventCodec(KVEventCodec eventCodec) {
+
+        if (eventCodec == null) {
+            throw new IllegalArgumentException("eventCodec can't be null");
+        }
+
+        this.eventCodec = eventCodec;
+    }
+
+    @Override
+    public void loadAll(Set<? extends String> arg0, boolean arg1, CompletionListener arg2) {
+
+        // NOOP - we don't actually cache anything...
+        arg2.onCompletion();
+
+    }
+
+    @Override
+    public void put(String arg0, byte[] arg1) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        checkNotNull(arg1);
+
+        callVoltDBProcReturnLastRow("Put", arg0, cacheName, arg1);
+        invalidateNearCache(arg0);
+
+    }
+
+    /**
+     * Non-API version of put that sets a TTL for this entry instead of using the
+     * cache's default. The next put, replace etc. goes back to the default.
+     *
+     * @param arg0 key
+     * @param arg1 value
+     * @param arg2 how many seconds the entry lives, or 0 for forever.
+     */
+    public void put(String arg0, byte[] arg1, long arg2) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        checkNotNull(arg1);
+
+        callVoltDBProcReturnLastRow("PutWithTTL", arg0, cacheName, arg1, arg2);
+        invalidateNearCache(arg0);
+
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends byte[]> arg0) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        // One PutBatch call per group of entries in the same partition...
+        List<VoltTable> batches = new ArrayList<>();
+
+        for (List<String> keyBatch : groupKeysByPartition(arg0.keySet())) {
+
+            VoltTable kvTable = null;
+            long kvTableBytes = 0;
+
+            for (String key : keyBatch) {
+
+                byte[] value = arg0.get(key);
+                checkNotNull(value);
+
+                if (kvTable == null || kvTableBytes + value.length > MAX_BYTES_PER_BATCH) {
+                    kvTable = new VoltTable(new VoltTable.ColumnInfo("k", VoltType.STRING),
+                            new VoltTable.ColumnInfo("v", VoltType.VARBINARY));
+                    kvTableBytes = 0;
+                    batches.add(kvTable);
+                }
+
+                kvTable.addRow(key, value);
+                kvTableBytes += value.length;
+            }
+        }
+
+        CountDownLatch latch = new CountDownLatch(batches.size());
+        BulkProcedureCallCallback bpcc = new BulkProcedureCallCallback(latch);
+
+        for (VoltTable kvTable : batches) {
+
+            // Any key in the batch will get us to the right partition...
+            kvTable.advanceRow();
+            String partitionKey = kvTable.getString("k");
+            kvTable.resetRowPosition();
+
+            try {
+                c.callProcedure(bpcc, "PutBatch", partitionKey, cacheName, kvTable);
+            } catch (IOException e) {
+                throw new CacheException("IOException:" + e.getMessage());
+            }
+
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new CacheException("Interrupted while waiting for response");
+        }
+
+        for (String key : arg0.keySet()) {
+            invalidateNearCache(key);
+        }
+
+        if (bpcc.getFailedBecause() != null) {
+            throw new CacheException(bpcc.getFailedBecause());
+        }
+
+    }
+
+    @Override
+    public boolean putIfAbsent(String arg0, byte[] arg1) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        checkNotNull(arg1);
+
+        Object existingKey = callVoltDBProcRwturnSecondLastRow("PutIfAbsent", arg0, cacheName, arg1);
+        invalidateNearCache(arg0);
+
+        if (existingKey == null) {
+            return true;
+        }
+
+        return false;
+
+    }
+
+    @Override
+    public synchronized void registerCacheEntryListener(CacheEntryListenerConfiguration<String, byte[]> arg0) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        if (listeners.containsKey(arg0)) {
+            throw new IllegalArgumentException("Listener configuration is already registered");
+        }
+
+        if (listeners.isEmpty()) {
+            setEvents(true);
+        }
+
+        if (arg0.isOldValueRequired()) {
+            setOldValues(true);
+        }
+
+        listeners.put(arg0, addEventFilter(getServerSideFilter(arg0)));
+
+        // All our listeners, and those of any other VoltDBCache for the same
+        // cache in this JVM, share one Kafka consumer...
+        CacheEventConsumer.register(this, arg0);
+
+    }
+
+    @Override
+    public boolean remove(String arg0) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        Long upsertedRowCount = (Long) callVoltDBProcReturnLastRow("Remove", arg0, cacheName);
+        invalidateNearCache(arg0);
+
+        if (upsertedRowCount != null && upsertedRowCount.longValue() > 0) {
+            return true;
+        }
+
+        return false;
+
+    }
+
+    @Override
+    public boolean remove(String arg0, byte[] arg1) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        Long upsertedRowCount = (Long) callVoltDBProcReturnLastRow("RemoveKeyValuePair", arg0, cacheName, arg1);
+        invalidateNearCache(arg0);
+
+        if (upsertedRowCount != null && upsertedRowCount.longValue() > 0) {
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void removeAll() {
+
+        callVoltDBProcReturnLastRow("RemoveAll", cacheName);
+        clearNearCache();
+
+    }
+
+    @Override
+    public void removeAll(Set<? extends String> arg0) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        CountDownLatch latch = new CountDownLatch(arg0.size());
+        BulkProcedureCallCallback bpcc = new BulkProcedureCallCallback(latch);
+
+        for (String key : arg0) {
+
+            try {
+                c.callProcedure(bpcc, "Remove", key, cacheName);
+            } catch (IOException e) {
+                throw new CacheException("IOException:" + e.getMessage());
+            }
+
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new CacheException("InterruptedException:" + e.getMessage());
+        }
+
+        for (String key : arg0) {
+            invalidateNearCache(key);
+        }
+
+    }
+
+    @Override
+    public boolean replace(String arg0, byte[] arg1) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        checkNotNull(arg1);
+
+        Object upsertedRowCount = callVoltDBProcReturnLastRow("Replace", arg0, cacheName, arg1);
+        invalidateNearCache(arg0);
+
+        if (upsertedRowCount != null) {
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean replace(String arg0, byte[] arg1, byte[] arg2) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        checkNotNull(arg1);
+
+        checkNotNull(arg2);
+
+        Object upsertedRowCount = callVoltDBProcReturnLastRow("ReplaceKeyValuePair", arg0, cacheName, arg1, arg2);
+        invalidateNearCache(arg0);
+
+        if (upsertedRowCount != null) {
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Get a value along with its current version. The version changes every time
+     * the value does.
+     *
+     * @param arg0 key
+     * @return the value and its version, or null if arg0 doesn't exist.
+     */
+    public VersionedValue getWithVersion(String arg0) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        VoltTable[] resultsTables = callVoltDBProcReturnTables("GetWithVersion", arg0, cacheName);
+
+        if (resultsTables != null && resultsTables.length > 0 && resultsTables[0].advanceRow()) {
+            return new VersionedValue(resultsTables[0].getVarbinary("v"), resultsTables[0].getLong("ver"));
+        }
+
+        return null;
+    }
+
+    /**
+     * Replace a value, but only if it's still the version we read using
+     * getWithVersion. Unlike replace(String, byte[], byte[]) we don't have to
+     * send the old value back to VoltDB.
+     *
+     * @param arg0 key
+     * @param arg1 the version we expect to replace
+     * @param arg2 new value
+     * @return true if we replaced the value
+     */
+    public boolean replace(String arg0, long arg1, byte[] arg2) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        checkNotNull(arg2);
+
+        Long upsertedRowCount = (Long) callVoltDBProcReturnLastRow("ReplaceIfVersion", arg0, cacheName, arg1, arg2);
+        invalidateNearCache(arg0);
+
+        if (upsertedRowCount != null && upsertedRowCount.longValue() > 0) {
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Remove a value, but only if it's still the version we read using
+     * getWithVersion.
+     *
+     * @param arg0 key
+     * @param arg1 the version we expect to remove
+     * @return true if we removed the value
+     */
+    public boolean remove(String arg0, long arg1) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        Long upsertedRowCount = (Long) callVoltDBProcReturnLastRow("RemoveIfVersion", arg0, cacheName, arg1);
+        invalidateNearCache(arg0);
+
+        if (upsertedRowCount != null && upsertedRowCount.longValue() > 0) {
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Non-API async version of get. Like all the *Async methods it doesn't
+     * block: the returned future completes when VoltDB answers, or
+     * exceptionally with a CacheException if we run out of retries. Completion
+     * happens on the VoltDB client's network thread, so use the *Async
+     * CompletableFuture methods if you have a lot of work to do afterwards.
+     *
+     * @param arg0 key
+     * @return future value, which will be null if arg0 doesn't exist
+     */
+    public CompletableFuture<byte[]> getAsync(String arg0) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        NearCache ourNearCache = nearCache;
+
+        if (ourNearCache == null) {
+            return callVoltDBProcAsync("Get", arg0, cacheName).thenApply(cr -> (byte[]) getValue(cr, 1));
+        }
+
+        byte[] value = ourNearCache.get(arg0);
+
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+
+        long invalidationCount = ourNearCache.getInvalidationCount();
+
+        return callVoltDBProcAsync("Get", arg0, cacheName).thenApply(cr -> {
+            byte[] newValue = (byte[]) getValue(cr, 1);
+            ourNearCache.putIfNotInvalidatedSince(arg0, newValue, invalidationCount);
+            return newValue;
+        });
+    }
+
+    /**
+     * Non-API async version of containsKey.
+     *
+     * @param arg0 key
+     * @return future true if arg0 exists
+     */
+    public CompletableFuture<Boolean> containsKeyAsync(String arg0) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        NearCache ourNearCache = nearCache;
+
+        if (ourNearCache != null && ourNearCache.get(arg0) != null) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        return callVoltDBProcAsync("ContainsKey", arg0, cacheName).thenApply(cr -> getValue(cr, 1) != null);
+    }
+
+    /**
+     * Non-API async version of put.
+     *
+     * @param arg0 key
+     * @param arg1 value
+     * @return future that completes once the value is stored
+     */
+    public CompletableFuture<Void> putAsync(String arg0, byte[] arg1) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        checkNotNull(arg1);
+
+        return callVoltDBProcAsync("Put", arg0, cacheName, arg1).thenAccept(cr -> invalidateNearCache(arg0));
+    }
+
+    /**
+     * Non-API async version of getAndPut.
+     *
+     * @param arg0 key
+     * @param arg1 value
+     * @return future old value, or null
+     */
+    public CompletableFuture<byte[]> getAndPutAsync(String arg0, byte[] arg1) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        checkNotNull(arg1);
+
+        return callVoltDBProcAsync("GetAndPut", arg0, cacheName, arg1).thenApply(cr -> {
+            invalidateNearCache(arg0);
+            return (byte[]) getValue(cr, 2);
+        });
+    }
+
+    /**
+     * Non-API async version of getAndRemove.
+     *
+     * @param arg0 key
+     * @return future old value, or null
+     */
+    public CompletableFuture<byte[]> getAndRemoveAsync(String arg0) {
 
         checkNotClosed();
 
         checkNotNull(arg0);
 
-        if (celc == null) {
-            celc = arg0;
-            setEvents(true);
-            startCacheEntryListenerThread();
-        } else {
-            throw new IllegalArgumentException();
-        }
+        return callVoltDBProcAsync("GetAndRemove", arg0, cacheName).thenApply(cr -> {
+            invalidateNearCache(arg0);
+            return (byte[]) getValue(cr, 2);
+        });
+    }
+
+    /**
+     * Non-API async version of getAndReplace.
+     *
+     * @param arg0 key
+     * @param arg1 value
+     * @return future old value, or null if nothing was replaced
+     */
+    public CompletableFuture<byte[]> getAndReplaceAsync(String arg0, byte[] arg1) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        checkNotNull(arg1);
 
+        return callVoltDBProcAsync("GetAndReplace", arg0, cacheName, arg1).thenApply(cr -> {
+            invalidateNearCache(arg0);
+            return (byte[]) getValue(cr, 2);
+        });
     }
 
-    @Override
-    public boolean remove(String arg0) {
+    /**
+     * Non-API async version of putIfAbsent.
+     *
+     * @param arg0 key
+     * @param arg1 value
+     * @return future true if we stored the value
+     */
+    public CompletableFuture<Boolean> putIfAbsentAsync(String arg0, byte[] arg1) {
 
         checkNotClosed();
 
         checkNotNull(arg0);
 
-        Long upsertedRowCount = (Long) callVoltDBProcReturnLastRow("Remove", arg0, cacheName);
+        checkNotNull(arg1);
 
-        if (upsertedRowCount != null && upsertedRowCount.longValue() > 0) {
-            return true;
-        }
+        return callVoltDBProcAsync("PutIfAbsent", arg0, cacheName, arg1).thenApply(cr -> {
+            invalidateNearCache(arg0);
+            return getValue(cr, 2) == null;
+        });
+    }
 
-        return false;
+    /**
+     * Non-API async version of remove.
+     *
+     * @param arg0 key
+     * @return future true if something was removed
+     */
+    public CompletableFuture<Boolean> removeAsync(String arg0) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
 
+        return callVoltDBProcAsync("Remove", arg0, cacheName).thenApply(cr -> {
+            invalidateNearCache(arg0);
+            return isPositive(getValue(cr, 1));
+        });
     }
 
-    @Override
-    public boolean remove(String arg0, byte[] arg1) {
+    /**
+     * Non-API async version of remove(key, oldValue).
+     *
+     * @param arg0 key
+     * @param arg1 value we expect to remove
+     * @return future true if something was removed
+     */
+    public CompletableFuture<Boolean> removeAsync(String arg0, byte[] arg1) {
 
         checkNotClosed();
 
         checkNotNull(arg0);
 
-        Long upsertedRowCount = (Long) callVoltDBProcReturnLastRow("RemoveKeyValuePair", arg0, cacheName, arg1);
+        checkNotNull(arg1);
 
-        if (upsertedRowCount != null && upsertedRowCount.longValue() > 0) {
-            return true;
-        }
+        return callVoltDBProcAsync("RemoveKeyValuePair", arg0, cacheName, arg1).thenApply(cr -> {
+            invalidateNearCache(arg0);
+            return isPositive(getValue(cr, 1));
+        });
+    }
 
-        return false;
+    /**
+     * Non-API async version of remove(key, version).
+     *
+     * @param arg0 key
+     * @param arg1 the version we expect to remove
+     * @return future true if something was removed
+     */
+    public CompletableFuture<Boolean> removeAsync(String arg0, long arg1) {
+
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        return callVoltDBProcAsync("RemoveIfVersion", arg0, cacheName, arg1).thenApply(cr -> {
+            invalidateNearCache(arg0);
+            return isPositive(getValue(cr, 1));
+        });
     }
 
-    @Override
-    public void removeAll() {
+    /**
+     * Non-API async version of replace.
+     *
+     * @param arg0 key
+     * @param arg1 value
+     * @return future true if we replaced the value
+     */
+    public CompletableFuture<Boolean> replaceAsync(String arg0, byte[] arg1) {
 
-        callVoltDBProcReturnLastRow("RemoveAll", cacheName);
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        checkNotNull(arg1);
 
+        return callVoltDBProcAsync("Replace", arg0, cacheName, arg1).thenApply(cr -> {
+            invalidateNearCache(arg0);
+            return getValue(cr, 1) != null;
+        });
     }
 
-    @Override
-    public void removeAll(Set<? extends String> arg0) {
+    /**
+     * Non-API async version of replace(key, oldValue, newValue).
+     *
+     * @param arg0 key
+     * @param arg1 value we expect to replace
+     * @param arg2 new value
+     * @return future true if we replaced the value
+     */
+    public CompletableFuture<Boolean> replaceAsync(String arg0, byte[] arg1, byte[] arg2) {
 
         checkNotClosed();
 
         checkNotNull(arg0);
 
-        CountDownLatch latch = new CountDownLatch(arg0.size());
-        BulkProcedureCallCallback bpcc = new BulkProcedureCallCallback(latch);
+        checkNotNull(arg1);
 
-        for (String key : arg0) {
+        checkNotNull(arg2);
 
-            try {
-                c.callProcedure(bpcc, "Remove", key, cacheName);
-            } catch (IOException e) {
-                throw new CacheException("IOException:" + e.getMessage());
-            }
+        return callVoltDBProcAsync("ReplaceKeyValuePair", arg0, cacheName, arg1, arg2).thenApply(cr -> {
+            invalidateNearCache(arg0);
+            return getValue(cr, 1) != null;
+        });
+    }
 
-        }
+    /**
+     * Non-API async version of replace(key, version, newValue).
+     *
+     * @param arg0 key
+     * @param arg1 the version we expect to replace
+     * @param arg2 new value
+     * @return future true if we replaced the value
+     */
+    public CompletableFuture<Boolean> replaceAsync(String arg0, long arg1, byte[] arg2) {
 
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            throw new CacheException("InterruptedException:" + e.getMessage());
-        }
+        checkNotClosed();
+
+        checkNotNull(arg0);
+
+        checkNotNull(arg2);
 
+        return callVoltDBProcAsync("ReplaceIfVersion", arg0, cacheName, arg1, arg2).thenApply(cr -> {
+            invalidateNearCache(arg0);
+            return isPositive(getValue(cr, 1));
+        });
     }
 
-    @Override
-    public boolean replace(String arg0, byte[] arg1) {
+    /**
+     * Non-API async version of getWithVersion.
+     *
+     * @param arg0 key
+     * @return future value and version, or null if arg0 doesn't exist
+     */
+    public CompletableFuture<VersionedValue> getWithVersionAsync(String arg0) {
 
         checkNotClosed();
 
         checkNotNull(arg0);
 
-        checkNotNull(arg1);
+        return callVoltDBProcAsync("GetWithVersion", arg0, cacheName).thenApply(cr -> {
 
-        Object upsertedRowCount = callVoltDBProcReturnLastRow("Replace", arg0, cacheName, arg1);
+            VoltTable[] resultsTables = cr.getResults();
 
-        if (upsertedRowCount != null) {
-            return true;
-        }
+            if (resultsTables != null && resultsTables.length > 0 && resultsTables[0].advanceRow()) {
+                return new VersionedValue(resultsTables[0].getVarbinary("v"), resultsTables[0].getLong("ver"));
+            }
 
-        return false;
+            return null;
+        });
     }
 
-    @Override
-    public boolean replace(String arg0, byte[] arg1, byte[] arg2) {
+    /**
+     * Non-API async version of invoke. As with invoke() the EntryProcessor must
+     * already have been loaded using loadEntryProcessors().
+     *
+     * @param arg0 key
+     * @param arg1 EntryProcessor
+     * @param arg2 parameters for the EntryProcessor
+     * @return future VoltDBEntryProcessorResult
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> invokeAsync(String arg0, EntryProcessor<String, byte[], T> arg1,
+            Object... arg2) {
 
         checkNotClosed();
 
@@ -570,13 +1688,12 @@ public class VoltDBCache implements Cache<String, byte[]> {
 
         checkNotNull(arg2);
 
-        Object upsertedRowCount = callVoltDBProcReturnLastRow("ReplaceKeyValuePair", arg0, cacheName, arg1, arg2);
-
-        if (upsertedRowCount != null) {
-            return true;
-        }
+        VoltTable params = VoltParameterWrangler.convertToVoltTable(arg2);
 
-        return false;
+        return callVoltDBProcAsync("Invoke", arg0, cacheName, arg1.getClass().getName(), params).thenApply(cr -> {
+            invalidateNearCache(arg0);
+            return (T) new VoltDBEntryProcessorResult(cr);
+        });
     }
 
     @Override
@@ -584,7 +1701,64 @@ public class VoltDBCache implements Cache<String, byte[]> {
         throw new IllegalArgumentException("Unwrapping to class is not supported: " + arg0);
     }
 
-    private void startCacheEntryListenerThread() {
+    /**
+     * Split keys into batches that each live in a single VoltDB partition, so
+     * each batch can be handled by one single partition transaction. No batch
+     * is bigger than MAX_KEYS_PER_BATCH.
+     *
+     * @param keys
+     * @return a List of batches of keys.
+     */
+    private List<List<String>> groupKeysByPartition(Collection<? extends String> keys) {
+
+        HashMap<Long, List<String>> keysByPartition = new HashMap<>();
+        List<List<String>> batches = new ArrayList<>();
+        long unknownPartitionId = -1;
+
+        for (String key : keys) {
+
+            long partitionId = c.getPartitionForParameter(VoltType.STRING.getValue(), key);
+
+            if (partitionId < 0) {
+                // We don't know the topology yet, so give this key a batch of its
+                // own...
+                partitionId = unknownPartitionId--;
+            }
+
+            List<String> batch = keysByPartition.get(partitionId);
+
+            if (batch == null || batch.size() >= MAX_KEYS_PER_BATCH) {
+                batch = new ArrayList<>();
+                keysByPartition.put(partitionId, batch);
+                batches.add(batch);
+            }
+
+            batch.add(key);
+        }
+
+        return batches;
+    }
+
+    /**
+     * Forget anything our near cache knows about key. Called after we change it
+     * ourselves, so we don't have to wait for the event to come back from
+     * kv_deltas.
+     *
+     * @param key
+     */
+    private void invalidateNearCache(String key) {
+
+        NearCache ourNearCache = nearCache;
+
+        if (ourNearCache != null) {
+            ourNearCache.invalidate(key);
+        }
+    }
+
+    /**
+     * @return hostname1:kafkaPort,hostname2:kafkaPort etc
+     */
+    private String getKafkaHostnames() {
 
         String[] hostnameArray = hostnames.split(",");
         StringBuffer hosts = new StringBuffer();
@@ -598,117 +1772,189 @@ public class VoltDBCache implements Cache<String, byte[]> {
             hosts.append(kafkaPort);
         }
 
-        eventConsumer = new CacheEventConsumer(getName(), hosts.toString(), celc, this);
-        eventConsumerRunner = new Thread(eventConsumer);
-        eventConsumerRunner.start();
-
+        return hosts.toString();
     }
 
-    private void stopCacheEntryListenerThread() {
+    /**
+     * @param listenerConfig
+     * @return the listener's filter if it's one VoltDB can evaluate, otherwise a
+     *         filter that matches everything.
+     */
+    private static KeyPrefixEventFilter getServerSideFilter(
+            CacheEntryListenerConfiguration<String, byte[]> listenerConfig) {
+
+        Factory<CacheEntryEventFilter<? super String, ? super byte[]>> filterFactory = listenerConfig
+                .getCacheEntryEventFilterFactory();
 
-        if (eventConsumer != null) {
-            eventConsumer.stop();
-            eventConsumerRunner = null;
-            eventConsumer = null;
+        if (filterFactory != null) {
 
+            CacheEntryEventFilter<? super String, ? super byte[]> filter = filterFactory.create();
+
+            if (filter instanceof KeyPrefixEventFilter) {
+                return (KeyPrefixEventFilter) filter;
+            }
         }
 
+        return new KeyPrefixEventFilter("");
     }
 
-    private Object callVoltDBProcReturnLastRow(String procedureName, Object... params) {
-        return callVoltDBProcWithAllParams(procedureName, false, 1, params);
+    /**
+     * Tell VoltDB that we want events that match filter. Once a cache has any
+     * filters, procedures only export events that match at least one of them.
+     *
+     * @param filter
+     * @return an id to pass to removeEventFilter
+     */
+    String addEventFilter(KeyPrefixEventFilter filter) {
+
+        String filterId = UUID.randomUUID().toString();
+
+        callVoltDBProcReturnLastRow("AddEventFilter", cacheName, filterId, filter.getKeyPrefix(),
+                filter.getEventTypeCodes());
+        refreshServerConfig();
+
+        return filterId;
     }
 
-    private Object callVoltDBProcRwturnSecondLastRow(String procedureName, Object... params) {
-        return callVoltDBProcWithAllParams(procedureName, false, 2, params);
+    /**
+     * @param filterId an id from addEventFilter
+     */
+    void removeEventFilter(String filterId) {
+
+        callVoltDBProcReturnLastRow("RemoveEventFilter", cacheName, filterId);
+        refreshServerConfig();
     }
 
-    @SuppressWarnings("unchecked")
-    private Object callVoltDBProcWithAllParams(String procedureName, boolean wantKVData, int offsetFromLast,
-            Object... params) {
+    /**
+     * Non-API method that throws away every server side event filter for this
+     * cache, including ones left behind by clients that died without
+     * deregistering their listeners. Until they register again, everything is
+     * exported.
+     */
+    public void clearEventFilters() {
 
-        Object answer = null;
-        String errorStatus = null;
+        callVoltDBProcReturnLastRow("ClearEventFilters", cacheName);
+        refreshServerConfig();
+    }
 
-        for (int i = 0; i < retryAttempts; i++) {
+    /**
+     * Stop sending events to a listener and remove its server side filter.
+     *
+     * @param listenerConfig
+     */
+    private void detachListener(CacheEntryListenerConfiguration<String, byte[]> listenerConfig) {
 
-            // See if we can issue our call
+        CacheEventConsumer.deregister(this, listenerConfig);
 
-            ClientResponse cr;
-            try {
-                cr = c.callProcedure(procedureName, params);
+        String filterId = listeners.remove(listenerConfig);
 
-                if (cr.getStatus() == ClientResponse.SUCCESS) {
-                    VoltTable[] resultsTables = cr.getResults();
-                    if (resultsTables.length > 0
-                            && resultsTables[resultsTables.length - offsetFromLast].getRowCount() > 0) {
+        if (filterId != null) {
+            removeEventFilter(filterId);
+        }
+    }
 
-                        if (wantKVData) {
+    private Object callVoltDBProcReturnLastRow(String procedureName, Object... params) {
+        return callVoltDBProcWithAllParams(procedureName, 1, params);
+    }
 
-                            answer = new HashSet<Entry<String, byte[]>>(
-                                    resultsTables[resultsTables.length - offsetFromLast].getRowCount());
+    private Object callVoltDBProcRwturnSecondLastRow(String procedureName, Object... params) {
+        return callVoltDBProcWithAllParams(procedureName, 2, params);
+    }
 
-                            while (resultsTables[resultsTables.length - offsetFromLast].advanceRow()) {
+    private Object callVoltDBProcWithAllParams(String procedureName, int offsetFromLast, Object... params) {
 
-                                String k = resultsTables[resultsTables.length - offsetFromLast].getString("k");
-                                byte[] v = resultsTables[resultsTables.length - offsetFromLast].getVarbinary("v");
+        return getValue(callVoltDBProcReturnTables(procedureName, params), offsetFromLast);
+    }
 
-                                KVEntry newEntry = new KVEntry(k, v);
+    private static Object getValue(ClientResponse cr, int offsetFromLast) {
+        return getValue(cr.getResults(), offsetFromLast);
+    }
 
-                                ((HashSet<Entry<String, byte[]>>) answer).add(newEntry);
-                            }
+    /**
+     * @param resultsTables
+     * @param offsetFromLast 1 for the last table, 2 for the one before etc.
+     * @return the first column of the first row of the table we asked for, or
+     *         null if it's empty.
+     */
+    private static Object getValue(VoltTable[] resultsTables, int offsetFromLast) {
 
-                        } else {
-                            resultsTables[resultsTables.length - offsetFromLast].advanceRow();
-                            final VoltType colType = resultsTables[resultsTables.length - offsetFromLast]
-                                    .getColumnType(0);
-                            answer = resultsTables[resultsTables.length - offsetFromLast].get(0, colType);
-                        }
-                    }
+        Object answer = null;
 
-                    errorStatus = null;
-                    break;
+        if (resultsTables != null && resultsTables.length >= offsetFromLast
+                && resultsTables[resultsTables.length - offsetFromLast].getRowCount() > 0) {
 
-                } else {
-                    errorStatus = cr.getStatusString();
-                }
+            resultsTables[resultsTables.length - offsetFromLast].advanceRow();
+            final VoltType colType = resultsTables[resultsTables.length - offsetFromLast].getColumnType(0);
+            answer = resultsTables[resultsTables.length - offsetFromLast].get(0, colType);
+        }
 
-            } catch (IOException e) {
+        return answer;
+    }
 
-                errorStatus = e.getClass().getName() + ":" + e.getMessage();
-                msg(errorStatus);
+    private static boolean isPositive(Object rowCount) {
+        return rowCount != null && ((Long) rowCount).longValue() > 0;
+    }
 
-            } catch (ProcCallException e) {
+    /**
+     * Call a procedure without waiting for it, retrying as retryPolicy says.
+     * Retries are scheduled on retryScheduler instead of sleeping.
+     *
+     * @param procedureName
+     * @param params
+     * @return a future that completes with the ClientResponse, or exceptionally
+     *         with a CacheException.
+     */
+    CompletableFuture<ClientResponse> callVoltDBProcAsync(String procedureName, Object... params) {
 
-                errorStatus = e.getClass().getName() + ":" + e.getMessage();
-                msg(errorStatus);
+        CompletableFuture<ClientResponse> future = new CompletableFuture<>();
+        new AsyncProcedureCallback(this, future, procedureName, params).call();
+        return future;
+    }
 
-                if (e.getMessage().indexOf(NETWORK_BUFFER_OVERFLOW) > -1) {
-                    // This is non-recoverable...don't retry...
-                    throw new CacheException(TOO_MUCH_DATA_REQUESTED);
-                }
-            }
+    /**
+     * Call a procedure, retrying if needed. We wait for the async version, so
+     * retries don't involve this thread sleeping.
+     *
+     * @param procedureName
+     * @param params
+     * @return the VoltTables the procedure returned.
+     */
+    VoltTable[] callVoltDBProcReturnTables(String procedureName, Object... params) {
 
-            long delayMs = getDelay(i);
+        try {
 
-            try {
-                Thread.sleep(delayMs);
-            } catch (InterruptedException e) {
-            }
+            return callVoltDBProcAsync(procedureName, params).get().getResults();
 
-        }
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new CacheException("InterruptedException:" + e.getMessage());
 
-        if (errorStatus != null) {
-            throw new CacheException(errorStatus);
+        } catch (ExecutionException e) {
 
+            if (e.getCause() instanceof CacheException) {
+                throw (CacheException) e.getCause();
+            }
+
+            throw new CacheException(e.getCause());
         }
 
-        return answer;
     }
 
-    private long getDelay(int i) {
+    /**
+     * @return the RetryPolicy we use when calls to VoltDB fail
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @param retryPolicy the RetryPolicy to use when calls to VoltDB fail
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
 
-        return 1000 * ((long) Math.pow((i + 1), retryPower));
+        checkNotNull(retryPolicy);
+        this.retryPolicy = retryPolicy;
     }
 
     private Client getClient() throws Exception {
@@ -740,7 +1986,7 @@ public class VoltDBCache implements Cache<String, byte[]> {
      * @return
      * @throws Exception
      */
-    private static Client connectVoltDB(String commaDelimitedHostnames) throws Exception {
+    static Client connectVoltDB(String commaDelimitedHostnames) throws Exception {
         Client client = null;
         ClientConfig config = null;
 
@@ -825,11 +2071,87 @@ public class VoltDBCache implements Cache<String, byte[]> {
     public void setEvents(boolean events) {
         this.events = events;
         if (events) {
-            callVoltDBProcReturnLastRow("kv_parameters.UPSERT", cacheName, "ENABLE_EVENTS", 1);
+            setParam(ENABLE_EVENTS, 1);
         } else {
-            callVoltDBProcReturnLastRow("kv_parameters.UPSERT", cacheName, "ENABLE_EVENTS", 0);
+            setParam(ENABLE_EVENTS, 0);
+        }
+
+    }
+
+    /**
+     * Non-API method to make events carry the value from before the change, so
+     * that listeners can use getOldValue(). This makes most events twice as big
+     * and means put and replace have to read the old value, so it's off by
+     * default.
+     * <p>
+     * REMOVED and EXPIRED events report the value that went away as both the
+     * value and the old value. CREATED events never have an old value.
+     *
+     * @param oldValues
+     */
+    public void setOldValues(boolean oldValues) {
+        setParam(OLD_VALUES, oldValues ? 1 : 0);
+    }
+
+    /**
+     * @return how long entries in this cache live after they were last changed,
+     *         or 0 if they live forever.
+     */
+    public long getDefaultTtlSeconds() {
+
+        Object ttlSeconds = callVoltDBProcReturnLastRow("GetParam", cacheName, TTL_SECONDS);
+
+        if (ttlSeconds == null) {
+            return 0;
+        }
+
+        return (Long) ttlSeconds;
+    }
+
+    /**
+     * Set how long entries in this cache live after they were last changed.
+     * Entries that already exist keep their current expiry time until they are
+     * next changed.
+     * <p>
+     * Expired entries are deleted in the background by the ExpireEntries task,
+     * which reports them as EXPIRED events.
+     *
+     * @param ttlSeconds how long entries live, or 0 for forever.
+     */
+    public void setDefaultTtlSeconds(long ttlSeconds) {
+
+        if (ttlSeconds < 0) {
+            throw new IllegalArgumentException("ttlSeconds must be >= 0");
         }
 
+        setParam(TTL_SECONDS, ttlSeconds);
+    }
+
+    /**
+     * Change one of this cache's parameters in kv_parameters, and make every
+     * partition pick up the change.
+     *
+     * @param paramName
+     * @param paramValue
+     */
+    void setParam(String paramName, long paramValue) {
+
+        callVoltDBProcReturnLastRow("SetParam", cacheName, paramName, paramValue);
+        refreshServerConfig();
+    }
+
+    /**
+     * Non-API method that makes every partition re-read this cache's parameters
+     * from kv_parameters and kv_event_filters. Procedures keep their own copy
+     * so that they don't have to read them on every call. setEvents etc. do
+     * this for you. You only need to call this if you change those tables some
+     * other way, such as using sqlcmd.
+     */
+    public void refreshServerConfig() {
+
+        for (String partitionKey : getPartitionKeys()) {
+            callVoltDBProcReturnLastRow("RefreshCacheConfig", partitionKey, cacheName);
+        }
     }
 
 }
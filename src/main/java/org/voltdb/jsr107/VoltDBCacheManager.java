@@ -0,0 +1,301 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.CacheManager;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.configuration.CompleteConfiguration;
+import javax.cache.configuration.Configuration;
+import javax.cache.spi.CachingProvider;
+
+import org.voltdb.client.Client;
+
+/**
+ * CacheManager that owns one topology aware Client and shares it between all
+ * of its caches. Because a VoltDBCache is just a name in the kv table every
+ * cache 'exists' as far as VoltDB is concerned, so getCache will hand you a
+ * cache for any name.
+ *
+ */
+public class VoltDBCacheManager implements CacheManager {
+
+    VoltDBCachingProvider cachingProvider;
+    URI uri;
+    ClassLoader classLoader;
+    Properties properties;
+
+    String hostnames;
+    int retryAttempts;
+    String entryProcessorPackageName;
+    int kafkaPort;
+
+    String eventFormat;
+
+    /**
+     * Shared by all our caches.
+     */
+    Client c = null;
+
+    ConcurrentHashMap<String, VoltDBCache> caches = new ConcurrentHashMap<>();
+
+    volatile boolean closed = false;
+
+    public VoltDBCacheManager(VoltDBCachingProvider cachingProvider, URI uri, ClassLoader classLoader,
+            Properties properties) {
+        super();
+        this.cachingProvider = cachingProvider;
+        this.uri = uri;
+        this.classLoader = classLoader;
+        this.properties = properties;
+
+        hostnames = properties.getProperty(VoltDBCachingProvider.HOSTNAMES);
+
+        if (hostnames == null) {
+            hostnames = uri.getAuthority() == null ? "localhost" : uri.getAuthority();
+        }
+
+        retryAttempts = Integer.parseInt(properties.getProperty(VoltDBCachingProvider.RETRY_ATTEMPTS,
+                Integer.toString(VoltDBCachingProvider.DEFAULT_RETRY_ATTEMPTS)));
+        entryProcessorPackageName = properties.getProperty(VoltDBCachingProvider.ENTRY_PROCESSOR_PACKAGE_NAME);
+        kafkaPort = Integer.parseInt(properties.getProperty(VoltDBCachingProvider.KAFKA_PORT,
+                Integer.toString(VoltDBCachingProvider.DEFAULT_KAFKA_PORT)));
+        eventFormat = properties.getProperty(VoltDBCachingProvider.EVENT_FORMAT,
+                VoltDBCachingProvider.EVENT_FORMAT_CSV);
+
+        if (!eventFormat.equals(VoltDBCachingProvider.EVENT_FORMAT_CSV)
+                && !eventFormat.equals(VoltDBCachingProvider.EVENT_FORMAT_AVRO)) {
+            throw new CacheException("Unknown " + VoltDBCachingProvider.EVENT_FORMAT + " '" + eventFormat + "'");
+        }
+
+        try {
+            c = VoltDBCache.connectVoltDB(hostnames);
+        } catch (Exception e) {
+            throw new CacheException(e.getMessage(), e);
+        }
+
+    }
+
+    @Override
+    public CachingProvider getCachingProvider() {
+        return cachingProvider;
+    }
+
+    @Override
+    public URI getURI() {
+        return uri;
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    @Override
+    public Properties getProperties() {
+        return properties;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K, V, C extends Configuration<K, V>> Cache<K, V> createCache(String cacheName, C configuration)
+            throws IllegalArgumentException {
+
+        checkNotClosed();
+
+        if (cacheName == null || configuration == null) {
+            throw new NullPointerException();
+        }
+
+        checkTypes(configuration.getKeyType(), configuration.getValueType());
+
+        VoltDBCache newCache = newCache(cacheName);
+
+        if (caches.putIfAbsent(cacheName, newCache) != null) {
+            throw new CacheException("Cache " + cacheName + " already exists");
+        }
+
+        if (configuration instanceof CompleteConfiguration) {
+            for (CacheEntryListenerConfiguration<K, V> celc : ((CompleteConfiguration<K, V>) configuration)
+                    .getCacheEntryListenerConfigurations()) {
+                newCache.registerCacheEntryListener((CacheEntryListenerConfiguration<String, byte[]>) celc);
+            }
+        }
+
+        return (Cache<K, V>) newCache;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K, V> Cache<K, V> getCache(String cacheName, Class<K> keyType, Class<V> valueType) {
+
+        if (keyType == null || valueType == null) {
+            throw new NullPointerException();
+        }
+
+        checkTypes(keyType, valueType);
+
+        return (Cache<K, V>) getCache(cacheName);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K, V> Cache<K, V> getCache(String cacheName) {
+
+        checkNotClosed();
+
+        if (cacheName == null) {
+            throw new NullPointerException();
+        }
+
+        return (Cache<K, V>) caches.computeIfAbsent(cacheName, this::newCache);
+    }
+
+    @Override
+    public Iterable<String> getCacheNames() {
+        return Collections.unmodifiableSet(new HashSet<>(caches.keySet()));
+    }
+
+    @Override
+    public void destroyCache(String cacheName) {
+
+        checkNotClosed();
+
+        if (cacheName == null) {
+            throw new NullPointerException();
+        }
+
+        VoltDBCache oldCache = caches.get(cacheName);
+
+        if (oldCache == null) {
+            // It still 'exists' in VoltDB...
+            oldCache = newCache(cacheName);
+        }
+
+        oldCache.removeAll();
+        oldCache.close();
+    }
+
+    @Override
+    public void enableManagement(String cacheName, boolean enabled) {
+        // NOOP - we don't do management yet...
+    }
+
+    @Override
+    public void enableStatistics(String cacheName, boolean enabled) {
+        // NOOP - we don't do statistics yet...
+    }
+
+    @Override
+    public void close() {
+
+        synchronized (this) {
+
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            for (VoltDBCache cache : caches.values()) {
+                cache.close();
+            }
+
+            caches.clear();
+
+            if (c != null) {
+                try {
+                    c.drain();
+                    c.close();
+                } catch (Exception e) {
+                }
+                c = null;
+            }
+        }
+
+        // Not while we hold our own lock, as the provider may be closing us
+        // while holding its lock...
+        cachingProvider.forget(this);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+
+        if (clazz.isAssignableFrom(getClass())) {
+            return clazz.cast(this);
+        }
+
+        throw new IllegalArgumentException("Unwrapping to class is not supported: " + clazz);
+    }
+
+    /**
+     * Called by a VoltDBCache when it closes.
+     *
+     * @param cache
+     */
+    void forget(VoltDBCache cache) {
+        caches.remove(cache.getName(), cache);
+    }
+
+    private VoltDBCache newCache(String cacheName) {
+
+        VoltDBCache newCache = new VoltDBCache(this, c, hostnames, retryAttempts, cacheName,
+                entryProcessorPackageName, kafkaPort);
+
+        if (eventFormat.equals(VoltDBCachingProvider.EVENT_FORMAT_AVRO)) {
+            newCache.setEventCodec(new AvroKVEventCodec());
+        }
+
+        return newCache;
+    }
+
+    private void checkTypes(Class<?> keyType, Class<?> valueType) {
+
+        if (!keyType.isAssignableFrom(String.class) || !valueType.isAssignableFrom(byte[].class)) {
+            throw new IllegalArgumentException(
+                    "VoltDBCache is a Cache<String, byte[]>, not a Cache<" + keyType + ", " + valueType + ">");
+        }
+    }
+
+    private void checkNotClosed() {
+
+        if (closed) {
+            throw new IllegalStateException("CacheManager is closed");
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.WeakHashMap;
+
+import javax.cache.CacheManager;
+import javax.cache.configuration.OptionalFeature;
+import javax.cache.spi.CachingProvider;
+
+/**
+ * JSR107 CachingProvider for VoltDB. Each CacheManager it hands out owns a
+ * single Client that all of its caches share.
+ * <p>
+ * The URI says which cluster to use, e.g. 'voltdb://host1,host2'. The
+ * following Properties are also understood:
+ * <ul>
+ * <li>hostnames - overrides the hosts in the URI</li>
+ * <li>retryAttempts - defaults to 10</li>
+ * <li>entryProcessorPackageName - needed if you want to use invoke</li>
+ * <li>kafkaPort - defaults to 9092</li>
+ * <li>eventFormat - format of the kv_deltas topic, 'csv' (the default) or
+ * 'avro'</li>
+ * </ul>
+ *
+ */
+public class VoltDBCachingProvider implements CachingProvider {
+
+    public static final String DEFAULT_URI_STRING = "voltdb://localhost";
+
+    public static final String HOSTNAMES = "hostnames";
+    public static final String RETRY_ATTEMPTS = "retryAttempts";
+    public static final String ENTRY_PROCESSOR_PACKAGE_NAME = "entryProcessorPackageName";
+    public static final String KAFKA_PORT = "kafkaPort";
+    public static final String EVENT_FORMAT = "eventFormat";
+
+    public static final String EVENT_FORMAT_CSV = "csv";
+    public static final String EVENT_FORMAT_AVRO = "avro";
+
+    public static final int DEFAULT_RETRY_ATTEMPTS = 10;
+    public static final int DEFAULT_KAFKA_PORT = 9092;
+
+    /**
+     * CacheManagers we've handed out, by ClassLoader and then URI.
+     */
+    WeakHashMap<ClassLoader, HashMap<URI, VoltDBCacheManager>> cacheManagers = new WeakHashMap<>();
+
+    @Override
+    public synchronized CacheManager getCacheManager(URI uri, ClassLoader classLoader, Properties properties) {
+
+        URI managerURI = uri == null ? getDefaultURI() : uri;
+        ClassLoader managerClassLoader = classLoader == null ? getDefaultClassLoader() : classLoader;
+        Properties managerProperties = properties == null ? getDefaultProperties() : properties;
+
+        HashMap<URI, VoltDBCacheManager> managersForClassLoader = cacheManagers.get(managerClassLoader);
+
+        if (managersForClassLoader == null) {
+            managersForClassLoader = new HashMap<>();
+            cacheManagers.put(managerClassLoader, managersForClassLoader);
+        }
+
+        VoltDBCacheManager cacheManager = managersForClassLoader.get(managerURI);
+
+        if (cacheManager == null || cacheManager.isClosed()) {
+            cacheManager = new VoltDBCacheManager(this, managerURI, managerClassLoader, managerProperties);
+            managersForClassLoader.put(managerURI, cacheManager);
+        }
+
+        return cacheManager;
+    }
+
+    @Override
+    public ClassLoader getDefaultClassLoader() {
+        return getClass().getClassLoader();
+    }
+
+    @Override
+    public URI getDefaultURI() {
+        return URI.create(DEFAULT_URI_STRING);
+    }
+
+    @Override
+    public Properties getDefaultProperties() {
+        return new Properties();
+    }
+
+    @Override
+    public CacheManager getCacheManager(URI uri, ClassLoader classLoader) {
+        return getCacheManager(uri, classLoader, getDefaultProperties());
+    }
+
+    @Override
+    public CacheManager getCacheManager() {
+        return getCacheManager(getDefaultURI(), getDefaultClassLoader(), getDefaultProperties());
+    }
+
+    @Override
+    public void close() {
+
+        ArrayList<VoltDBCacheManager> managers = new ArrayList<>();
+
+        synchronized (this) {
+
+            for (HashMap<URI, VoltDBCacheManager> managersForClassLoader : cacheManagers.values()) {
+                managers.addAll(managersForClassLoader.values());
+            }
+
+            cacheManagers.clear();
+        }
+
+        closeAll(managers);
+    }
+
+    @Override
+    public void close(ClassLoader classLoader) {
+
+        HashMap<URI, VoltDBCacheManager> managersForClassLoader;
+
+        synchronized (this) {
+            managersForClassLoader = cacheManagers.remove(classLoader == null ? getDefaultClassLoader() : classLoader);
+        }
+
+        if (managersForClassLoader != null) {
+            closeAll(managersForClassLoader.values());
+        }
+    }
+
+    @Override
+    public void close(URI uri, ClassLoader classLoader) {
+
+        VoltDBCacheManager cacheManager = null;
+
+        synchronized (this) {
+
+            HashMap<URI, VoltDBCacheManager> managersForClassLoader = cacheManagers
+                    .get(classLoader == null ? getDefaultClassLoader() : classLoader);
+
+            if (managersForClassLoader != null) {
+                cacheManager = managersForClassLoader.remove(uri == null ? getDefaultURI() : uri);
+            }
+        }
+
+        if (cacheManager != null) {
+            cacheManager.close();
+        }
+    }
+
+    @Override
+    public boolean isSupported(OptionalFeature optionalFeature) {
+        // We don't do transactions or store by reference...
+        return false;
+    }
+
+    /**
+     * Called by a VoltDBCacheManager when it closes.
+     *
+     * @param cacheManager
+     */
+    synchronized void forget(VoltDBCacheManager cacheManager) {
+
+        HashMap<URI, VoltDBCacheManager> managersForClassLoader = cacheManagers.get(cacheManager.getClassLoader());
+
+        if (managersForClassLoader != null && managersForClassLoader.get(cacheManager.getURI()) == cacheManager) {
+            managersForClassLoader.remove(cacheManager.getURI());
+        }
+    }
+
+    /**
+     * Close managers we've already stopped tracking. We must not hold our own
+     * lock while we do this, as VoltDBCacheManager.close() calls forget().
+     *
+     * @param managers
+     */
+    private void closeAll(Collection<VoltDBCacheManager> managers) {
+
+        for (VoltDBCacheManager cacheManager : managers) {
+            cacheManager.close();
+        }
+    }
+
+}
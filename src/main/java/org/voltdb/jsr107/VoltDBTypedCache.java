@@ -0,0 +1,698 @@
+package org.voltdb.jsr107;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.CacheManager;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.configuration.CompleteConfiguration;
+import javax.cache.configuration.Configuration;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.integration.CompletionListener;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.EntryProcessorException;
+import javax.cache.processor.EntryProcessorResult;
+import javax.cache.processor.MutableEntry;
+
+/**
+ * A Cache&lt;K, V&gt; on top of a VoltDBCache, so callers don't have to turn
+ * their keys into Strings and their values into byte[] themselves.
+ * <p>
+ * Keys are mapped to and from the Strings VoltDB stores by a pair of functions,
+ * and values by a CacheSerializer. Each thread gets its own
+ * SerializationBuffer, which we reuse for every value it writes.
+ * <p>
+ * Listeners are registered with the VoltDBCache through a
+ * TypedListenerConfiguration, and get TypedCacheEntryEvents with typed keys
+ * and values.
+ * <p>
+ * invoke and invokeAll run the EntryProcessor here, not in VoltDB, against the
+ * decoded value. We read the value with its version, run the processor, and
+ * then write any change back only if the version hasn't changed, starting
+ * again if it has. This means a processor may be called more than once for
+ * the same key, so it shouldn't do anything except change the entry. invokeAll
+ * does this for all its keys at once, using the async API, and runs the
+ * processor on the common ForkJoinPool rather than VoltDB's callback thread.
+ * To run an EntryProcessor inside VoltDB against the stored byte[], use
+ * unwrap(VoltDBCache.class).invoke.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class VoltDBTypedCache<K, V> implements Cache<K, V> {
+
+    /**
+     * Buffers that grow bigger than this aren't kept, so one huge value
+     * doesn't pin a huge buffer to a thread.
+     */
+    public static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * How many times invoke tries to apply an EntryProcessor to a key that
+     * keeps being changed by someone else before giving up.
+     */
+    public static final int MAX_INVOKE_ATTEMPTS = 100;
+
+    VoltDBCache cache;
+
+    Class<K> keyType;
+
+    Function<K, String> keyToString;
+
+    Function<String, K> stringToKey;
+
+    CacheSerializer<V> valueSerializer;
+
+    ThreadLocal<SerializationBuffer> buffers = ThreadLocal.withInitial(SerializationBuffer::new);
+
+    /**
+     * @param cache           the cache to store things in
+     * @param keyType
+     * @param keyToString     turns a key into what VoltDB stores
+     * @param stringToKey     and back again
+     * @param valueSerializer
+     */
+    public VoltDBTypedCache(VoltDBCache cache, Class<K> keyType, Function<K, String> keyToString,
+            Function<String, K> stringToKey, CacheSerializer<V> valueSerializer) {
+        super();
+        this.cache = cache;
+        this.keyType = keyType;
+        this.keyToString = keyToString;
+        this.stringToKey = stringToKey;
+        this.valueSerializer = valueSerializer;
+    }
+
+    /**
+     * @param cache
+     * @param valueSerializer
+     * @return a typed cache with String keys
+     */
+    public static <V> VoltDBTypedCache<String, V> withStringKeys(VoltDBCache cache,
+            CacheSerializer<V> valueSerializer) {
+        return new VoltDBTypedCache<>(cache, String.class, Function.identity(), Function.identity(),
+                valueSerializer);
+    }
+
+    /**
+     * @param cache
+     * @param valueSerializer
+     * @return a typed cache with Long keys, stored as their decimal Strings
+     */
+    public static <V> VoltDBTypedCache<Long, V> withLongKeys(VoltDBCache cache, CacheSerializer<V> valueSerializer) {
+        return new VoltDBTypedCache<>(cache, Long.class, k -> Long.toString(k), Long::valueOf, valueSerializer);
+    }
+
+    /**
+     * @param key
+     * @return what VoltDB calls key
+     */
+    String toKey(K key) {
+
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        return keyToString.apply(key);
+    }
+
+    /**
+     * @param value
+     * @return value the way VoltDB stores it
+     */
+    byte[] toBytes(V value) {
+
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        SerializationBuffer buffer = buffers.get();
+        byte[] bytes = valueSerializer.toBytes(value, buffer);
+
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.remove();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @param bytes
+     * @return the value bytes stands for, or null if bytes is null
+     */
+    V fromBytes(byte[] bytes) {
+
+        if (bytes == null) {
+            return null;
+        }
+
+        return valueSerializer.deserialize(bytes);
+    }
+
+    /**
+     * @param event an event from our VoltDBCache
+     * @return the same event with our key and value types
+     */
+    TypedCacheEntryEvent<K, V> toTypedEvent(CacheEntryEvent<? extends String, ? extends byte[]> event) {
+
+        V oldValue = null;
+
+        if (event.isOldValueAvailable()) {
+            oldValue = fromBytes(event.getOldValue());
+        }
+
+        return new TypedCacheEntryEvent<>(this, event.getEventType(), stringToKey.apply(event.getKey()),
+                fromBytes(event.getValue()), oldValue, event.isOldValueAvailable());
+    }
+
+    @Override
+    public V get(K arg0) {
+        return fromBytes(cache.get(toKey(arg0)));
+    }
+
+    @Override
+    public Map<K, V> getAll(Set<? extends K> arg0) {
+
+        // Remember which key each String came from, so we don't have to turn
+        // them back...
+        HashMap<String, K> keys = new HashMap<>(arg0.size());
+
+        for (K key : arg0) {
+            keys.put(toKey(key), key);
+        }
+
+        Map<String, byte[]> rawValues = cache.getAll(keys.keySet());
+        HashMap<K, V> values = new HashMap<>(rawValues.size());
+
+        for (Map.Entry<String, byte[]> rawValue : rawValues.entrySet()) {
+            values.put(keys.get(rawValue.getKey()), fromBytes(rawValue.getValue()));
+        }
+
+        return values;
+    }
+
+    @Override
+    public boolean containsKey(K arg0) {
+        return cache.containsKey(toKey(arg0));
+    }
+
+    @Override
+    public void loadAll(Set<? extends K> arg0, boolean arg1, CompletionListener arg2) {
+        cache.loadAll(toKeys(arg0), arg1, arg2);
+    }
+
+    @Override
+    public void put(K arg0, V arg1) {
+        cache.put(toKey(arg0), toBytes(arg1));
+    }
+
+    @Override
+    public V getAndPut(K arg0, V arg1) {
+        return fromBytes(cache.getAndPut(toKey(arg0), toBytes(arg1)));
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> arg0) {
+
+        HashMap<String, byte[]> rawValues = new HashMap<>(arg0.size());
+
+        for (Map.Entry<? extends K, ? extends V> entry : arg0.entrySet()) {
+            rawValues.put(toKey(entry.getKey()), toBytes(entry.getValue()));
+        }
+
+        cache.putAll(rawValues);
+    }
+
+    @Override
+    public boolean putIfAbsent(K arg0, V arg1) {
+        return cache.putIfAbsent(toKey(arg0), toBytes(arg1));
+    }
+
+    @Override
+    public boolean remove(K arg0) {
+        return cache.remove(toKey(arg0));
+    }
+
+    @Override
+    public boolean remove(K arg0, V arg1) {
+        return cache.remove(toKey(arg0), toBytes(arg1));
+    }
+
+    @Override
+    public V getAndRemove(K arg0) {
+        return fromBytes(cache.getAndRemove(toKey(arg0)));
+    }
+
+    @Override
+    public boolean replace(K arg0, V arg1, V arg2) {
+        return cache.replace(toKey(arg0), toBytes(arg1), toBytes(arg2));
+    }
+
+    @Override
+    public boolean replace(K arg0, V arg1) {
+        return cache.replace(toKey(arg0), toBytes(arg1));
+    }
+
+    @Override
+    public V getAndReplace(K arg0, V arg1) {
+        return fromBytes(cache.getAndReplace(toKey(arg0), toBytes(arg1)));
+    }
+
+    @Override
+    public void removeAll(Set<? extends K> arg0) {
+        cache.removeAll(toKeys(arg0));
+    }
+
+    @Override
+    public void removeAll() {
+        cache.removeAll();
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public <C extends Configuration<K, V>> C getConfiguration(Class<C> arg0) {
+
+        MutableConfiguration<K, V> config = new MutableConfiguration<K, V>()
+                .setTypes(keyType, valueSerializer.getType()).setStoreByValue(true).setStatisticsEnabled(false)
+                .setManagementEnabled(false);
+
+        @SuppressWarnings("unchecked")
+        CompleteConfiguration<String, byte[]> rawConfig = cache.getConfiguration(CompleteConfiguration.class);
+
+        // Our listeners are the ones registered with our VoltDBCache by us...
+        for (CacheEntryListenerConfiguration<String, byte[]> listenerConfig : rawConfig
+                .getCacheEntryListenerConfigurations()) {
+
+            if (listenerConfig instanceof TypedListenerConfiguration
+                    && ((TypedListenerConfiguration<?, ?>) listenerConfig).getTypedCache() == this) {
+
+                @SuppressWarnings("unchecked")
+                TypedListenerConfiguration<K, V> typedListenerConfig = (TypedListenerConfiguration<K, V>) listenerConfig;
+                config.addCacheEntryListenerConfiguration(typedListenerConfig.getTypedConfig());
+            }
+        }
+
+        if (arg0.isInstance(config)) {
+            return arg0.cast(config);
+        }
+
+        throw new IllegalArgumentException("Configuration class " + arg0 + " is not supported");
+    }
+
+    @Override
+    public <T> T invoke(K arg0, EntryProcessor<K, V, T> arg1, Object... arg2) throws EntryProcessorException {
+
+        final String key = toKey(arg0);
+
+        if (arg1 == null) {
+            throw new NullPointerException();
+        }
+
+        for (int attempt = 0; attempt < MAX_INVOKE_ATTEMPTS; attempt++) {
+
+            VersionedValue current = cache.getWithVersion(key);
+            TypedMutableEntry<K, V> entry = new TypedMutableEntry<>(arg0,
+                    current == null ? null : fromBytes(current.getValue()));
+
+            T result;
+
+            try {
+                result = arg1.process(entry, arg2);
+            } catch (EntryProcessorException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new EntryProcessorException(e);
+            }
+
+            if (writeBack(key, current, entry)) {
+                return result;
+            }
+
+            // Someone else changed it - try again with what they did...
+        }
+
+        throw new EntryProcessorException(
+                "Gave up after " + MAX_INVOKE_ATTEMPTS + " attempts as " + key + " kept changing");
+    }
+
+    /**
+     * Store whatever an EntryProcessor did to entry, but only if nobody has
+     * changed the key since we read it.
+     *
+     * @param key
+     * @param current what we read, or null if there wasn't anything
+     * @param entry
+     * @return false if the key changed and we have to start again
+     */
+    boolean writeBack(String key, VersionedValue current, TypedMutableEntry<K, V> entry) {
+
+        if (!entry.changed) {
+            return true;
+        }
+
+        if (entry.value == null) {
+            return current == null || cache.remove(key, current.getVersion());
+        }
+
+        if (current == null) {
+            return cache.putIfAbsent(key, toBytes(entry.value));
+        }
+
+        return cache.replace(key, current.getVersion(), toBytes(entry.value));
+    }
+
+    /**
+     * Async version of invoke, so invokeAll doesn't have to wait for one key
+     * before starting on the next.
+     *
+     * @param key
+     * @param processor
+     * @param args
+     * @param attempt   how many times we've already tried
+     * @return a future that completes with the processor's result
+     */
+    <T> CompletableFuture<T> invokeAsync(K key, EntryProcessor<K, V, T> processor, Object[] args, int attempt) {
+
+        if (attempt >= MAX_INVOKE_ATTEMPTS) {
+            CompletableFuture<T> gaveUp = new CompletableFuture<>();
+            gaveUp.completeExceptionally(new EntryProcessorException(
+                    "Gave up after " + MAX_INVOKE_ATTEMPTS + " attempts as " + key + " kept changing"));
+            return gaveUp;
+        }
+
+        final String stringKey = toKey(key);
+
+        // The processor may well use the cache itself, which would deadlock if
+        // it ran on VoltDB's callback thread...
+        return cache.getWithVersionAsync(stringKey).thenComposeAsync(current -> {
+
+            TypedMutableEntry<K, V> entry = new TypedMutableEntry<>(key,
+                    current == null ? null : fromBytes(current.getValue()));
+
+            T result;
+
+            try {
+                result = processor.process(entry, args);
+            } catch (EntryProcessorException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new EntryProcessorException(e);
+            }
+
+            return writeBackAsync(stringKey, current, entry).thenCompose(written -> written
+                    ? CompletableFuture.completedFuture(result)
+                    : invokeAsync(key, processor, args, attempt + 1));
+        });
+    }
+
+    /**
+     * Async version of writeBack.
+     *
+     * @param key
+     * @param current what we read, or null if there wasn't anything
+     * @param entry
+     * @return a future that completes with false if the key changed and we have
+     *         to start again
+     */
+    CompletableFuture<Boolean> writeBackAsync(String key, VersionedValue current, TypedMutableEntry<K, V> entry) {
+
+        if (!entry.changed || (entry.value == null && current == null)) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        if (entry.value == null) {
+            return cache.removeAsync(key, current.getVersion());
+        }
+
+        if (current == null) {
+            return cache.putIfAbsentAsync(key, toBytes(entry.value));
+        }
+
+        return cache.replaceAsync(key, current.getVersion(), toBytes(entry.value));
+    }
+
+    @Override
+    public <T> Map<K, EntryProcessorResult<T>> invokeAll(Set<? extends K> arg0, EntryProcessor<K, V, T> arg1,
+            Object... arg2) {
+
+        if (arg1 == null) {
+            throw new NullPointerException();
+        }
+
+        HashMap<K, CompletableFuture<T>> futures = new HashMap<>();
+
+        for (K key : arg0) {
+            futures.put(key, invokeAsync(key, arg1, arg2, 0));
+        }
+
+        HashMap<K, EntryProcessorResult<T>> results = new HashMap<>();
+
+        for (Map.Entry<K, CompletableFuture<T>> future : futures.entrySet()) {
+
+            try {
+
+                final T result = future.getValue().join();
+
+                if (result != null) {
+                    results.put(future.getKey(), () -> result);
+                }
+
+            } catch (CompletionException e) {
+
+                if (e.getCause() instanceof EntryProcessorException) {
+
+                    final EntryProcessorException processorException = (EntryProcessorException) e.getCause();
+                    results.put(future.getKey(), () -> {
+                        throw processorException;
+                    });
+
+                } else if (e.getCause() instanceof CacheException) {
+                    throw (CacheException) e.getCause();
+                } else {
+                    throw new CacheException(e.getCause());
+                }
+            }
+        }
+
+        return results;
+    }
+
+    @Override
+    public String getName() {
+        return cache.getName();
+    }
+
+    @Override
+    public CacheManager getCacheManager() {
+        return cache.getCacheManager();
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return cache.isClosed();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> arg0) {
+
+        if (arg0.isInstance(cache)) {
+            return arg0.cast(cache);
+        }
+
+        if (arg0.isInstance(this)) {
+            return arg0.cast(this);
+        }
+
+        throw new IllegalArgumentException("Unwrapping to class is not supported: " + arg0);
+    }
+
+    @Override
+    public void registerCacheEntryListener(CacheEntryListenerConfiguration<K, V> arg0) {
+
+        if (arg0 == null) {
+            throw new NullPointerException();
+        }
+
+        cache.registerCacheEntryListener(new TypedListenerConfiguration<>(this, arg0));
+    }
+
+    @Override
+    public void deregisterCacheEntryListener(CacheEntryListenerConfiguration<K, V> arg0) {
+
+        if (arg0 == null) {
+            throw new NullPointerException();
+        }
+
+        cache.deregisterCacheEntryListener(new TypedListenerConfiguration<>(this, arg0));
+    }
+
+    @Override
+    public Iterator<Entry<K, V>> iterator() {
+
+        final Iterator<Entry<String, byte[]>> rawIterator = cache.iterator();
+
+        return new Iterator<Entry<K, V>>() {
+
+            @Override
+            public boolean hasNext() {
+                return rawIterator.hasNext();
+            }
+
+            @Override
+            public Entry<K, V> next() {
+
+                Entry<String, byte[]> rawEntry = rawIterator.next();
+                return new TypedEntry<>(stringToKey.apply(rawEntry.getKey()), fromBytes(rawEntry.getValue()));
+            }
+
+            @Override
+            public void remove() {
+                rawIterator.remove();
+            }
+        };
+    }
+
+    /**
+     * @param keys
+     * @return what VoltDB calls keys
+     */
+    Set<String> toKeys(Set<? extends K> keys) {
+
+        HashSet<String> rawKeys = new HashSet<>(keys.size());
+
+        for (K key : keys) {
+            rawKeys.add(toKey(key));
+        }
+
+        return rawKeys;
+    }
+
+    /**
+     * A typed key and value from the iterator.
+     */
+    static class TypedEntry<K, V> implements Entry<K, V> {
+
+        K key;
+        V value;
+
+        TypedEntry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> arg0) {
+            throw new IllegalArgumentException("Unwrapping to class is not supported: " + arg0);
+        }
+    }
+
+    /**
+     * What an EntryProcessor sees when invoke calls it.
+     */
+    static class TypedMutableEntry<K, V> implements MutableEntry<K, V> {
+
+        K key;
+        V value;
+        boolean changed = false;
+
+        TypedMutableEntry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean exists() {
+            return value != null;
+        }
+
+        @Override
+        public void remove() {
+            value = null;
+            changed = true;
+        }
+
+        @Override
+        public void setValue(V arg0) {
+
+            if (arg0 == null) {
+                throw new NullPointerException();
+            }
+
+            value = arg0;
+            changed = true;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> arg0) {
+            throw new IllegalArgumentException("Unwrapping to class is not supported: " + arg0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VoltDBTypedCache [cache=" + cache.getName() + ", valueSerializer=" + valueSerializer + "]";
+    }
+
+}
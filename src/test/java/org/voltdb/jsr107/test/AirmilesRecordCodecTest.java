@@ -0,0 +1,130 @@
+package org.voltdb.jsr107.test;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2022 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.voltdb.types.TimestampType;
+
+import jsr107.sandbox.AirmilesRecord;
+import jsr107.sandbox.AirmilesRecordCodec;
+
+class AirmilesRecordCodecTest {
+
+    @Test
+    void testRoundTrip() {
+
+        try {
+
+            AirmilesRecord ar = new AirmilesRecord("Gold", 42, 100, new byte[] { 1, 2, 3 });
+            ar.loyaltySchemeTier = 2;
+            ar.addFlight("DUB", "JFK", new TimestampType(1000000), 50);
+            ar.addFlight(null, "LHR", null, 60);
+
+            byte[] binary = AirmilesRecordCodec.encode(ar);
+
+            if (!AirmilesRecordCodec.isBinary(binary)) {
+                fail("isBinary");
+            }
+
+            AirmilesRecord ar2 = AirmilesRecordCodec.decode(binary);
+
+            if (!Arrays.equals(binary, AirmilesRecordCodec.encode(ar2))) {
+                fail("expected " + ar + ", got " + ar2);
+            }
+
+            if (!ar2.toString().contains("fromAirport=null")) {
+                fail("null airport not kept: " + ar2);
+            }
+
+            AirmilesRecord nulls = new AirmilesRecord(null, 1, 0, null);
+            AirmilesRecord nulls2 = AirmilesRecordCodec.decode(AirmilesRecordCodec.encode(nulls));
+
+            if (nulls2.loyaltySchemeName != null || nulls2.randomLob != null) {
+                fail("nulls not kept: " + nulls2);
+            }
+
+            byte[] json = "{\"loyaltySchemeNumber\":42}".getBytes(StandardCharsets.UTF_8);
+
+            if (AirmilesRecordCodec.isBinary(json)) {
+                fail("JSON isBinary");
+            }
+
+            try {
+                AirmilesRecordCodec.decode(json);
+                fail("decoded JSON");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    @Test
+    void testAddFlight() {
+
+        try {
+
+            byte[] lob = new byte[1000];
+            Arrays.fill(lob, (byte) 7);
+
+            AirmilesRecord ar = new AirmilesRecord("Silver", 42, 0, lob);
+            byte[] binary = AirmilesRecordCodec.encode(ar);
+
+            // Go past the 10 flight limit a couple of times, so we check
+            // the tier going up and the old flights being thrown away...
+            for (int i = 0; i < 30; i++) {
+
+                String fromAirport = i % 7 == 3 ? null : "A" + i;
+                TimestampType when = i % 5 == 4 ? null : new TimestampType(i * 1000000L);
+
+                ar.addFlight(fromAirport, "B" + i, when, i);
+                binary = AirmilesRecordCodec.addFlight(binary, fromAirport, "B" + i, when, i);
+
+                byte[] expected = AirmilesRecordCodec.encode(ar);
+
+                if (!Arrays.equals(expected, binary)) {
+                    fail("flight " + i + ": expected " + ar + ", got " + AirmilesRecordCodec.decode(binary));
+                }
+            }
+
+            if (ar.loyaltySchemeTier != 2) {
+                fail("expected tier 2, got " + ar.loyaltySchemeTier);
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+}
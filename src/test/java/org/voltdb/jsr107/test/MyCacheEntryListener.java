@@ -24,6 +24,7 @@ package org.voltdb.jsr107.test;
  */
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.cache.event.CacheEntryCreatedListener;
 import javax.cache.event.CacheEntryEvent;
@@ -35,17 +36,23 @@ public class MyCacheEntryListener<K, V> implements CacheEntryCreatedListener<K,
         CacheEntryRemovedListener<K, V>, Serializable {
     private static final long serialVersionUID = 1L;
 
-    int created = 0;
-    int updated = 0;
-    int deleted = 0;
+    // Counters are atomic as we may be called from several listener threads...
+
+    AtomicInteger created = new AtomicInteger();
+    AtomicInteger updated = new AtomicInteger();
+    AtomicInteger deleted = new AtomicInteger();
+    AtomicInteger withOldValue = new AtomicInteger();
+    AtomicInteger calls = new AtomicInteger();
 
     @SuppressWarnings("unused")
     @Override
     public void onCreated(Iterable<CacheEntryEvent<? extends K, ? extends V>> events)
             throws CacheEntryListenerException {
 
+        calls.incrementAndGet();
+
         for (CacheEntryEvent<? extends K, ? extends V> event : events) {
-            created++;
+            created.incrementAndGet();
         }
     }
 
@@ -54,8 +61,11 @@ public class MyCacheEntryListener<K, V> implements CacheEntryCreatedListener<K,
     public void onRemoved(Iterable<CacheEntryEvent<? extends K, ? extends V>> events)
             throws CacheEntryListenerException {
 
+        calls.incrementAndGet();
+
         for (CacheEntryEvent<? extends K, ? extends V> event : events) {
-            deleted++;
+            deleted.incrementAndGet();
+            countOldValue(event);
         }
 
     }
@@ -65,37 +75,63 @@ public class MyCacheEntryListener<K, V> implements CacheEntryCreatedListener<K,
     public void onUpdated(Iterable<CacheEntryEvent<? extends K, ? extends V>> events)
             throws CacheEntryListenerException {
 
+        calls.incrementAndGet();
+
         for (CacheEntryEvent<? extends K, ? extends V> event : events) {
-            updated++;
+            updated.incrementAndGet();
+            countOldValue(event);
         }
 
     }
 
+    private void countOldValue(CacheEntryEvent<? extends K, ? extends V> event) {
+
+        if (event.isOldValueAvailable() && event.getOldValue() != null) {
+            withOldValue.incrementAndGet();
+        }
+    }
+
     /**
      * @return the created
      */
     public int getCreated() {
-        return created;
+        return created.get();
     }
 
     /**
      * @return the updated
      */
     public int getUpdated() {
-        return updated;
+        return updated.get();
     }
 
     /**
      * @return the deleted
      */
     public int getDeleted() {
-        return deleted;
+        return deleted.get();
+    }
+
+    /**
+     * @return how many updates and removes came with an old value
+     */
+    public int getWithOldValue() {
+        return withOldValue.get();
+    }
+
+    /**
+     * @return how many times we've been called
+     */
+    public int getCalls() {
+        return calls.get();
     }
 
     public void resetCounters() {
-        created = 0;
-        updated = 0;
-        deleted = 0;
+        created.set(0);
+        updated.set(0);
+        deleted.set(0);
+        withOldValue.set(0);
+        calls.set(0);
     }
 
     @Override
@@ -107,6 +143,10 @@ public class MyCacheEntryListener<K, V> implements CacheEntryCreatedListener<K,
         builder.append(updated);
         builder.append(", deleted=");
         builder.append(deleted);
+        builder.append(", withOldValue=");
+        builder.append(withOldValue);
+        builder.append(", calls=");
+        builder.append(calls);
         builder.append("]");
         return builder.toString();
     }
@@ -24,8 +24,14 @@ package org.voltdb.jsr107.test;
  */
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.cache.configuration.Factory;
+import javax.cache.configuration.FactoryBuilder;
 import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.EventType;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -33,8 +39,12 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
+import org.voltdb.jsr107.CacheEventStats;
+import org.voltdb.jsr107.KeyPrefixEventFilter;
 import org.voltdb.jsr107.VoltDBCache;
 
+import jsr107.test.DeleteIfFoundEntryProcessor;
+
 class VoltDBCacheCDCTest {
 
     private static final String FRED_TEST_CDC = "FREDtestCDC";
@@ -159,4 +169,350 @@ class VoltDBCacheCDCTest {
 
     }
 
+    @Test
+    @Order(2)
+    void testOldValues() {
+
+        Factory<MyCacheEntryListener<String, byte[]>> theListenerFactory = new MyCacheEntryListenerFactory();
+        Factory<MyCacheEntryEventFilter<String, byte[]>> theEventFactory = new MyCacheEntryFilterFactory(FRED_TEST_CDC);
+
+        MutableCacheEntryListenerConfiguration<String, byte[]> cacheEntryListenerConfig = new MutableCacheEntryListenerConfiguration<>(
+                theListenerFactory, theEventFactory, true, true);
+
+        // isOldValueRequired is true, so this turns old values on...
+        c.registerCacheEntryListener(cacheEntryListenerConfig);
+
+        MyCacheEntryListener<String, byte[]> cacheEntryListener = ((MyCacheEntryListenerFactory) theListenerFactory)
+                .getListener();
+
+        try {
+            // Give the consumer time to be assigned its partitions...
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            fail(e);
+        }
+
+        cacheEntryListener.resetCounters();
+
+        final int insertCount = 100;
+
+        for (int i = 0; i < insertCount; i++) {
+            c.put(FRED_TEST_CDC + i, "FRED".getBytes());
+            c.replace(FRED_TEST_CDC + i, "FREDUPDATE".getBytes());
+            c.remove(FRED_TEST_CDC + i);
+        }
+
+        // putAll and EntryProcessors should report old values the same way...
+        Map<String, byte[]> batch = new HashMap<>();
+
+        for (int i = 0; i < insertCount; i++) {
+            c.put(FRED_TEST_CDC + i, "FRED".getBytes());
+            batch.put(FRED_TEST_CDC + i, "FREDBATCH".getBytes());
+        }
+
+        c.putAll(batch);
+
+        for (int i = 0; i < insertCount; i++) {
+            c.invoke(FRED_TEST_CDC + i, new DeleteIfFoundEntryProcessor(), "FREDBATCH");
+        }
+
+        long timeoutMS = System.currentTimeMillis() + 60000;
+
+        while (System.currentTimeMillis() < timeoutMS && cacheEntryListener.getDeleted() < insertCount * 2) {
+
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+        }
+
+        c.setOldValues(false);
+        c.setEvents(false);
+
+        System.out.println(cacheEntryListener);
+
+        // Every update and remove should have told us what was there before...
+        if (cacheEntryListener.getCreated() != insertCount * 2 || cacheEntryListener.getUpdated() != insertCount * 2
+                || cacheEntryListener.getDeleted() != insertCount * 2
+                || cacheEntryListener.getWithOldValue() != insertCount * 4) {
+            fail("missing old values");
+        }
+
+    }
+
+    @Test
+    @Order(3)
+    void testServerSideFilter() {
+
+        MyCacheEntryListenerFactory theListenerFactory = new MyCacheEntryListenerFactory();
+
+        // VoltDB only exports creates and removes for keys starting with our
+        // prefix...
+        MutableCacheEntryListenerConfiguration<String, byte[]> cacheEntryListenerConfig = new MutableCacheEntryListenerConfiguration<>(
+                theListenerFactory,
+                FactoryBuilder.factoryOf(
+                        new KeyPrefixEventFilter(FRED_TEST_CDC, EnumSet.of(EventType.CREATED, EventType.REMOVED))),
+                false, true);
+
+        c.registerCacheEntryListener(cacheEntryListenerConfig);
+
+        MyCacheEntryListener<String, byte[]> cacheEntryListener = theListenerFactory.getListener();
+
+        try {
+            // Give the consumer time to be assigned its partitions...
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            fail(e);
+        }
+
+        cacheEntryListener.resetCounters();
+
+        final int insertCount = 100;
+
+        for (int i = 0; i < insertCount; i++) {
+            c.put("NOT" + FRED_TEST_CDC + i, "FRED".getBytes());
+            c.put(FRED_TEST_CDC + i, "FRED".getBytes());
+            c.put(FRED_TEST_CDC + i, "FREDUPDATE".getBytes());
+            c.remove(FRED_TEST_CDC + i);
+        }
+
+        // putAll and EntryProcessors should report old values the same way...
+        Map<String, byte[]> batch = new HashMap<>();
+
+        for (int i = 0; i < insertCount; i++) {
+            c.put(FRED_TEST_CDC + i, "FRED".getBytes());
+            batch.put(FRED_TEST_CDC + i, "FREDBATCH".getBytes());
+        }
+
+        c.putAll(batch);
+
+        for (int i = 0; i < insertCount; i++) {
+            c.invoke(FRED_TEST_CDC + i, new DeleteIfFoundEntryProcessor(), "FREDBATCH");
+        }
+
+        long timeoutMS = System.currentTimeMillis() + 60000;
+
+        while (System.currentTimeMillis() < timeoutMS && cacheEntryListener.getDeleted() < insertCount * 2) {
+
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+        }
+
+        c.deregisterCacheEntryListener(cacheEntryListenerConfig);
+
+        System.out.println(cacheEntryListener);
+
+        if (cacheEntryListener.getCreated() != insertCount || cacheEntryListener.getUpdated() != 0
+                || cacheEntryListener.getDeleted() != insertCount) {
+            fail("filter didn't work");
+        }
+
+    }
+
+    @Test
+    @Order(4)
+    void testParallelListeners() {
+
+        MyCacheEntryListenerFactory theListenerFactory = new MyCacheEntryListenerFactory();
+
+        MutableCacheEntryListenerConfiguration<String, byte[]> cacheEntryListenerConfig = new MutableCacheEntryListenerConfiguration<>(
+                theListenerFactory, new MyCacheEntryFilterFactory(FRED_TEST_CDC), false, true);
+
+        // Small queues, so we also find out if backpressure works...
+        c.setListenerThreads(4);
+        c.setListenerQueueSize(10);
+        c.registerCacheEntryListener(cacheEntryListenerConfig);
+
+        MyCacheEntryListener<String, byte[]> cacheEntryListener = theListenerFactory.getListener();
+
+        try {
+            // Give the consumer time to be assigned its partitions...
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            fail(e);
+        }
+
+        cacheEntryListener.resetCounters();
+
+        final int insertCount = 1000;
+
+        for (int i = 0; i < insertCount; i++) {
+            c.put(FRED_TEST_CDC + i, "FRED".getBytes());
+            c.put(FRED_TEST_CDC + i, "FREDUPDATE".getBytes());
+            c.remove(FRED_TEST_CDC + i);
+        }
+
+        // putAll and EntryProcessors should report old values the same way...
+        Map<String, byte[]> batch = new HashMap<>();
+
+        for (int i = 0; i < insertCount; i++) {
+            c.put(FRED_TEST_CDC + i, "FRED".getBytes());
+            batch.put(FRED_TEST_CDC + i, "FREDBATCH".getBytes());
+        }
+
+        c.putAll(batch);
+
+        for (int i = 0; i < insertCount; i++) {
+            c.invoke(FRED_TEST_CDC + i, new DeleteIfFoundEntryProcessor(), "FREDBATCH");
+        }
+
+        long timeoutMS = System.currentTimeMillis() + 60000;
+
+        while (System.currentTimeMillis() < timeoutMS && cacheEntryListener.getDeleted() < insertCount * 2) {
+
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+        }
+
+        c.deregisterCacheEntryListener(cacheEntryListenerConfig);
+
+        System.out.println(cacheEntryListener);
+
+        if (cacheEntryListener.getCreated() != insertCount || cacheEntryListener.getUpdated() != insertCount
+                || cacheEntryListener.getDeleted() != insertCount) {
+            fail("lost events");
+        }
+
+    }
+
+    @Test
+    @Order(5)
+    void testBatchedListener() {
+
+        MyCacheEntryListenerFactory theListenerFactory = new MyCacheEntryListenerFactory();
+
+        MutableCacheEntryListenerConfiguration<String, byte[]> cacheEntryListenerConfig = new MutableCacheEntryListenerConfiguration<>(
+                theListenerFactory, new MyCacheEntryFilterFactory(FRED_TEST_CDC), false, true);
+
+        c.setListenerBatching(100, 500);
+        c.registerCacheEntryListener(cacheEntryListenerConfig);
+
+        MyCacheEntryListener<String, byte[]> cacheEntryListener = theListenerFactory.getListener();
+
+        try {
+            // Give the consumer time to be assigned its partitions...
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            fail(e);
+        }
+
+        cacheEntryListener.resetCounters();
+
+        final int insertCount = 1000;
+
+        for (int i = 0; i < insertCount; i++) {
+            c.put(FRED_TEST_CDC + i, "FRED".getBytes());
+        }
+
+        long timeoutMS = System.currentTimeMillis() + 60000;
+
+        while (System.currentTimeMillis() < timeoutMS && cacheEntryListener.getCreated() < insertCount) {
+
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+        }
+
+        c.deregisterCacheEntryListener(cacheEntryListenerConfig);
+
+        System.out.println(cacheEntryListener);
+
+        if (cacheEntryListener.getCreated() != insertCount) {
+            fail("lost events");
+        }
+
+        // At least 10 calls, but nowhere near one per event...
+        if (cacheEntryListener.getCalls() < insertCount / 100 || cacheEntryListener.getCalls() > insertCount / 2) {
+            fail("events weren't batched: " + cacheEntryListener.getCalls() + " calls");
+        }
+
+    }
+
+    @Test
+    @Order(6)
+    void testMultipleListeners() {
+
+        MyCacheEntryListenerFactory firstListenerFactory = new MyCacheEntryListenerFactory();
+        MyCacheEntryListenerFactory secondListenerFactory = new MyCacheEntryListenerFactory();
+        MyCacheEntryListenerFactory otherCacheListenerFactory = new MyCacheEntryListenerFactory();
+
+        MutableCacheEntryListenerConfiguration<String, byte[]> firstConfig = new MutableCacheEntryListenerConfiguration<>(
+                firstListenerFactory, new MyCacheEntryFilterFactory(FRED_TEST_CDC), false, true);
+        MutableCacheEntryListenerConfiguration<String, byte[]> secondConfig = new MutableCacheEntryListenerConfiguration<>(
+                secondListenerFactory, new MyCacheEntryFilterFactory(FRED_TEST_CDC + "1"), false, true);
+        MutableCacheEntryListenerConfiguration<String, byte[]> otherCacheConfig = new MutableCacheEntryListenerConfiguration<>(
+                otherCacheListenerFactory, new MyCacheEntryFilterFactory(FRED_TEST_CDC), false, true);
+
+        VoltDBCache c2 = new VoltDBCache("localhost", 10, c.getName(), "", 9092);
+
+        c.registerCacheEntryListener(firstConfig);
+        c.registerCacheEntryListener(secondConfig);
+        c2.registerCacheEntryListener(otherCacheConfig);
+
+        try {
+            c.registerCacheEntryListener(firstConfig);
+            fail("registered the same configuration twice");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        try {
+            // Give the consumer time to be assigned its partitions...
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            fail(e);
+        }
+
+        firstListenerFactory.getListener().resetCounters();
+        secondListenerFactory.getListener().resetCounters();
+        otherCacheListenerFactory.getListener().resetCounters();
+
+        final int insertCount = 100;
+
+        for (int i = 0; i < insertCount; i++) {
+            c.put(FRED_TEST_CDC + i, "FRED".getBytes());
+        }
+
+        long timeoutMS = System.currentTimeMillis() + 60000;
+
+        while (System.currentTimeMillis() < timeoutMS
+                && (firstListenerFactory.getListener().getCreated() < insertCount
+                        || otherCacheListenerFactory.getListener().getCreated() < insertCount)) {
+
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+        }
+
+        // Every event should have had event_ts...
+        CacheEventStats stats = c.getListenerEventStats();
+
+        if (stats == null || stats.getEventCount() < insertCount || stats.getEventsWithoutTimeCount() != 0) {
+            fail("listener stats missing events: " + stats);
+        }
+
+        c.deregisterCacheEntryListener(firstConfig);
+        c.deregisterCacheEntryListener(secondConfig);
+        c2.close();
+
+        // Keys 1 and 10 to 19 start with FRED_TEST_CDC + "1"...
+        if (firstListenerFactory.getListener().getCreated() != insertCount
+                || secondListenerFactory.getListener().getCreated() != 11
+                || otherCacheListenerFactory.getListener().getCreated() != insertCount) {
+            fail("listeners didn't all get their events");
+        }
+
+    }
+
 }
@@ -24,26 +24,70 @@ package org.voltdb.jsr107.test;
  */
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import javax.cache.Cache;
 import javax.cache.Cache.Entry;
 import javax.cache.CacheException;
 import javax.cache.CacheManager;
-
+import javax.cache.Caching;
+import javax.cache.configuration.CompleteConfiguration;
+import javax.cache.configuration.Configuration;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.EventType;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.EntryProcessorResult;
+import javax.management.MBeanServer;
+
+import org.apache.kafka.common.TopicPartition;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.jsr107.AsyncProcedureCallback;
+import org.voltdb.jsr107.AvroKVEventCodec;
+import org.voltdb.jsr107.CacheEventConsumer;
+import org.voltdb.jsr107.CacheEventSource;
+import org.voltdb.jsr107.CacheEventStats;
+import org.voltdb.jsr107.CsvKVEventCodec;
+import org.voltdb.jsr107.EventConflater;
+import org.voltdb.jsr107.EventDispatcher;
+import org.voltdb.jsr107.KafkaCacheEventSource;
+import org.voltdb.jsr107.KVEvent;
+import org.voltdb.jsr107.LongSerializer;
+import org.voltdb.jsr107.OffsetCheckpoint;
+import org.voltdb.jsr107.PojoSerializer;
+import org.voltdb.jsr107.RetryPolicy;
+import org.voltdb.jsr107.RingBufferEventBus;
+import org.voltdb.jsr107.SerializationBuffer;
+import org.voltdb.jsr107.StringSerializer;
+import org.voltdb.jsr107.VersionedValue;
 import org.voltdb.jsr107.VoltDBCache;
+import org.voltdb.jsr107.VoltDBCachingProvider;
 import org.voltdb.jsr107.VoltDBEntryProcessorResult;
+import org.voltdb.jsr107.VoltDBTypedCache;
 
 import jsr107.AbstractEventTrackingProcedure;
 import jsr107.test.AppenderEntryProcessor;
@@ -94,7 +138,11 @@ class VoltDBCacheTest {
     @AfterEach
     void tearDown() throws Exception {
 
-        c.clear();
+        // Some tests close c themselves...
+        if (!c.isClosed()) {
+            c.clear();
+        }
+
         c.close();
         c2.clear();
         c2.close();
@@ -353,6 +401,62 @@ class VoltDBCacheTest {
 
     }
 
+    @Test
+    void testReplaceVersion() {
+        try {
+
+            if (c.getWithVersion(FOO) != null) {
+                fail("Not null not expected");
+            }
+
+            createFooEntry();
+
+            VersionedValue fooVersion = c.getWithVersion(FOO);
+
+            if (fooVersion == null || !Arrays.equals(fooVersion.getValue(), FOO_BYTES)) {
+                fail("getWithVersion didn't");
+            }
+
+            if (c2.getWithVersion(FOO) != null) {
+                fail(FOO + " in wrong cache");
+            }
+
+            if (c.replace(FOO, fooVersion.getVersion() + 1, BAR_BYTES)) {
+                fail("Replace should not work here");
+            }
+
+            if (!c.replace(FOO, fooVersion.getVersion(), BAR_BYTES)) {
+                fail("Replace should work here");
+            }
+
+            if (c.replace(FOO, fooVersion.getVersion(), OTHER_BYTES)) {
+                fail("Replace should not work twice with the same version");
+            }
+
+            VersionedValue barVersion = c.getWithVersion(FOO);
+
+            if (!Arrays.equals(barVersion.getValue(), BAR_BYTES) || barVersion.getVersion() == fooVersion.getVersion()) {
+                fail("Replace didn't");
+            }
+
+            if (c.remove(FOO, fooVersion.getVersion())) {
+                fail("Remove should not work here");
+            }
+
+            if (!c.remove(FOO, barVersion.getVersion())) {
+                fail("Remove should work here");
+            }
+
+            if (c.containsKey(FOO)) {
+                fail("Remove didn't");
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
     @Test
     void testGetAll() {
         try {
@@ -397,6 +501,42 @@ class VoltDBCacheTest {
 
     }
 
+    @Test
+    void testGetAllManyPartitions() {
+
+        try {
+
+            // Enough keys to be spread over every partition, with more than
+            // MAX_KEYS_PER_BATCH in some of them...
+            Map<String, byte[]> aMap = new HashMap<>();
+
+            for (int i = 0; i < 2000; i++) {
+                aMap.put(FOO + i, (FOO + i).getBytes());
+            }
+
+            c.putAll(aMap);
+
+            Set<String> theSet = new HashSet<>(aMap.keySet());
+            theSet.add("nonexistent");
+
+            Map<String, byte[]> readMap = c.getAll(theSet);
+
+            if (readMap.size() != aMap.size()) {
+                fail("getAll returned " + readMap.size() + " entries, not " + aMap.size());
+            }
+
+            for (Map.Entry<String, byte[]> entry : aMap.entrySet()) {
+                if (!Arrays.equals(readMap.get(entry.getKey()), entry.getValue())) {
+                    fail("getAll returned the wrong value for " + entry.getKey());
+                }
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
     @Test
     void testRemove() {
         try {
@@ -601,6 +741,46 @@ class VoltDBCacheTest {
 
     }
 
+    @Test
+    void testPutAllManyPartitions() {
+
+        try {
+
+            Map<String, byte[]> aMap = new HashMap<>();
+
+            for (int i = 0; i < 2000; i++) {
+                aMap.put(FOO + i, FOO_BYTES);
+            }
+
+            c.put(FOO + 0, BAR_BYTES);
+            c.putAll(aMap);
+
+            if (aMap.size() != 2000) {
+                fail("putAll changed the caller's map");
+            }
+
+            // A mix of new keys and one that was already there...
+            for (int i = 0; i < 2000; i++) {
+                if (!Arrays.equals(c.get(FOO + i), FOO_BYTES)) {
+                    fail("putAll didn't store " + FOO + i);
+                }
+            }
+
+            aMap.put(BAR, null);
+
+            try {
+                c.putAll(aMap);
+                fail("null value accepted");
+            } catch (NullPointerException e) {
+                // Expected
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
     @Test
     void testRemoveAllWithSet() {
 
@@ -680,6 +860,46 @@ class VoltDBCacheTest {
 
     }
 
+    @Test
+    void testClear() {
+
+        VoltDBCache otherReader = null;
+
+        try {
+
+            c.enableNearCache(100);
+            c.put(FOO, FOO_BYTES);
+            c.put(BAR, BAR_BYTES);
+            c2.put(FOO, FOO_BYTES);
+
+            c.get(FOO);
+            c.clear();
+
+            if (c.get(FOO) != null || c.containsKey(BAR)) {
+                fail("clear left entries behind");
+            }
+
+            // clear() isn't just emptying our near cache...
+            otherReader = new VoltDBCache("localhost", 10, FIRST_CACHE_NAME, "jsr107.test", 9092);
+
+            if (otherReader.containsKey(FOO) || otherReader.containsKey(BAR)) {
+                fail("clear didn't remove entries from VoltDB");
+            }
+
+            if (!c2.containsKey(FOO)) {
+                fail(FOO + " removed from wrong cache");
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            if (otherReader != null) {
+                otherReader.close();
+            }
+        }
+
+    }
+
     @Test
     void testNull() {
 
@@ -982,7 +1202,7 @@ class VoltDBCacheTest {
     }
 
     @Test
-    void testIteratorFail() {
+    void testIteratorLarge() {
 
         c.setEvents(false);
         Random r = new Random();
@@ -1001,21 +1221,1210 @@ class VoltDBCacheTest {
 
             c.putAll(aMap);
 
-            // This will fail.
-            VoltDBCache.msg("Next statement will fail");
-            Iterator it = c.iterator();
+            // This used to fail with TOO_MUCH_DATA_REQUESTED, as it's > 50MB...
+            c.setIteratorPageSize(8000);
+            Iterator<Entry<String, byte[]>> it = c.iterator();
+
+            String lastKey = null;
+            int entryCount = 0;
+
+            while (it.hasNext()) {
+                Entry<String, byte[]> theEntry = it.next();
+                entryCount++;
+
+                if (lastKey != null && lastKey.compareTo(theEntry.getKey()) >= 0) {
+                    fail("iterator - out of order " + theEntry.getKey());
+                }
+
+                lastKey = theEntry.getKey();
+
+                if (!Arrays.equals(theEntry.getValue(), payload)) {
+                    fail("iterator - payload changed");
+                }
+
+                // Iterator remove should work too...
+                if (entryCount % 2 == 0) {
+                    it.remove();
+                }
+            }
+
+            if (entryCount != 8000) {
+                fail("iteratorCount " + entryCount);
+            }
+
+            if (c.containsKey(FOO + 1) || !c.containsKey(FOO + 0)) {
+                fail("iterator remove");
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    @Test
+    void testParallelStream() {
+
+        c.setEvents(false);
+
+        try {
+            Map<String, byte[]> aMap = new HashMap<>();
+            for (int i = 0; i < 1000; i++) {
+                aMap.put(FOO + i, FOO_BYTES);
+            }
+
+            c.putAll(aMap);
+            c2.put(BAR, BAR_BYTES);
+
+            c.setIteratorPageSize(7);
+
+            Set<String> keys = new HashSet<>();
+            c.parallelStream().forEach(e -> {
+                if (!Arrays.equals(e.getValue(), FOO_BYTES)) {
+                    fail("stream - payload changed");
+                }
+                synchronized (keys) {
+                    keys.add(e.getKey());
+                }
+            });
+
+            if (!keys.equals(aMap.keySet())) {
+                fail("parallelStream - wrong keys");
+            }
+
+            if (c.stream().count() != 1000) {
+                fail("stream count");
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    @Test
+    void testAsync() {
+
+        try {
+
+            CompletableFuture<?>[] puts = new CompletableFuture<?>[1000];
+
+            for (int i = 0; i < puts.length; i++) {
+                puts[i] = c.putAsync(FOO + i, FOO_BYTES);
+            }
+
+            CompletableFuture.allOf(puts).get();
+
+            if (!Arrays.equals(c.getAsync(FOO + 999).get(), FOO_BYTES)) {
+                fail("getAsync didn't");
+            }
+
+            if (c.getAsync(BAR).get() != null) {
+                fail("getAsync not null");
+            }
+
+            if (c.putIfAbsentAsync(FOO + 0, BAR_BYTES).get()) {
+                fail("putIfAbsentAsync should not work here");
+            }
+
+            if (!c.replaceAsync(FOO + 0, FOO_BYTES, BAR_BYTES).get()) {
+                fail("replaceAsync should work here");
+            }
+
+            if (!Arrays.equals(c.getAndRemoveAsync(FOO + 0).get(), BAR_BYTES)) {
+                fail("getAndRemoveAsync didn't");
+            }
+
+            if (c.containsKeyAsync(FOO + 0).get()) {
+                fail("getAndRemoveAsync didn't remove");
+            }
+
+            if (!c.removeAsync(FOO + 1).get() || c.removeAsync(FOO + 1).get()) {
+                fail("removeAsync");
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    @Test
+    void testRetryPolicy() {
+
+        RetryPolicy rp = new RetryPolicy(3);
+        rp.setJitter(0);
+        rp.setDeadlineMs(5000);
+
+        if (!rp.isRetryable(ClientResponse.CONNECTION_LOST) || rp.isRetryable(ClientResponse.USER_ABORT)
+                || rp.isRetryable(ClientResponse.GRACEFUL_FAILURE)) {
+            fail("isRetryable");
+        }
+
+        // We don't know if these happened, so only repeat ones that are safe...
+        if (!rp.isRetryable("Get", ClientResponse.RESPONSE_UNKNOWN)
+                || rp.isRetryable("Invoke", ClientResponse.RESPONSE_UNKNOWN)
+                || rp.isRetryable("PutIfAbsent", ClientResponse.CONNECTION_LOST)
+                || !rp.isRetryable("Invoke", ClientResponse.TXN_RESTART)
+                || rp.isRetryable("Invoke", ClientResponse.USER_ABORT)) {
+            fail("isRetryable for unknown outcomes");
+        }
+
+        if (rp.getRetryDelayMs(1, 0, 0) != 1000 || rp.getRetryDelayMs(2, 0, 0) != 4000) {
+            fail("getRetryDelayMs");
+        }
+
+        if (rp.getRetryDelayMs(3, 0, 0) != -1) {
+            fail("maxAttempts ignored");
+        }
+
+        if (rp.getRetryDelayMs(2, 0, 2000) != -1) {
+            fail("deadline ignored");
+        }
+
+        rp.setJitter(0.5);
+
+        for (int i = 0; i < 100; i++) {
+            long delayMs = rp.getRetryDelayMs(1, 0, 0);
+            if (delayMs < 500 || delayMs > 1000) {
+                fail("jitter " + delayMs);
+            }
+        }
+
+    }
+
+    @Test
+    void testRetryAfterClose() {
+
+        try {
+
+            CompletableFuture<ClientResponse> future = new CompletableFuture<>();
+            AsyncProcedureCallback callback = new AsyncProcedureCallback(c, future, "Get",
+                    new Object[] { FOO, c.getName() });
+
+            // A failure we'd normally retry for up to a minute...
+            ClientResponse connectionLost = (ClientResponse) Proxy.newProxyInstance(
+                    ClientResponse.class.getClassLoader(), new Class<?>[] { ClientResponse.class },
+                    (proxy, method, args) -> method.getName().equals("getStatus") ? ClientResponse.CONNECTION_LOST
+                            : method.getName().equals("getStatusString") ? "Connection lost" : null);
+
+            c.close();
+
+            long startMs = System.currentTimeMillis();
+            callback.clientCallback(connectionLost);
+
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("call succeeded after close");
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof CacheException) || System.currentTimeMillis() - startMs > 1000) {
+                    fail("should fail at once after close: " + e.getCause());
+                }
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    @Test
+    void testCachingProvider() {
+
+        CacheManager cm = null;
+
+        try {
+
+            cm = Caching.getCachingProvider(VoltDBCachingProvider.class.getName()).getCacheManager();
+
+            Cache<String, byte[]> managedCache = cm.getCache(FIRST_CACHE_NAME, String.class, byte[].class);
+            Cache<String, byte[]> managedCache2 = cm.getCache(SECOND_CACHE_NAME, String.class, byte[].class);
+
+            if (managedCache.getCacheManager() != cm || cm.<String, byte[]> getCache(FIRST_CACHE_NAME) != managedCache) {
+                fail("getCacheManager");
+            }
+
+            managedCache.put(FOO, FOO_BYTES);
+
+            // Same data as our unmanaged cache...
+            if (!Arrays.equals(c.get(FOO), FOO_BYTES)) {
+                fail("managed put didn't");
+            }
+
+            // Closing one cache mustn't break the other, as they share a client...
+            managedCache2.close();
+
+            if (!managedCache.containsKey(FOO)) {
+                fail("managed containsKey didn't");
+            }
+
+            if (managedCache.getConfiguration(Configuration.class).getValueType() != byte[].class) {
+                fail("getConfiguration");
+            }
+
+            try {
+                cm.getCache(FIRST_CACHE_NAME, Long.class, byte[].class);
+                fail("wrong key type allowed");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
 
-            fail("failed to fail when expected...");
+            cm.close();
 
-        } catch (CacheException e) {
-            if (!e.getMessage().startsWith(VoltDBCache.TOO_MUCH_DATA_REQUESTED)) {
-                fail(e);
-            } else {
-                VoltDBCache.msg("failed as expected");
+            if (!managedCache.isClosed()) {
+                fail("cm.close didn't close caches");
             }
 
         } catch (Exception e) {
             fail(e);
+        } finally {
+            if (cm != null) {
+                cm.close();
+            }
+        }
+
+    }
+
+    @Test
+    void testEventCodecs() {
+
+        try {
+
+            // Keys with commas and quotes get quoted by VoltDB...
+            KVEvent event = new CsvKVEventCodec().decode(c,
+                    ("\"a,b\",\"k\"\"1\",4142FF," + AbstractEventTrackingProcedure.CREATED).getBytes());
+
+            if (!event.getCacheName().equals("a,b") || !event.getKey().equals("k\"1")
+                    || !Arrays.equals(event.getValue(), new byte[] { 'A', 'B', -1 })
+                    || event.getEventType() != EventType.CREATED) {
+                fail("CSV decode failed: " + event);
+            }
+
+            // Confluent header, "ab", "x", union 1 of 3 bytes, union 1 of "U"
+            byte[] avroRecord = { 0, 0, 0, 0, 1, 4, 'a', 'b', 2, 'x', 2, 6, 1, 2, 3, 2, 2, 'U' };
+            event = new AvroKVEventCodec().decode(c, avroRecord);
+
+            if (!event.getCacheName().equals("ab") || !event.getKey().equals("x")
+                    || !Arrays.equals(event.getValue(), new byte[] { 1, 2, 3 })
+                    || event.getEventType() != EventType.UPDATED) {
+                fail("Avro decode failed: " + event);
+            }
+
+            // NULL value...
+            avroRecord = new byte[] { 0, 0, 0, 0, 1, 4, 'a', 'b', 2, 'x', 0, 2, 2, 'D' };
+            event = new AvroKVEventCodec().decode(c, avroRecord);
+
+            if (event.getValue().length != 0 || event.getEventType() != EventType.REMOVED) {
+                fail("Avro decode of NULL failed: " + event);
+            }
+
+            // Old value and event_ts, 2022-01-02 03:04:05.678 GMT...
+            event = new CsvKVEventCodec().decode(c,
+                    ("c,k,41," + AbstractEventTrackingProcedure.UPDATED + ",40,2022-01-02 03:04:05.678").getBytes());
+
+            if (event.getOldValue()[0] != '@' || event.getEventTimeMs() != 1641092645678L) {
+                fail("CSV decode of event_ts failed: " + event.getEventTimeMs());
+            }
+
+            // Union 1 of 1641092645678000 micros...
+            avroRecord = new byte[] { 0, 0, 0, 0, 1, 2, 'c', 2, 'k', 0, 2, 2, 'D', 0, 2, (byte) 0xe0, (byte) 0xae,
+                    (byte) 0x83, (byte) 0x83, (byte) 0x95, (byte) 0xa4, (byte) 0xea, 0x05 };
+            event = new AvroKVEventCodec().decode(c, avroRecord);
+
+            if (event.getEventTimeMs() != 1641092645678L) {
+                fail("Avro decode of event_ts failed: " + event.getEventTimeMs());
+            }
+
+            try {
+                new AvroKVEventCodec().decode(c, new byte[] { 0, 0, 0, 0, 1, 40, 'a' });
+                fail("decoded truncated record");
+            } catch (CacheException e) {
+                // Expected
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    @Test
+    void testOffsetCheckpoint() {
+
+        try {
+
+            File checkpointFile = File.createTempFile("testOffsetCheckpoint", ".properties");
+            checkpointFile.delete();
+
+            TopicPartition p0 = new TopicPartition("kv_deltas_0", 0);
+            TopicPartition p1 = new TopicPartition("kv_deltas_0", 1);
+
+            OffsetCheckpoint checkpoint = new OffsetCheckpoint(checkpointFile.getPath());
+
+            if (checkpoint.getOffset(p0) != null) {
+                fail("new checkpoint has offset " + checkpoint.getOffset(p0));
+            }
+
+            checkpoint.setOffset(p0, 42);
+            checkpoint.setOffset(p1, 7);
+            checkpoint.setOffset(p1, 8);
+            checkpoint.save();
+
+            // Should carry on where we left off...
+            checkpoint = new OffsetCheckpoint(checkpointFile.getPath());
+
+            if (checkpoint.getOffset(p0) != 42 || checkpoint.getOffset(p1) != 8) {
+                fail("reloaded checkpoint wrong: " + checkpoint);
+            }
+
+            if (checkpoint.getCommitOffsets().get(p1).offset() != 8) {
+                fail("commit offsets wrong: " + checkpoint.getCommitOffsets());
+            }
+
+            checkpointFile.delete();
+
+            try {
+                c.setEventCatchUpThreshold(-1);
+                fail("negative threshold accepted");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    @Test
+    void testCheckpointResume() {
+
+        try {
+
+            File checkpointFile = File.createTempFile("testCheckpointResume", ".properties");
+            checkpointFile.delete();
+
+            // A group Kafka has never seen, so it has no offsets of its own...
+            String groupId = "testCheckpointResume" + System.currentTimeMillis();
+
+            c.setEvents(true);
+            c.setEventCheckpointFile(checkpointFile.getPath());
+
+            // Start at the latest event and read 'a0' to 'a4'...
+            CacheEventSource source = new KafkaCacheEventSource("localhost:9092", groupId);
+            source.open(new CacheEventConsumer(c.getName(), source, null, c, null));
+            waitUntilReady(source);
+
+            for (int i = 0; i < 5; i++) {
+                c.put("a" + i, FOO_BYTES);
+            }
+
+            List<KVEvent> events = pollEvents(source, 5);
+
+            if (getEventKeys(events).size() != 5) {
+                fail("expected a0 to a4, got " + events);
+            }
+
+            source.close();
+
+            // While we're away 'b0' to 'b4' change 4 times each, and something
+            // else in our group reads them and moves the group's offsets past
+            // them...
+            for (int round = 0; round < 4; round++) {
+                for (int i = 0; i < 5; i++) {
+                    c.put("b" + i, ("r" + round).getBytes());
+                }
+            }
+
+            c.setEventCheckpointFile(null);
+
+            CacheEventSource groupSource = new KafkaCacheEventSource("localhost:9092", groupId);
+            groupSource.open(new CacheEventConsumer(c.getName(), groupSource, null, c, null));
+            events = pollEvents(groupSource, 20);
+            groupSource.close();
+
+            if (events.size() != 20) {
+                fail("expected 20 events for b0 to b4, got " + events);
+            }
+
+            for (int i = 0; i < 5; i++) {
+                c.put("c" + i, BAR_BYTES);
+            }
+
+            // Resuming from the checkpoint should give us everything from b0
+            // on, not nothing (latest) or just the c's (the group's offsets).
+            // We are 25 events behind, so we should catch up by only getting
+            // the latest change to each b...
+            c.setEventCheckpointFile(checkpointFile.getPath());
+            c.setEventCatchUpThreshold(5);
+
+            source = new KafkaCacheEventSource("localhost:9092", groupId);
+            source.open(new CacheEventConsumer(c.getName(), source, null, c, null));
+            events = pollEvents(source, 25);
+
+            // Nothing else should turn up...
+            events.addAll(pollEvents(source, 1, 2000));
+            source.close();
+
+            int eventCount = 0;
+
+            for (KVEvent event : events) {
+                eventCount += event.getMergedEventCount();
+            }
+
+            Set<String> expectedKeys = new HashSet<>();
+
+            for (int i = 0; i < 5; i++) {
+                expectedKeys.add("b" + i);
+                expectedKeys.add("c" + i);
+            }
+
+            if (eventCount != 25 || !getEventKeys(events).equals(expectedKeys)) {
+                fail("expected the b and c events after the checkpoint, got " + events);
+            }
+
+            if (events.size() >= 25) {
+                fail("didn't catch up, got " + events.size() + " events");
+            }
+
+            for (KVEvent event : events) {
+                if (event.getKey().startsWith("b") && !Arrays.equals(event.getValue(), "r3".getBytes())) {
+                    fail("lost the latest change: " + event);
+                }
+            }
+
+            checkpointFile.delete();
+
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            c.setEventCheckpointFile(null);
+            c.setEventCatchUpThreshold(0);
+        }
+
+    }
+
+    /**
+     * Poll until source has been assigned partitions and knows where it is
+     * starting from.
+     */
+    void waitUntilReady(CacheEventSource source) throws InterruptedException {
+
+        long giveUpMs = System.currentTimeMillis() + 60000;
+
+        while (!source.isReady() && System.currentTimeMillis() < giveUpMs) {
+            source.poll(100);
+        }
+
+        source.getLag();
+    }
+
+    /**
+     * Poll source until we've had events standing for expectedCount changes,
+     * or a minute goes by.
+     */
+    List<KVEvent> pollEvents(CacheEventSource source, int expectedCount) throws InterruptedException {
+        return pollEvents(source, expectedCount, 60000);
+    }
+
+    List<KVEvent> pollEvents(CacheEventSource source, int expectedCount, long timeoutMs)
+            throws InterruptedException {
+
+        List<KVEvent> events = new ArrayList<>();
+        int eventCount = 0;
+        long giveUpMs = System.currentTimeMillis() + timeoutMs;
+
+        while (eventCount < expectedCount && System.currentTimeMillis() < giveUpMs) {
+
+            for (KVEvent event : source.poll(100)) {
+                events.add(event);
+                eventCount += event.getMergedEventCount();
+            }
+
+            source.delivered();
+        }
+
+        return events;
+    }
+
+    Set<String> getEventKeys(List<KVEvent> events) {
+
+        Set<String> keys = new HashSet<>();
+
+        for (KVEvent event : events) {
+            keys.add(event.getKey());
+        }
+
+        return keys;
+    }
+
+    @Test
+    void testEventBucket() {
+
+        try {
+
+            int bucket = AbstractEventTrackingProcedure.getEventBucket(c.getName());
+
+            if (bucket < 0 || bucket >= AbstractEventTrackingProcedure.EVENT_BUCKETS
+                    || bucket != AbstractEventTrackingProcedure.getEventBucket(new String(c.getName()))
+                    || !AbstractEventTrackingProcedure.getEventTopic(c.getName())
+                            .equals(AbstractEventTrackingProcedure.EVENT_STREAM_PREFIX + bucket)) {
+                fail("bad bucket " + bucket + " for " + c.getName());
+            }
+
+            c.setEvents(true);
+
+            // The source only reads our bucket's topic, so if we see every
+            // change to FOO, whichever procedure made it, they all went there...
+            CacheEventSource source = new KafkaCacheEventSource("localhost:9092",
+                    "testEventBucket" + System.currentTimeMillis());
+            source.open(new CacheEventConsumer(c.getName(), source, null, c, null));
+            waitUntilReady(source);
+
+            Map<String, byte[]> aMap = new HashMap<>();
+            aMap.put(FOO, BAR_BYTES);
+
+            c.put(FOO, FOO_BYTES);
+            c.putAll(aMap);
+            c.getAndPut(FOO, FOO_BYTES);
+            c.remove(FOO);
+
+            List<EventType> eventTypes = new ArrayList<>();
+            long giveUpMs = System.currentTimeMillis() + 60000;
+
+            while (eventTypes.size() < 4 && System.currentTimeMillis() < giveUpMs) {
+                for (KVEvent event : pollEvents(source, 1, 1000)) {
+                    if (event.getCacheName().equals(c.getName()) && event.getKey().equals(FOO)) {
+                        eventTypes.add(event.getEventType());
+                    }
+                }
+            }
+
+            source.close();
+
+            if (!eventTypes.equals(
+                    Arrays.asList(EventType.CREATED, EventType.UPDATED, EventType.UPDATED, EventType.REMOVED))) {
+                fail("expected every event for " + FOO + " in "
+                        + AbstractEventTrackingProcedure.getEventTopic(c.getName()) + ", got " + eventTypes);
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    @Test
+    void testEventConflater() {
+
+        try {
+
+            EventConflater conflater = new EventConflater(60000);
+
+            conflater.add(new KVEvent(c, EventType.CREATED, "c", "hot", new byte[] { 1 }));
+
+            for (byte i = 2; i <= 100; i++) {
+                conflater.add(
+                        new KVEvent(c, EventType.UPDATED, "c", "hot", new byte[] { i }, new byte[] { (byte) (i - 1) }));
+            }
+
+            conflater.add(new KVEvent(c, EventType.UPDATED, "c", "cold", new byte[] { 7 }, new byte[] { 6 }));
+            conflater.add(new KVEvent(c, EventType.REMOVED, "c", "gone", new byte[] { 5 }, new byte[] { 5 }));
+            conflater.add(new KVEvent(c, EventType.CREATED, "c", "gone", new byte[] { 9 }));
+
+            // Created, changed and removed within the window, so nothing at all...
+            conflater.add(new KVEvent(c, EventType.CREATED, "c", "brief", new byte[] { 1 }));
+            conflater.add(new KVEvent(c, EventType.UPDATED, "c", "brief", new byte[] { 2 }, new byte[] { 1 }));
+            conflater.add(new KVEvent(c, EventType.REMOVED, "c", "brief", new byte[] { 2 }, new byte[] { 2 }));
+            conflater.add(new KVEvent(c, EventType.CREATED, "c", "expired", new byte[] { 1 }));
+            conflater.add(new KVEvent(c, EventType.EXPIRED, "c", "expired", new byte[] { 1 }, new byte[] { 1 }));
+
+            if (conflater.isDue()) {
+                fail("window should still be open");
+            }
+
+            List<KVEvent> events = conflater.drain();
+
+            if (events.size() != 3 || conflater.size() != 0) {
+                fail("expected 3 events, got " + events);
+            }
+
+            KVEvent hot = events.get(0);
+
+            if (hot.getEventType() != EventType.CREATED || hot.getValue()[0] != 100 || hot.isOldValueAvailable()
+                    || hot.getMergedEventCount() != 100) {
+                fail("hot key conflated wrong: " + hot);
+            }
+
+            if (events.get(1).getMergedEventCount() != 1) {
+                fail("cold key conflated wrong: " + events.get(1));
+            }
+
+            KVEvent gone = events.get(2);
+
+            if (gone.getEventType() != EventType.UPDATED || gone.getValue()[0] != 9 || gone.getOldValue()[0] != 5
+                    || gone.getMergedEventCount() != 2) {
+                fail("removed and created key conflated wrong: " + gone);
+            }
+
+            // ...but a key that comes back after being removed is a CREATED
+            conflater.add(new KVEvent(c, EventType.CREATED, "c", "brief", new byte[] { 1 }));
+            conflater.add(new KVEvent(c, EventType.REMOVED, "c", "brief", new byte[] { 1 }, new byte[] { 1 }));
+            conflater.add(new KVEvent(c, EventType.CREATED, "c", "brief", new byte[] { 3 }));
+
+            events = conflater.drain();
+
+            if (events.size() != 1 || events.get(0).getEventType() != EventType.CREATED
+                    || events.get(0).getValue()[0] != 3 || events.get(0).isOldValueAvailable()) {
+                fail("created, removed and created key conflated wrong: " + events);
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    @Test
+    void testRingBufferEventBus() {
+
+        RingBufferEventBus bus = new RingBufferEventBus(1024);
+
+        try {
+
+            // A reader that falls a lap behind loses what was overwritten...
+            CacheEventSource source = bus.createEventSource("test");
+            source.open(new CacheEventConsumer(c.getName(), source, null, c, null));
+
+            for (int i = 0; i < 1500; i++) {
+                bus.publish(new KVEvent(c, EventType.CREATED, c.getName(), "k" + i, new byte[] { 1 }));
+            }
+
+            Collection<KVEvent> events = source.poll(0);
+
+            if (events.size() != 1000 || bus.getLostEventCount() != 476
+                    || !events.iterator().next().getKey().equals("k476")) {
+                fail("expected to lose 476 events, lost " + bus.getLostEventCount() + " and got " + events.size());
+            }
+
+            source.close();
+
+            // Listeners work with no Kafka involved...
+            MyCacheEntryListenerFactory theListenerFactory = new MyCacheEntryListenerFactory();
+            MutableCacheEntryListenerConfiguration<String, byte[]> cacheEntryListenerConfig = new MutableCacheEntryListenerConfiguration<>(
+                    theListenerFactory, null, false, true);
+
+            c.setEventSourceFactory(bus);
+            c.registerCacheEntryListener(cacheEntryListenerConfig);
+
+            try {
+                c.setEventSourceFactory(null);
+                fail("changed event source with a listener registered");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+
+            // Give the consumer a chance to start reading...
+            Thread.sleep(500);
+
+            final int eventCount = 10000;
+            long startNanos = System.nanoTime();
+
+            for (int i = 0; i < eventCount; i++) {
+                bus.publish(new KVEvent(c, EventType.CREATED, c.getName(), "k" + i, new byte[] { 1 }));
+                bus.publish(new KVEvent(c, EventType.CREATED, "someOtherCache", "k" + i, new byte[] { 1 }));
+            }
+
+            long timeoutMS = System.currentTimeMillis() + 10000;
+
+            while (System.currentTimeMillis() < timeoutMS
+                    && theListenerFactory.getListener().getCreated() < eventCount) {
+                Thread.sleep(1);
+            }
+
+            VoltDBCache.msg("Delivered " + theListenerFactory.getListener().getCreated() + " events in "
+                    + ((System.nanoTime() - startNanos) / 1000) + " micros");
+
+            c.deregisterCacheEntryListener(cacheEntryListenerConfig);
+            c.setEventSourceFactory(null);
+
+            if (theListenerFactory.getListener().getCreated() != eventCount) {
+                fail("expected " + eventCount + " events, got " + theListenerFactory.getListener().getCreated());
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    @Test
+    void testCacheEventStats() {
+
+        CacheEventStats stats = new CacheEventStats(c.getName(), "test");
+
+        try {
+
+            long nowMs = System.currentTimeMillis();
+
+            for (int i = 1; i <= 100; i++) {
+                stats.reportEvent(
+                        new KVEvent(c, EventType.CREATED, c.getName(), "k" + i, new byte[] { 1 }, null, nowMs - i),
+                        nowMs);
+            }
+
+            stats.reportEvent(new KVEvent(c, EventType.CREATED, c.getName(), "k", new byte[] { 1 }), nowMs);
+            stats.setLag(5, 42);
+
+            if (stats.getEventCount() != 100 || stats.getEventsWithoutTimeCount() != 1
+                    || stats.getLatency50thPercentileMs() != 50 || stats.getLatency99thPercentileMs() != 99
+                    || stats.getLatencyMaxMs() != 100 || stats.getLatencyAverageMs() != 50.5) {
+                fail("stats wrong: " + stats);
+            }
+
+            stats.register();
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            if (stats.getObjectName() == null
+                    || (Long) server.getAttribute(stats.getObjectName(), "LagMs") != 42) {
+                fail("stats not in JMX: " + stats.getObjectName());
+            }
+
+            stats.reset();
+
+            if (stats.getEventCount() != 0 || stats.getLatency99thPercentileMs() != 0) {
+                fail("reset didn't: " + stats);
+            }
+
+            // Latency is measured when the listener gets the event, so the time
+            // the dispatcher spends waiting for a batch to fill counts...
+            EventDispatcher dispatcher = new EventDispatcher(c,
+                    new MutableCacheEntryListenerConfiguration<>(new MyCacheEntryListenerFactory(), null, false,
+                            true),
+                    1, 10, 100, 200);
+            dispatcher.setStats(stats);
+
+            nowMs = System.currentTimeMillis();
+
+            for (int i = 0; i < 3; i++) {
+                dispatcher.dispatch(
+                        new KVEvent(c, EventType.CREATED, c.getName(), "k" + i, new byte[] { 1 }, null, nowMs));
+            }
+
+            // MyCacheEntryListener doesn't listen for these, so they don't count...
+            dispatcher.dispatch(new KVEvent(c, EventType.EXPIRED, c.getName(), "k0", new byte[] { 1 }, null, nowMs));
+
+            dispatcher.flush();
+            dispatcher.shutdown();
+
+            if (stats.getEventCount() != 3 || stats.getLatency50thPercentileMs() < 200) {
+                fail("latency should include time in the dispatcher: " + stats);
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            stats.unregister();
+        }
+
+    }
+
+    @Test
+    void testEventDispatcherListenerError() {
+
+        try {
+
+            BrokenListener.created.clear();
+
+            EventDispatcher dispatcher = new EventDispatcher(c, new MutableCacheEntryListenerConfiguration<>(
+                    FactoryBuilder.factoryOf(BrokenListener.class), null, false, true), 1, 10, 1, 0);
+
+            // The listener throws an Error for "bang", which mustn't stop the
+            // worker or leave flush() waiting forever...
+            dispatcher.dispatch(new KVEvent(c, EventType.CREATED, c.getName(), "bang", new byte[] { 1 }));
+            dispatcher.flush();
+
+            dispatcher.dispatch(new KVEvent(c, EventType.CREATED, c.getName(), "k1", new byte[] { 1 }));
+            dispatcher.flush();
+
+            if (!BrokenListener.created.equals(Arrays.asList("bang", "k1"))) {
+                fail("worker didn't survive listener error: " + BrokenListener.created);
+            }
+
+            dispatcher.shutdown();
+
+            if (dispatcher.dispatch(new KVEvent(c, EventType.CREATED, c.getName(), "k2", new byte[] { 1 }))) {
+                fail("dispatch accepted after shutdown");
+            }
+
+            // Nothing is left pending, so this mustn't hang...
+            dispatcher.flush();
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    /**
+     * Listener for testEventDispatcherListenerError. Public, as FactoryBuilder
+     * creates it.
+     */
+    public static class BrokenListener implements CacheEntryCreatedListener<String, byte[]> {
+
+        static final List<String> created = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends byte[]>> arg0) {
+
+            for (CacheEntryEvent<? extends String, ? extends byte[]> event : arg0) {
+
+                created.add(event.getKey());
+
+                if (event.getKey().equals("bang")) {
+                    throw new AssertionError("listener error");
+                }
+            }
+        }
+    }
+
+    /**
+     * Something for PojoSerializer to store.
+     */
+    static class TypedCacheTestRecord {
+
+        enum Tier {
+            SILVER, GOLD
+        }
+
+        long userId;
+        int miles;
+        String name;
+        Double ratio;
+        Tier tier;
+        byte[] lob;
+
+    }
+
+    @Test
+    void testTypedCache() {
+
+        try {
+
+            StringSerializer stringSerializer = new StringSerializer();
+            SerializationBuffer buffer = new SerializationBuffer(4);
+            String unicode = "Z\u00f6e \ud83d\ude00";
+
+            if (!Arrays.equals(stringSerializer.toBytes(unicode, buffer), unicode.getBytes("UTF-8"))) {
+                fail("StringSerializer doesn't match String.getBytes");
+            }
+
+            VoltDBTypedCache<Long, TypedCacheTestRecord> typedCache = VoltDBTypedCache.withLongKeys(c,
+                    new PojoSerializer<>(TypedCacheTestRecord.class));
+
+            TypedCacheTestRecord record = new TypedCacheTestRecord();
+            record.userId = 42;
+            record.miles = -300;
+            record.name = unicode;
+            record.tier = TypedCacheTestRecord.Tier.GOLD;
+            record.lob = new byte[] { 1, 2, 3 };
+
+            typedCache.put(42L, record);
+
+            // It's really there under the String key...
+            if (c.get("42") == null) {
+                fail("typed put didn't store '42'");
+            }
+
+            TypedCacheTestRecord readRecord = typedCache.get(42L);
+
+            if (readRecord.userId != 42 || readRecord.miles != -300 || !readRecord.name.equals(unicode)
+                    || readRecord.ratio != null || readRecord.tier != TypedCacheTestRecord.Tier.GOLD
+                    || !Arrays.equals(readRecord.lob, record.lob)) {
+                fail("typed get returned something different");
+            }
+
+            VoltDBTypedCache<String, Long> longCache = VoltDBTypedCache.withStringKeys(c, new LongSerializer());
+            HashMap<String, Long> longs = new HashMap<>();
+            longs.put("l1", 1L);
+            longs.put("l2", Long.MIN_VALUE);
+            longCache.putAll(longs);
+
+            Set<String> keys = new HashSet<>(longs.keySet());
+            keys.add("nonexistent");
+
+            if (!longCache.getAll(keys).equals(longs)) {
+                fail("typed getAll returned " + longCache.getAll(keys));
+            }
+
+            if (!longCache.replace("l1", 1L, 2L) || longCache.get("l1") != 2L) {
+                fail("typed replace failed");
+            }
+
+            if (typedCache.unwrap(VoltDBCache.class) != c) {
+                fail("unwrap didn't return the VoltDBCache");
+            }
+
+            try {
+                typedCache.put(null, record);
+                fail("null key accepted");
+            } catch (NullPointerException e) {
+                // Expected
+            }
+
+            typedCache.remove(42L);
+
+            @SuppressWarnings("unchecked")
+            CompleteConfiguration<String, Long> longConfig = longCache.getConfiguration(CompleteConfiguration.class);
+
+            if (longConfig.getKeyType() != String.class || longConfig.getValueType() != Long.class) {
+                fail("typed configuration has types " + longConfig.getKeyType() + ", " + longConfig.getValueType());
+            }
+
+            // Entry processors see Longs...
+            EntryProcessor<String, Long, Long> adder = (entry, args) -> {
+                long newValue = (entry.exists() ? entry.getValue() : 0) + (Long) args[0];
+                entry.setValue(newValue);
+                return newValue;
+            };
+
+            if (longCache.invoke("l1", adder, 5L) != 7 || longCache.get("l1") != 7) {
+                fail("typed invoke didn't add 5 to 2");
+            }
+
+            Map<String, EntryProcessorResult<Long>> results = longCache
+                    .invokeAll(new HashSet<>(Arrays.asList("l1", "l3")), adder, 1L);
+
+            if (results.get("l1").get() != 8 || results.get("l3").get() != 1 || longCache.get("l3") != 1) {
+                fail("typed invokeAll returned " + results);
+            }
+
+            longCache.invoke("l3", (entry, args) -> {
+                entry.remove();
+                return null;
+            });
+
+            if (longCache.containsKey("l3")) {
+                fail("typed invoke didn't remove l3");
+            }
+
+            // l1 and l2 are all that's left...
+            Iterator<Cache.Entry<String, Long>> it = longCache.iterator();
+            int removed = 0;
+
+            while (it.hasNext()) {
+                it.next();
+                it.remove();
+                removed++;
+            }
+
+            if (removed != 2 || longCache.containsKey("l1") || longCache.containsKey("l2")) {
+                fail("typed iterator removed " + removed);
+            }
+
+            // Listeners see Longs too...
+            RingBufferEventBus bus = new RingBufferEventBus(1024);
+            MutableCacheEntryListenerConfiguration<String, Long> listenerConfig = new MutableCacheEntryListenerConfiguration<>(
+                    FactoryBuilder.factoryOf(TypedCacheTestListener.class), null, false, true);
+
+            c.setEventSourceFactory(bus);
+            longCache.registerCacheEntryListener(listenerConfig);
+
+            if (!longCache.getConfiguration(CompleteConfiguration.class).getCacheEntryListenerConfigurations()
+                    .iterator().hasNext()) {
+                fail("typed listener missing from configuration");
+            }
+
+            // Give the consumer a chance to start reading...
+            Thread.sleep(500);
+
+            bus.publish(new KVEvent(c, EventType.REMOVED, c.getName(), "l4",
+                    new LongSerializer().toBytes(98L, new SerializationBuffer())));
+            bus.publish(new KVEvent(c, EventType.CREATED, c.getName(), "l4",
+                    new LongSerializer().toBytes(99L, new SerializationBuffer())));
+
+            long timeoutMS = System.currentTimeMillis() + 10000;
+
+            while (System.currentTimeMillis() < timeoutMS && TypedCacheTestListener.created.isEmpty()) {
+                Thread.sleep(1);
+            }
+
+            longCache.deregisterCacheEntryListener(listenerConfig);
+            c.setEventSourceFactory(null);
+
+            if (!TypedCacheTestListener.created.equals(Arrays.asList(99L))) {
+                fail("typed listener got " + TypedCacheTestListener.created);
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    @Test
+    void testTypedInvokeAllWithConcurrentWriter() {
+
+        try {
+
+            VoltDBTypedCache<String, Long> longCache = VoltDBTypedCache.withStringKeys(c, new LongSerializer());
+
+            EntryProcessor<String, Long, Long> adder = (entry, args) -> {
+                long newValue = (entry.exists() ? entry.getValue() : 0) + (Long) args[0];
+                entry.setValue(newValue);
+                return newValue;
+            };
+
+            final int keyCount = 20;
+            final int rounds = 50;
+            Set<String> keys = new HashSet<>();
+
+            for (int i = 0; i < keyCount; i++) {
+                keys.add("counter" + i);
+            }
+
+            // Someone else keeps adding 1000 to every key while we add 1, so
+            // invokeAll's writes will keep finding the version has changed...
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < rounds; i++) {
+                    for (String key : keys) {
+                        longCache.invoke(key, adder, 1000L);
+                    }
+                }
+            });
+
+            for (int i = 0; i < rounds; i++) {
+
+                Map<String, EntryProcessorResult<Long>> results = longCache.invokeAll(keys, adder, 1L);
+
+                if (!results.keySet().equals(keys)) {
+                    fail("invokeAll returned results for " + results.keySet());
+                }
+            }
+
+            writer.get();
+
+            for (String key : keys) {
+                if (longCache.get(key) != rounds * 1001L) {
+                    fail("lost an update to " + key + ": " + longCache.get(key));
+                }
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        }
+
+    }
+
+    /**
+     * Typed listener for testTypedCache. Public, as FactoryBuilder creates it.
+     */
+    public static class TypedCacheTestListener implements CacheEntryCreatedListener<String, Long> {
+
+        static final List<Long> created = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends Long>> arg0) {
+
+            for (CacheEntryEvent<? extends String, ? extends Long> event : arg0) {
+                created.add(event.getValue());
+            }
+        }
+    }
+
+    @Test
+    void testTTL() {
+
+        try {
+
+            c.put(FOO, FOO_BYTES, 1);
+            c.setDefaultTtlSeconds(1);
+
+            if (c.getDefaultTtlSeconds() != 1) {
+                fail("setDefaultTtlSeconds didn't");
+            }
+
+            c.put(BAR, BAR_BYTES);
+            c2.put(BAR, BAR_BYTES);
+
+            if (!c.containsKey(FOO) || !c.containsKey(BAR)) {
+                fail("expired too soon");
+            }
+
+            Thread.sleep(2500);
+
+            if (c.get(FOO) != null || c.containsKey(BAR)) {
+                fail("didn't expire");
+            }
+
+            if (!c2.containsKey(BAR)) {
+                fail("expired in wrong cache");
+            }
+
+            // Expired entries are absent as far as putIfAbsent is concerned...
+            if (!c.putIfAbsent(FOO, OTHER_BYTES)) {
+                fail("putIfAbsent didn't see expiry");
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            c.setDefaultTtlSeconds(0);
+        }
+
+    }
+
+    @Test
+    void testNearCache() {
+
+        VoltDBCache otherWriter = null;
+
+        try {
+
+            c.enableNearCache(100);
+            createFooEntry();
+
+            // The near cache won't accept entries until it's listening to
+            // kv_deltas...
+            long timeoutMS = System.currentTimeMillis() + 30000;
+
+            while (c.getNearCache().getHits() == 0 && System.currentTimeMillis() < timeoutMS) {
+                c.get(FOO);
+                Thread.sleep(100);
+            }
+
+            if (c.getNearCache().getHits() == 0) {
+                fail("near cache never used");
+            }
+
+            // Change FOO behind our back and see if we notice...
+            otherWriter = new VoltDBCache("localhost", 10, FIRST_CACHE_NAME, "jsr107.test", 9092);
+            otherWriter.put(FOO, BAR_BYTES);
+
+            timeoutMS = System.currentTimeMillis() + 30000;
+
+            while (!Arrays.equals(c.get(FOO), BAR_BYTES) && System.currentTimeMillis() < timeoutMS) {
+                Thread.sleep(100);
+            }
+
+            if (!Arrays.equals(c.get(FOO), BAR_BYTES)) {
+                fail("near cache not invalidated");
+            }
+
+            c.disableNearCache();
+
+            if (c.getNearCache() != null) {
+                fail("near cache not disabled");
+            }
+
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            c.setEvents(false);
+            if (otherWriter != null) {
+                otherWriter.close();
+            }
         }
 
     }